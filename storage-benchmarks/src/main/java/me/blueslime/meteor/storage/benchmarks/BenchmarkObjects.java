@@ -0,0 +1,124 @@
+package me.blueslime.meteor.storage.benchmarks;
+
+import me.blueslime.meteor.storage.interfaces.StorageExtraIdentifier;
+import me.blueslime.meteor.storage.interfaces.StorageIdentifier;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+
+import java.util.*;
+
+/**
+ * Object shapes measured by the benchmarks, built with fixed seeds so every run stores the same data.
+ */
+public final class BenchmarkObjects {
+
+    private BenchmarkObjects() {
+    }
+
+    /**
+     * Profile made of scalar properties only.
+     */
+    public static class FlatProfile implements StorageObject {
+        @StorageIdentifier
+        private String id;
+        @StorageExtraIdentifier
+        private String name;
+        private int level;
+        private long experience;
+        private double balance;
+        private boolean premium;
+        private String rank;
+
+        public FlatProfile() {
+        }
+
+        public FlatProfile(String id, int seed) {
+            this.id = id;
+            this.name = "player_" + seed;
+            this.level = seed % 100;
+            this.experience = seed * 1_000L;
+            this.balance = seed * 1.5;
+            this.premium = seed % 2 == 0;
+            this.rank = "rank_" + (seed % 7);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+    }
+
+    public record ProfileRecord(@StorageIdentifier String id, String name, int level, long experience, double balance, boolean premium) implements StorageObject {
+
+        public static ProfileRecord of(String id, int seed) {
+            return new ProfileRecord(id, "player_" + seed, seed % 100, seed * 1_000L, seed * 1.5, seed % 2 == 0);
+        }
+    }
+
+    public static class Item {
+        private String material;
+        private int amount;
+        private List<String> lore;
+
+        public Item() {
+        }
+
+        public Item(String material, int amount, List<String> lore) {
+            this.material = material;
+            this.amount = amount;
+            this.lore = lore;
+        }
+    }
+
+    /**
+     * Profile holding nested objects inside lists, sets and maps.
+     */
+    public static class NestedProfile implements StorageObject {
+        @StorageIdentifier
+        private String id;
+        private List<Item> inventory;
+        private Set<String> permissions;
+        private Map<String, List<Integer>> statistics;
+
+        public NestedProfile() {
+        }
+
+        public NestedProfile(String id, int seed) {
+            this.id = id;
+            this.inventory = new ArrayList<>();
+            for (int i = 0; i < 36; i++) {
+                inventory.add(new Item("material_" + ((seed + i) % 50), (i % 64) + 1, List.of("line one " + i, "line two " + i)));
+            }
+            this.permissions = new HashSet<>();
+            for (int i = 0; i < 20; i++) {
+                permissions.add("meteor.permission." + i);
+            }
+            this.statistics = new HashMap<>();
+            for (int i = 0; i < 10; i++) {
+                statistics.put("statistic_" + i, List.of(i, i * 2, i * 3, seed));
+            }
+        }
+    }
+
+    /**
+     * Object dominated by one large map.
+     */
+    public static class LargeMapHolder implements StorageObject {
+        @StorageIdentifier
+        private String id;
+        private Map<String, Long> values;
+
+        public LargeMapHolder() {
+        }
+
+        public LargeMapHolder(String id, int entries) {
+            this.id = id;
+            this.values = new HashMap<>(entries * 2);
+            for (int i = 0; i < entries; i++) {
+                values.put("key_" + i, (long) i * 31);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package me.blueslime.meteor.storage.benchmarks;
+
+import me.blueslime.meteor.implementation.Implements;
+import me.blueslime.meteor.platforms.api.configuration.PlatformConfigurations;
+import me.blueslime.meteor.platforms.api.logger.PlatformLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Registers the platform services the storage module fetches, benchmarks run outside any server.
+ */
+final class BenchmarkPlatform {
+
+    private BenchmarkPlatform() {
+    }
+
+    static void install() {
+        Implements.setEntry(PlatformLogger.class, new PlatformLogger("Benchmarks", System.err::println));
+        Implements.setEntry(PlatformConfigurations.class, PlatformConfigurations.DEFAULT);
+    }
+
+    static File temporaryFolder(String prefix) throws IOException {
+        return Files.createTempDirectory("meteor-" + prefix + "-").toFile();
+    }
+
+    static void delete(File folder) throws IOException {
+        if (folder == null || !folder.exists()) return;
+        try (Stream<Path> files = Files.walk(folder.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
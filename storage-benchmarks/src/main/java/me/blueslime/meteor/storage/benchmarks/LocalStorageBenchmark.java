@@ -0,0 +1,96 @@
+package me.blueslime.meteor.storage.benchmarks;
+
+import me.blueslime.meteor.storage.benchmarks.BenchmarkObjects.FlatProfile;
+import me.blueslime.meteor.storage.benchmarks.BenchmarkObjects.NestedProfile;
+import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+import me.blueslime.meteor.storage.types.LocalDatabase;
+import me.blueslime.meteor.storage.types.YamlDatabase;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end saves and loads against the backends that store on the local disk,
+ * each trial works on a fresh temporary folder filled with {@link #objects} objects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalStorageBenchmark {
+
+    @Param({"sqlite", "yaml"})
+    public String backend;
+
+    @Param({"flat", "nested"})
+    public String shape;
+
+    @Param({"1000"})
+    public int objects;
+
+    private File folder;
+    private StorageDatabase database;
+    private Class<? extends StorageObject> type;
+    private List<StorageObject> stored;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkPlatform.install();
+        folder = BenchmarkPlatform.temporaryFolder(backend);
+        database = switch (backend) {
+            case "sqlite" -> new LocalDatabase("benchmark", folder);
+            case "yaml" -> new YamlDatabase(folder);
+            default -> throw new IllegalArgumentException("Unknown backend " + backend);
+        };
+        database.connect();
+
+        type = "flat".equals(shape) ? FlatProfile.class : NestedProfile.class;
+        stored = new ArrayList<>(objects);
+        for (int i = 0; i < objects; i++) {
+            String id = "object-" + i;
+            stored.add("flat".equals(shape) ? new FlatProfile(id, i) : new NestedProfile(id, i));
+        }
+        database.saveAllSync(stored);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.closeConnection();
+        BenchmarkPlatform.delete(folder);
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) % objects;
+        return index;
+    }
+
+    /**
+     * Overwrites an object that is already stored.
+     */
+    @Benchmark
+    public void saveOrUpdate() {
+        database.saveOrUpdateSync(stored.get(nextIndex()));
+    }
+
+    @Benchmark
+    public Optional<? extends StorageObject> loadById() {
+        return database.loadByIdSync(type, "object-" + nextIndex());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Set<? extends StorageObject> loadAll() {
+        return database.loadAllSync(type);
+    }
+}
@@ -0,0 +1,100 @@
+package me.blueslime.meteor.storage.benchmarks;
+
+import me.blueslime.meteor.storage.benchmarks.BenchmarkObjects.FlatProfile;
+import me.blueslime.meteor.storage.benchmarks.BenchmarkObjects.LargeMapHolder;
+import me.blueslime.meteor.storage.benchmarks.BenchmarkObjects.NestedProfile;
+import me.blueslime.meteor.storage.benchmarks.BenchmarkObjects.ProfileRecord;
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import me.blueslime.meteor.storage.mapper.payload.PayloadCodec;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ObjectMapper} round trips through a document and through the binary {@link PayloadCodec#BSON} payload,
+ * the paths taken by every save and load of the backends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectMapperBenchmark {
+
+    @Param({"1000"})
+    public int mapEntries;
+
+    private ObjectMapper mapper;
+
+    private FlatProfile flat;
+    private ProfileRecord record;
+    private NestedProfile nested;
+    private LargeMapHolder largeMap;
+
+    private Document flatDocument;
+    private byte[] nestedPayload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkPlatform.install();
+        mapper = new ObjectMapper();
+        // The default codec of a class is JSON
+        mapper.registerPayloadCodec(NestedProfile.class, PayloadCodec.BSON);
+        mapper.registerPayloadCodec(LargeMapHolder.class, PayloadCodec.BSON);
+
+        flat = new FlatProfile("flat", 42);
+        record = ProfileRecord.of("record", 42);
+        nested = new NestedProfile("nested", 42);
+        largeMap = new LargeMapHolder("map", mapEntries);
+
+        flatDocument = mapper.toDocument(flat);
+        nestedPayload = mapper.toPayload(nested);
+    }
+
+    @Benchmark
+    public Document flatToDocument() {
+        return mapper.toDocument(flat);
+    }
+
+    @Benchmark
+    public FlatProfile flatFromDocument() {
+        return mapper.fromDocument(FlatProfile.class, flatDocument);
+    }
+
+    @Benchmark
+    public FlatProfile flatRoundTrip() {
+        return mapper.fromDocument(FlatProfile.class, mapper.toDocument(flat));
+    }
+
+    @Benchmark
+    public ProfileRecord recordRoundTrip() {
+        return mapper.fromDocument(ProfileRecord.class, mapper.toDocument(record));
+    }
+
+    @Benchmark
+    public NestedProfile nestedRoundTrip() {
+        return mapper.fromDocument(NestedProfile.class, mapper.toDocument(nested));
+    }
+
+    @Benchmark
+    public LargeMapHolder largeMapRoundTrip() {
+        return mapper.fromDocument(LargeMapHolder.class, mapper.toDocument(largeMap));
+    }
+
+    @Benchmark
+    public byte[] nestedToPayload() {
+        return mapper.toPayload(nested);
+    }
+
+    @Benchmark
+    public NestedProfile nestedFromPayload() {
+        return mapper.fromPayload(nestedPayload, NestedProfile.class);
+    }
+
+    @Benchmark
+    public LargeMapHolder largeMapPayloadRoundTrip() {
+        return mapper.fromPayload(mapper.toPayload(largeMap), LargeMapHolder.class);
+    }
+}
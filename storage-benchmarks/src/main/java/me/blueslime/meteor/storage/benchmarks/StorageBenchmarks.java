@@ -0,0 +1,42 @@
+package me.blueslime.meteor.storage.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}, takes the usual JMH command line options.
+ * <p>
+ * Unless {@code -rf}/{@code -rff} are given, results are written as JSON to {@code jmh-result.json},
+ * so runs of two versions can be compared with any JMH result viewer:
+ * <pre>{@code
+ * java -jar storage-benchmarks/target/benchmarks.jar
+ * java -jar storage-benchmarks/target/benchmarks.jar ObjectMapperBenchmark -rff mapper-3.1.11.json
+ * }</pre>
+ */
+public final class StorageBenchmarks {
+
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    private StorageBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result(DEFAULT_RESULT_FILE);
+        }
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(StorageBenchmarks.class.getPackageName() + ".*");
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -1,16 +1,35 @@
 package me.blueslime.meteor.storage.database;
 
 import me.blueslime.meteor.platforms.api.service.PlatformService;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
 import me.blueslime.meteor.storage.interfaces.StorageObject;
 import me.blueslime.meteor.storage.mapper.ObjectMapper;
 import me.blueslime.meteor.storage.references.ReferencedObject;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class StorageDatabase implements PlatformService {
 
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    private static final ExecutorService VIRTUAL_THREADS = Executors.newVirtualThreadPerTaskExecutor();
+
     private final ObjectMapper mapper;
+    private volatile ChangeTracker changeTracker = null;
+    private final List<BiConsumer<String, Exception>> errorListeners = new CopyOnWriteArrayList<>();
 
     public StorageDatabase() {
         this.mapper = new ObjectMapper();
@@ -32,15 +51,317 @@ public abstract class StorageDatabase implements PlatformService {
 
     public abstract <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz);
 
+    /**
+     * Streams every stored object of a class, decoding them lazily while the stream is consumed.
+     * <p>
+     * The stream holds backend resources (cursors, result sets, pooled connections),
+     * so it must be closed, preferably with a try-with-resources block.
+     *
+     * @param clazz     class of the objects
+     * @param fetchSize amount of objects fetched from the backend per round trip
+     * @return lazy stream of objects
+     */
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
+        return loadAllSync(clazz).stream();
+    }
+
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz) {
+        return streamAll(clazz, DEFAULT_FETCH_SIZE);
+    }
+
     public abstract CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj);
 
     public abstract void saveOrUpdateSync(StorageObject obj);
 
+    /**
+     * Saves every object of the collection.
+     * Backends override this with their native multi-row write path, log a failed write and rethrow it,
+     * so callers know the objects were not persisted.
+     * Third-party implementations fall back to one {@link #saveOrUpdateSync(StorageObject)} per object.
+     *
+     * @param objects objects to save, they may belong to different classes
+     */
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        for (StorageObject obj : objects) {
+            saveOrUpdateSync(obj);
+        }
+    }
+
+    public CompletableFuture<Void> saveAllAsync(Collection<? extends StorageObject> objects) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(objects.size());
+        for (StorageObject obj : objects) {
+            futures.add(saveOrUpdateAsync(obj));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Loads every object of the given identifiers.
+     *
+     * @param clazz       class of the objects
+     * @param identifiers identifiers to load
+     * @return found objects by identifier, missing identifiers are not present in the map
+     */
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        Map<String, T> results = new HashMap<>();
+        for (String identifier : identifiers) {
+            loadByIdSync(clazz, identifier).ifPresent(obj -> results.put(identifier, obj));
+        }
+        return results;
+    }
+
+    public <T extends StorageObject> CompletableFuture<Map<String, T>> loadByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        Map<String, CompletableFuture<Optional<T>>> futures = new LinkedHashMap<>();
+        for (String identifier : identifiers) {
+            futures.put(identifier, loadByIdAsync(clazz, identifier));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            Map<String, T> results = new HashMap<>();
+            futures.forEach((identifier, future) -> future.join().ifPresent(obj -> results.put(identifier, obj)));
+            return results;
+        });
+    }
+
+    /**
+     * Loads the object an extra identifier points to.
+     * Backends override this with a single round trip, third-party implementations fall back to
+     * {@link #loadByExtraIdentifierSync(Class, String)} followed by {@link #loadByIdSync(Class, String)}.
+     *
+     * @param clazz           class of the object
+     * @param extraIdentifier extra identifier, case-insensitive
+     * @return referenced object, empty when the extra identifier or its object is not stored
+     */
+    public <T extends StorageObject> Optional<T> loadByExtraIdentifierObjectSync(Class<T> clazz, String extraIdentifier) {
+        return loadByExtraIdentifierSync(clazz, extraIdentifier).flatMap(reference -> loadByIdSync(clazz, reference.getObject()));
+    }
+
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByExtraIdentifierObjectAsync(Class<T> clazz, String extraIdentifier) {
+        return loadByExtraIdentifierAsync(clazz, extraIdentifier).thenCompose(reference -> reference.isPresent()
+                ? loadByIdAsync(clazz, reference.get().getObject())
+                : CompletableFuture.completedFuture(Optional.empty()));
+    }
+
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        for (String identifier : identifiers) {
+            deleteByIdSync(clazz, identifier);
+        }
+    }
+
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(identifiers.size());
+        for (String identifier : identifiers) {
+            futures.add(deleteByIdAsync(clazz, identifier));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Finds every object of a class matching a query.
+     * Backends resolve conditions on {@link me.blueslime.meteor.storage.interfaces.StorageIndexed} properties
+     * with their native indexes, third-party implementations fall back to filtering {@link #streamAll(Class)}.
+     *
+     * @param clazz class of the objects
+     * @param query conditions, ordering and limit
+     * @return matching objects in the requested order
+     */
+    public <T extends StorageObject> List<T> querySync(Class<T> clazz, StorageQuery query) {
+        try (Stream<T> stream = streamAll(clazz)) {
+            return query.apply(mapper(), stream);
+        }
+    }
+
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        return CompletableFuture.supplyAsync(() -> querySync(clazz, query), asyncExecutor());
+    }
+
+    /**
+     * Starts a group of saves and deletes committed together with {@link UnitOfWork#commitSync()}.
+     */
+    public UnitOfWork unitOfWork() {
+        return new UnitOfWork(this);
+    }
+
+    /**
+     * Applies every operation of a unit of work in order.
+     * Backends override this with their native transaction or grouped write,
+     * third-party implementations fall back to applying the operations one by one, without atomicity.
+     *
+     * @param unit operations to apply
+     * @return whether the unit was committed, failures are logged
+     */
+    public boolean commitSync(UnitOfWork unit) {
+        for (UnitOfWork.Operation operation : unit.getOperations()) {
+            if (operation instanceof UnitOfWork.Save save) {
+                saveOrUpdateSync(save.object());
+            } else if (operation instanceof UnitOfWork.Delete delete) {
+                deleteByIdSync(delete.type(), delete.identifier());
+            }
+        }
+        return true;
+    }
+
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        return CompletableFuture.supplyAsync(() -> commitSync(unit), asyncExecutor());
+    }
+
+    /**
+     * Tracks the objects loaded and saved through this database: saving an unchanged object is skipped and
+     * backends with partial updates only write the properties that changed.
+     * Meant for classes with a single writer, see {@link ChangeTracker}.
+     *
+     * @param maximumSize maximum amount of remembered objects
+     */
+    public void enableChangeTracking(long maximumSize) {
+        changeTracker = new ChangeTracker(mapper, maximumSize);
+    }
+
+    public void enableChangeTracking() {
+        enableChangeTracking(ChangeTracker.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public void disableChangeTracking() {
+        changeTracker = null;
+    }
+
+    /**
+     * @return tracker of this database, null when change tracking is disabled
+     */
+    public ChangeTracker getChangeTracker() {
+        return changeTracker;
+    }
+
+    /**
+     * Whether saving the object would write anything, always true for objects that are not tracked.
+     */
+    public boolean isDirty(StorageObject obj) {
+        ChangeTracker tracker = changeTracker;
+        return tracker == null || !tracker.changes(obj).isUnchanged();
+    }
+
+    /**
+     * Remembers the state of a loaded or saved object when change tracking is enabled.
+     */
+    protected <T> T tracked(T obj) {
+        ChangeTracker tracker = changeTracker;
+        return tracker == null ? obj : tracker.track(obj);
+    }
+
+    protected void tracked(Collection<? extends StorageObject> objects) {
+        ChangeTracker tracker = changeTracker;
+        if (tracker == null) return;
+        for (StorageObject obj : objects) {
+            tracker.track(obj);
+        }
+    }
+
+    /**
+     * @return changes of the object since it was tracked, null when change tracking is disabled
+     */
+    protected ChangeTracker.Changes changes(StorageObject obj) {
+        ChangeTracker tracker = changeTracker;
+        return tracker == null ? null : tracker.changes(obj);
+    }
+
+    /**
+     * Remembers the document an object was just written with.
+     */
+    protected void saved(StorageObject obj, ChangeTracker.Changes changes) {
+        ChangeTracker tracker = changeTracker;
+        if (tracker == null) return;
+        if (changes == null) {
+            tracker.track(obj);
+        } else {
+            tracker.track(obj, changes.document());
+        }
+    }
+
+    /**
+     * Objects of the collection with something to write, all of them when change tracking is disabled.
+     */
+    protected List<StorageObject> dirty(Collection<? extends StorageObject> objects) {
+        ChangeTracker tracker = changeTracker;
+        List<StorageObject> dirty = new ArrayList<>(objects.size());
+        for (StorageObject obj : objects) {
+            if (obj != null && (tracker == null || !tracker.changes(obj).isUnchanged())) dirty.add(obj);
+        }
+        return dirty;
+    }
+
+    protected void deleted(Class<?> clazz) {
+        ChangeTracker tracker = changeTracker;
+        if (tracker != null) tracker.deleted(clazz);
+    }
+
+    /**
+     * Updates the tracked state after a unit of work was committed.
+     */
+    protected void committed(UnitOfWork unit) {
+        ChangeTracker tracker = changeTracker;
+        if (tracker == null) return;
+        for (UnitOfWork.Operation operation : unit.getOperations()) {
+            if (operation instanceof UnitOfWork.Save save) {
+                tracker.track(save.object());
+            } else if (operation instanceof UnitOfWork.Delete delete) {
+                tracker.deleted(delete.type());
+            }
+        }
+    }
+
     public abstract void connect();
 
     public abstract void closeConnection();
 
+    /**
+     * Executor of the default {@link #queryAsync(Class, StorageQuery)} and {@link #commitAsync(UnitOfWork)},
+     * a virtual thread per task so their blocking calls never run on the common pool.
+     * Backends with their own executor override it or those methods.
+     */
+    protected Executor asyncExecutor() {
+        return VIRTUAL_THREADS;
+    }
+
+    /**
+     * Tasks waiting for a thread of the executor that runs the async operations, 0 when unknown.
+     */
+    public int getQueuedTasks() {
+        return 0;
+    }
+
+    /**
+     * Asks the backend to remove objects not saved or loaded by identifier for the given time,
+     * {@link Duration#ZERO} disables it.
+     *
+     * @return whether the backend expires objects by itself
+     */
+    public boolean expireAfterAccess(Duration duration) {
+        return false;
+    }
+
+    protected static int queuedTasks(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor pool) {
+            return pool.getQueue().size();
+        }
+        if (executor instanceof ForkJoinPool pool) {
+            return (int) Math.min(Integer.MAX_VALUE, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+        }
+        return 0;
+    }
+
+    /**
+     * Receives every error logged by this database, most operations log their failures instead of throwing them.
+     */
+    public void addErrorListener(BiConsumer<String, Exception> listener) {
+        errorListeners.add(listener);
+    }
+
+    public void removeErrorListener(BiConsumer<String, Exception> listener) {
+        errorListeners.remove(listener);
+    }
+
     protected void logError(String message, Exception e) {
+        for (BiConsumer<String, Exception> listener : errorListeners) {
+            listener.accept(message, e);
+        }
         if (e == null) {
             getLogger().error(message);
             return;
@@ -48,8 +369,52 @@ public abstract class StorageDatabase implements PlatformService {
         getLogger().error(e, message);
     }
 
+    /**
+     * Logs a failed write and returns the exception to rethrow to the caller.
+     */
+    protected IllegalStateException writeFailure(String message, Exception e) {
+        logError(message, e);
+        return new IllegalStateException(message, e);
+    }
+
     public ObjectMapper mapper() {
         return mapper;
     }
 
+    protected static <T> Stream<T> lazyStream(Iterator<T> iterator, Runnable onClose) {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(onClose);
+    }
+
+    /**
+     * Iterator that fetches its next element on demand, {@link #fetchNext()} returns null once it is exhausted.
+     */
+    protected abstract static class LazyIterator<T> implements Iterator<T> {
+        private T next = null;
+        private boolean finished = false;
+
+        protected abstract T fetchNext() throws Exception;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) return true;
+            if (finished) return false;
+            try {
+                next = fetchNext();
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to fetch next element", e);
+            }
+            finished = next == null;
+            return !finished;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            T value = next;
+            next = null;
+            return value;
+        }
+    }
+
 }
@@ -0,0 +1,52 @@
+package me.blueslime.meteor.storage.database.cache;
+
+public class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long loadFailures;
+    private final long size;
+
+    public CacheStatistics(long hits, long misses, long evictions, long loadFailures, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.loadFailures = loadFailures;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getLoadFailures() {
+        return loadFailures;
+    }
+
+    /**
+     * Approximate amount of cached entries.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions +
+               ", loadFailures=" + loadFailures + ", size=" + size + "}";
+    }
+}
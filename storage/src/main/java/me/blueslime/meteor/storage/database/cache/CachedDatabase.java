@@ -0,0 +1,402 @@
+package me.blueslime.meteor.storage.database.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import me.blueslime.meteor.storage.messenger.Messenger;
+import me.blueslime.meteor.storage.messenger.channels.parameter.ChannelMessageEvent;
+import me.blueslime.meteor.storage.messenger.channels.parameter.types.ChannelMessageWithoutObjectEvent;
+import me.blueslime.meteor.storage.references.ReferencedObject;
+import org.bson.Document;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache for any {@link StorageDatabase}.
+ * <p>
+ * Objects loaded by identifier are kept in a size-bounded W-TinyLFU cache with a time to live,
+ * missing identifiers are remembered for a shorter time, and concurrent loads of the same identifier
+ * share one backend call. Saves and deletes update the local cache and, when a {@link Messenger} is provided,
+ * publish an invalidation so every other server sharing the backend drops its copy.
+ */
+@SuppressWarnings("unused")
+public class CachedDatabase extends StorageDatabase {
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AsyncCache<CacheKey, Optional<StorageObject>> cache;
+    private final CachedDatabaseConfig config;
+    private final StorageDatabase delegate;
+    private final Messenger messenger;
+
+    private volatile String subscription = null;
+
+    public CachedDatabase(StorageDatabase delegate, CachedDatabaseConfig config, Messenger messenger) {
+        this.delegate = delegate;
+        this.messenger = messenger;
+        this.config = config != null ? config : CachedDatabaseConfig.builder();
+
+        long positiveNanos = this.config.getExpireAfterWrite().toNanos();
+        long negativeNanos = this.config.getNegativeExpireAfterWrite().toNanos();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(this.config.getMaximumSize())
+                .expireAfter(new Expiry<CacheKey, Optional<StorageObject>>() {
+                    @Override
+                    public long expireAfterCreate(CacheKey key, Optional<StorageObject> value, long currentTime) {
+                        return value.isPresent() ? positiveNanos : negativeNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(CacheKey key, Optional<StorageObject> value, long currentTime, long currentDuration) {
+                        return value.isPresent() ? positiveNanos : negativeNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(CacheKey key, Optional<StorageObject> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+    }
+
+    public CachedDatabase(StorageDatabase delegate, CachedDatabaseConfig config) {
+        this(delegate, config, null);
+    }
+
+    @Override
+    public void connect() {
+        delegate.connect();
+        if (messenger != null && subscription == null) {
+            subscription = messenger.subscribe(config.getInvalidationChannel(), this::onInvalidation);
+        }
+    }
+
+    @Override
+    public void closeConnection() {
+        if (messenger != null && subscription != null) {
+            messenger.unsubscribe(subscription);
+            subscription = null;
+        }
+        invalidateAll();
+        delegate.closeConnection();
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByIdAsync(Class<T> clazz, String identifier) {
+        return cache.get(new CacheKey(clazz.getName(), identifier), (key, executor) ->
+                delegate.loadByIdAsync(clazz, identifier).thenApply(CachedDatabase::widen)
+        ).thenApply(found -> found.map(clazz::cast));
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<T> loadByIdSync(Class<T> clazz, String identifier) {
+        CompletableFuture<Optional<StorageObject>> loading = new CompletableFuture<>();
+        CompletableFuture<Optional<StorageObject>> future = cache.get(new CacheKey(clazz.getName(), identifier), (key, executor) -> loading);
+
+        if (future == loading) {
+            try {
+                loading.complete(widen(delegate.loadByIdSync(clazz, identifier)));
+            } catch (RuntimeException e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return future.join().map(clazz::cast);
+    }
+
+    @Override
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        Map<String, T> results = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+
+        for (String identifier : identifiers) {
+            CompletableFuture<Optional<StorageObject>> cached = cache.getIfPresent(new CacheKey(clazz.getName(), identifier));
+            if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) {
+                cached.join().ifPresent(obj -> results.put(identifier, clazz.cast(obj)));
+            } else {
+                missing.add(identifier);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, T> loaded = delegate.loadByIdsSync(clazz, missing);
+            for (String identifier : missing) {
+                T obj = loaded.get(identifier);
+                cache.put(new CacheKey(clazz.getName(), identifier), CompletableFuture.completedFuture(Optional.ofNullable(obj)));
+                if (obj != null) results.put(identifier, obj);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String extraIdentifier) {
+        return delegate.loadByExtraIdentifierAsync(clazz, extraIdentifier);
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<ReferencedObject> loadByExtraIdentifierSync(Class<T> clazz, String extraIdentifier) {
+        return delegate.loadByExtraIdentifierSync(clazz, extraIdentifier);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj) {
+        if (obj == null) return CompletableFuture.completedFuture(null);
+        return delegate.saveOrUpdateAsync(obj).thenRun(() -> afterWrite(List.of(obj)));
+    }
+
+    @Override
+    public void saveOrUpdateSync(StorageObject obj) {
+        if (obj == null) return;
+        delegate.saveOrUpdateSync(obj);
+        afterWrite(List.of(obj));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAllAsync(Collection<? extends StorageObject> objects) {
+        return delegate.saveAllAsync(objects).thenRun(() -> afterWrite(objects));
+    }
+
+    @Override
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        delegate.saveAllSync(objects);
+        afterWrite(objects);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdAsync(Class<T> clazz, String identifier) {
+        return delegate.deleteByIdAsync(clazz, identifier).thenRun(() -> afterDelete(clazz, List.of(identifier)));
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String identifier) {
+        delegate.deleteByIdSync(clazz, identifier);
+        afterDelete(clazz, List.of(identifier));
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return delegate.deleteByIdsAsync(clazz, identifiers).thenRun(() -> afterDelete(clazz, identifiers));
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        delegate.deleteByIdsSync(clazz, identifiers);
+        afterDelete(clazz, identifiers);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Set<T>> loadAllAsync(Class<T> clazz) {
+        return delegate.loadAllAsync(clazz);
+    }
+
+    @Override
+    public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
+        return delegate.loadAllSync(clazz);
+    }
+
+    @Override
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
+        return delegate.streamAll(clazz, fetchSize);
+    }
+
+    @Override
+    public <T extends StorageObject> List<T> querySync(Class<T> clazz, StorageQuery query) {
+        return delegate.querySync(clazz, query);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        return delegate.queryAsync(clazz, query);
+    }
+
+    @Override
+    public boolean commitSync(UnitOfWork unit) {
+        boolean committed = delegate.commitSync(unit);
+        if (committed) afterCommit(unit);
+        return committed;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        return delegate.commitAsync(unit).thenApply(committed -> {
+            if (committed) afterCommit(unit);
+            return committed;
+        });
+    }
+
+    @Override
+    public ObjectMapper mapper() {
+        return delegate.mapper();
+    }
+
+    @Override
+    public void enableChangeTracking(long maximumSize) {
+        delegate.enableChangeTracking(maximumSize);
+    }
+
+    @Override
+    public void disableChangeTracking() {
+        delegate.disableChangeTracking();
+    }
+
+    @Override
+    public ChangeTracker getChangeTracker() {
+        return delegate.getChangeTracker();
+    }
+
+    @Override
+    public boolean isDirty(StorageObject obj) {
+        return delegate.isDirty(obj);
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return delegate.getQueuedTasks();
+    }
+
+    @Override
+    public boolean expireAfterAccess(Duration duration) {
+        return delegate.expireAfterAccess(duration);
+    }
+
+    @Override
+    public void addErrorListener(BiConsumer<String, Exception> listener) {
+        super.addErrorListener(listener);
+        delegate.addErrorListener(listener);
+    }
+
+    @Override
+    public void removeErrorListener(BiConsumer<String, Exception> listener) {
+        super.removeErrorListener(listener);
+        delegate.removeErrorListener(listener);
+    }
+
+    public void invalidate(Class<?> clazz, String identifier) {
+        cache.synchronous().invalidate(new CacheKey(clazz.getName(), identifier));
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    public CacheStatistics getStatistics() {
+        CacheStats stats = cache.synchronous().stats();
+        return new CacheStatistics(
+                stats.hitCount(),
+                stats.missCount(),
+                stats.evictionCount(),
+                stats.loadFailureCount(),
+                cache.synchronous().estimatedSize()
+        );
+    }
+
+    private void afterWrite(Collection<? extends StorageObject> objects) {
+        Map<String, List<String>> written = new HashMap<>();
+        for (StorageObject obj : objects) {
+            if (obj == null) continue;
+            String identifier = mapper().extractIdentifier(obj);
+            if (identifier == null) continue;
+
+            String className = obj.getClass().getName();
+            cache.put(new CacheKey(className, identifier), CompletableFuture.completedFuture(Optional.of(obj)));
+            written.computeIfAbsent(className, k -> new ArrayList<>()).add(identifier);
+        }
+        written.forEach(this::publishInvalidation);
+    }
+
+    /**
+     * Caches the last operation of the unit on every object.
+     */
+    private void afterCommit(UnitOfWork unit) {
+        Map<CacheKey, UnitOfWork.Operation> latest = new LinkedHashMap<>();
+        for (UnitOfWork.Operation operation : unit.getOperations()) {
+            if (operation instanceof UnitOfWork.Save save) {
+                String identifier = mapper().extractIdentifier(save.object());
+                if (identifier == null) continue;
+                latest.put(new CacheKey(save.object().getClass().getName(), identifier), operation);
+            } else if (operation instanceof UnitOfWork.Delete delete) {
+                latest.put(new CacheKey(delete.type().getName(), delete.identifier()), operation);
+            }
+        }
+
+        List<StorageObject> saved = new ArrayList<>();
+        Map<Class<?>, List<String>> deleted = new LinkedHashMap<>();
+        for (UnitOfWork.Operation operation : latest.values()) {
+            if (operation instanceof UnitOfWork.Save save) {
+                saved.add(save.object());
+            } else if (operation instanceof UnitOfWork.Delete delete) {
+                deleted.computeIfAbsent(delete.type(), k -> new ArrayList<>()).add(delete.identifier());
+            }
+        }
+        if (!saved.isEmpty()) afterWrite(saved);
+        deleted.forEach(this::afterDelete);
+    }
+
+    private void afterDelete(Class<?> clazz, Collection<String> identifiers) {
+        boolean negative = !config.getNegativeExpireAfterWrite().isZero();
+        for (String identifier : identifiers) {
+            CacheKey key = new CacheKey(clazz.getName(), identifier);
+            if (negative) {
+                cache.put(key, CompletableFuture.completedFuture(Optional.empty()));
+            } else {
+                cache.synchronous().invalidate(key);
+            }
+        }
+        publishInvalidation(clazz.getName(), new ArrayList<>(identifiers));
+    }
+
+    /**
+     * Invalidations travel as text messages: destiny is the origin node,
+     * the first message is the class name and the rest are the identifiers.
+     */
+    private void publishInvalidation(String className, List<String> identifiers) {
+        if (messenger == null || identifiers.isEmpty()) return;
+
+        List<String> messages = new ArrayList<>(identifiers.size() + 1);
+        messages.add(className);
+        messages.addAll(identifiers);
+
+        Document payload = new Document("type", "text")
+                .append("destiny", nodeId)
+                .append("messages", messages);
+        try {
+            messenger.publish(config.getInvalidationChannel(), payload.toJson());
+        } catch (Exception e) {
+            logError("Failed to publish cache invalidation for " + className, e);
+        }
+    }
+
+    private void onInvalidation(ChannelMessageEvent event) {
+        if (!(event instanceof ChannelMessageWithoutObjectEvent message)) return;
+        if (nodeId.equals(message.getDestiny())) return;
+
+        String[] messages = message.getMessages();
+        if (messages == null || messages.length < 2) return;
+
+        for (int i = 1; i < messages.length; i++) {
+            cache.synchronous().invalidate(new CacheKey(messages[0], messages[i]));
+        }
+    }
+
+    private static Optional<StorageObject> widen(Optional<? extends StorageObject> value) {
+        return value.map(StorageObject.class::cast);
+    }
+
+    private record CacheKey(String className, String identifier) {
+
+    }
+}
@@ -0,0 +1,60 @@
+package me.blueslime.meteor.storage.database.cache;
+
+import java.time.Duration;
+
+public class CachedDatabaseConfig {
+    private long maximumSize = 10_000L;
+    private Duration expireAfterWrite = Duration.ofMinutes(10);
+    private Duration negativeExpireAfterWrite = Duration.ofSeconds(30);
+    private String invalidationChannel = "storage-cache-invalidation";
+
+    private CachedDatabaseConfig() {
+
+    }
+
+    public static CachedDatabaseConfig builder() {
+        return new CachedDatabaseConfig();
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Maximum amount of cached entries, the least valuable entries (by recency and frequency) are evicted first.
+     */
+    public CachedDatabaseConfig setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+        return this;
+    }
+
+    public Duration getExpireAfterWrite() {
+        return expireAfterWrite;
+    }
+
+    public CachedDatabaseConfig setExpireAfterWrite(Duration expireAfterWrite) {
+        this.expireAfterWrite = expireAfterWrite;
+        return this;
+    }
+
+    public Duration getNegativeExpireAfterWrite() {
+        return negativeExpireAfterWrite;
+    }
+
+    /**
+     * How long a missing identifier is remembered, {@link Duration#ZERO} disables negative caching.
+     */
+    public CachedDatabaseConfig setNegativeExpireAfterWrite(Duration negativeExpireAfterWrite) {
+        this.negativeExpireAfterWrite = negativeExpireAfterWrite;
+        return this;
+    }
+
+    public String getInvalidationChannel() {
+        return invalidationChannel;
+    }
+
+    public CachedDatabaseConfig setInvalidationChannel(String invalidationChannel) {
+        this.invalidationChannel = invalidationChannel;
+        return this;
+    }
+}
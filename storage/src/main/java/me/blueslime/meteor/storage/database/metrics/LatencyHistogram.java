@@ -0,0 +1,58 @@
+package me.blueslime.meteor.storage.database.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies of one operation on one class, counted into fixed buckets so recording never allocates or locks.
+ */
+final class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets, a last bucket counts everything slower than 10 seconds.
+     */
+    static final long[] BOUNDS_NANOS = {
+            micros(50), micros(100), micros(250), micros(500),
+            millis(1), micros(2500), millis(5), millis(10), millis(25), millis(50),
+            millis(100), millis(250), millis(500), millis(1000), millis(2500), millis(5000), millis(10_000)
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos, boolean failed) {
+        int index = Arrays.binarySearch(BOUNDS_NANOS, nanos);
+        buckets[index >= 0 ? index : -index - 1].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        if (failed) errors.increment();
+    }
+
+    OperationStatistics snapshot(StorageMetrics.Operation operation, String type, long elapsedNanos) {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new OperationStatistics(operation, type, count, errors.sum(), totalNanos.sum(), maxNanos.get(), counts, elapsedNanos);
+    }
+
+    private static long micros(long micros) {
+        return TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,320 @@
+package me.blueslime.meteor.storage.database.metrics;
+
+import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.database.metrics.StorageMetrics.Operation;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import me.blueslime.meteor.storage.references.ReferencedObject;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Measures every call made to any {@link StorageDatabase}.
+ * <p>
+ * Synchronous calls are timed on the calling thread, async calls from the call until their future completes,
+ * and {@link #streamAll(Class, int)} until the stream is opened. Backends log most failures instead of throwing
+ * them: an error logged while a synchronous call runs marks that call as failed, errors logged by background
+ * work are only counted in {@link MetricsSnapshot#getErrors()}.
+ *
+ * <pre>{@code
+ * MeteredDatabase database = new MeteredDatabase(new MongoDatabase(uri, "meteor"));
+ * getLogger().info(database.getSnapshot().toString());
+ * }</pre>
+ */
+@SuppressWarnings("unused")
+public class MeteredDatabase extends StorageDatabase {
+
+    private static final class Call {
+        private boolean failed = false;
+    }
+
+    private final ThreadLocal<Call> calls = new ThreadLocal<>();
+    private final StorageMetrics metrics = new StorageMetrics();
+    private final StorageDatabase delegate;
+
+    public MeteredDatabase(StorageDatabase delegate) {
+        this.delegate = delegate;
+        delegate.addErrorListener(this::onError);
+    }
+
+    private void onError(String message, Exception e) {
+        metrics.error();
+        Call call = calls.get();
+        if (call != null) call.failed = true;
+    }
+
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    public MetricsSnapshot getSnapshot() {
+        return metrics.snapshot(delegate.getQueuedTasks());
+    }
+
+    @Override
+    public void connect() {
+        delegate.connect();
+    }
+
+    @Override
+    public void closeConnection() {
+        delegate.closeConnection();
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByIdAsync(Class<T> clazz, String identifier) {
+        return timeAsync(Operation.LOAD_BY_ID, clazz, () -> delegate.loadByIdAsync(clazz, identifier));
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<T> loadByIdSync(Class<T> clazz, String identifier) {
+        return time(Operation.LOAD_BY_ID, clazz, () -> delegate.loadByIdSync(clazz, identifier));
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Map<String, T>> loadByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return timeAsync(Operation.LOAD_BY_IDS, clazz, () -> delegate.loadByIdsAsync(clazz, identifiers));
+    }
+
+    @Override
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        return time(Operation.LOAD_BY_IDS, clazz, () -> delegate.loadByIdsSync(clazz, identifiers));
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String extraIdentifier) {
+        return timeAsync(Operation.LOAD_BY_EXTRA_IDENTIFIER, clazz, () -> delegate.loadByExtraIdentifierAsync(clazz, extraIdentifier));
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<ReferencedObject> loadByExtraIdentifierSync(Class<T> clazz, String extraIdentifier) {
+        return time(Operation.LOAD_BY_EXTRA_IDENTIFIER, clazz, () -> delegate.loadByExtraIdentifierSync(clazz, extraIdentifier));
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByExtraIdentifierObjectAsync(Class<T> clazz, String extraIdentifier) {
+        return timeAsync(Operation.LOAD_BY_EXTRA_IDENTIFIER_OBJECT, clazz, () -> delegate.loadByExtraIdentifierObjectAsync(clazz, extraIdentifier));
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<T> loadByExtraIdentifierObjectSync(Class<T> clazz, String extraIdentifier) {
+        return time(Operation.LOAD_BY_EXTRA_IDENTIFIER_OBJECT, clazz, () -> delegate.loadByExtraIdentifierObjectSync(clazz, extraIdentifier));
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Set<T>> loadAllAsync(Class<T> clazz) {
+        return timeAsync(Operation.LOAD_ALL, clazz, () -> delegate.loadAllAsync(clazz));
+    }
+
+    @Override
+    public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
+        return time(Operation.LOAD_ALL, clazz, () -> delegate.loadAllSync(clazz));
+    }
+
+    @Override
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
+        return time(Operation.STREAM_ALL, clazz, () -> delegate.streamAll(clazz, fetchSize));
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        return timeAsync(Operation.QUERY, clazz, () -> delegate.queryAsync(clazz, query));
+    }
+
+    @Override
+    public <T extends StorageObject> List<T> querySync(Class<T> clazz, StorageQuery query) {
+        return time(Operation.QUERY, clazz, () -> delegate.querySync(clazz, query));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj) {
+        return timeAsync(Operation.SAVE, obj == null ? null : obj.getClass(), () -> delegate.saveOrUpdateAsync(obj));
+    }
+
+    @Override
+    public void saveOrUpdateSync(StorageObject obj) {
+        time(Operation.SAVE, obj == null ? null : obj.getClass(), () -> {
+            delegate.saveOrUpdateSync(obj);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAllAsync(Collection<? extends StorageObject> objects) {
+        return timeAsync(Operation.SAVE_ALL, typeOf(objects), () -> delegate.saveAllAsync(objects));
+    }
+
+    @Override
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        time(Operation.SAVE_ALL, typeOf(objects), () -> {
+            delegate.saveAllSync(objects);
+            return null;
+        });
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdAsync(Class<T> clazz, String identifier) {
+        return timeAsync(Operation.DELETE, clazz, () -> delegate.deleteByIdAsync(clazz, identifier));
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String identifier) {
+        time(Operation.DELETE, clazz, () -> {
+            delegate.deleteByIdSync(clazz, identifier);
+            return null;
+        });
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return timeAsync(Operation.DELETE_ALL, clazz, () -> delegate.deleteByIdsAsync(clazz, identifiers));
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        time(Operation.DELETE_ALL, clazz, () -> {
+            delegate.deleteByIdsSync(clazz, identifiers);
+            return null;
+        });
+    }
+
+    /**
+     * A unit that was not committed counts as a failed call.
+     */
+    @Override
+    public boolean commitSync(UnitOfWork unit) {
+        Call call = new Call();
+        Call previous = calls.get();
+        calls.set(call);
+        long start = System.nanoTime();
+        boolean committed = false;
+        try {
+            committed = delegate.commitSync(unit);
+            return committed;
+        } finally {
+            restore(previous);
+            metrics.record(Operation.COMMIT, null, System.nanoTime() - start, !committed || call.failed);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        long start = System.nanoTime();
+        CompletableFuture<Boolean> future;
+        try {
+            future = delegate.commitAsync(unit);
+        } catch (RuntimeException e) {
+            metrics.record(Operation.COMMIT, null, System.nanoTime() - start, true);
+            throw e;
+        }
+        return future.whenComplete((committed, e) ->
+                metrics.record(Operation.COMMIT, null, System.nanoTime() - start, e != null || !Boolean.TRUE.equals(committed)));
+    }
+
+    @Override
+    public ObjectMapper mapper() {
+        return delegate.mapper();
+    }
+
+    @Override
+    public void enableChangeTracking(long maximumSize) {
+        delegate.enableChangeTracking(maximumSize);
+    }
+
+    @Override
+    public void disableChangeTracking() {
+        delegate.disableChangeTracking();
+    }
+
+    @Override
+    public ChangeTracker getChangeTracker() {
+        return delegate.getChangeTracker();
+    }
+
+    @Override
+    public boolean isDirty(StorageObject obj) {
+        return delegate.isDirty(obj);
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return delegate.getQueuedTasks();
+    }
+
+    @Override
+    public boolean expireAfterAccess(Duration duration) {
+        return delegate.expireAfterAccess(duration);
+    }
+
+    @Override
+    public void addErrorListener(BiConsumer<String, Exception> listener) {
+        super.addErrorListener(listener);
+        delegate.addErrorListener(listener);
+    }
+
+    @Override
+    public void removeErrorListener(BiConsumer<String, Exception> listener) {
+        super.removeErrorListener(listener);
+        delegate.removeErrorListener(listener);
+    }
+
+    private <R> R time(Operation operation, Class<?> type, Supplier<R> work) {
+        Call call = new Call();
+        Call previous = calls.get();
+        calls.set(call);
+        long start = System.nanoTime();
+        boolean thrown = true;
+        try {
+            R result = work.get();
+            thrown = false;
+            return result;
+        } finally {
+            restore(previous);
+            metrics.record(operation, type, System.nanoTime() - start, thrown || call.failed);
+        }
+    }
+
+    private <R> CompletableFuture<R> timeAsync(Operation operation, Class<?> type, Supplier<CompletableFuture<R>> work) {
+        long start = System.nanoTime();
+        CompletableFuture<R> future;
+        try {
+            future = work.get();
+        } catch (RuntimeException e) {
+            metrics.record(operation, type, System.nanoTime() - start, true);
+            throw e;
+        }
+        return future.whenComplete((result, e) -> metrics.record(operation, type, System.nanoTime() - start, e != null));
+    }
+
+    private void restore(Call previous) {
+        if (previous == null) {
+            calls.remove();
+        } else {
+            calls.set(previous);
+        }
+    }
+
+    /**
+     * Class shared by every object of the collection, null when they belong to several classes.
+     */
+    private static Class<?> typeOf(Collection<? extends StorageObject> objects) {
+        Class<?> type = null;
+        for (StorageObject obj : objects) {
+            if (obj == null) continue;
+            if (type == null) {
+                type = obj.getClass();
+            } else if (type != obj.getClass()) {
+                return null;
+            }
+        }
+        return type;
+    }
+}
@@ -0,0 +1,68 @@
+package me.blueslime.meteor.storage.database.metrics;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Metrics of a database at one point in time.
+ * Call counts, latencies and errors are accumulated since the metrics were started or reset,
+ * the queue depth is read at the time of the snapshot.
+ */
+public class MetricsSnapshot {
+
+    private final List<OperationStatistics> operations;
+    private final long errors;
+    private final int queuedTasks;
+    private final long elapsedNanos;
+
+    public MetricsSnapshot(List<OperationStatistics> operations, long errors, int queuedTasks, long elapsedNanos) {
+        this.operations = List.copyOf(operations);
+        this.errors = errors;
+        this.queuedTasks = queuedTasks;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Statistics of every operation and class that was called at least once.
+     */
+    public List<OperationStatistics> getOperations() {
+        return operations;
+    }
+
+    public Optional<OperationStatistics> get(StorageMetrics.Operation operation, Class<?> type) {
+        String name = type == null ? null : type.getSimpleName();
+        for (OperationStatistics statistics : operations) {
+            if (statistics.getOperation() == operation && (name == null ? statistics.getType() == null : name.equals(statistics.getType()))) {
+                return Optional.of(statistics);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Every error logged by the database, including those of background work that belongs to no call.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("MetricsSnapshot{errors=").append(errors)
+                .append(", queuedTasks=").append(queuedTasks)
+                .append(", operations=[");
+        for (int i = 0; i < operations.size(); i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(operations.get(i));
+        }
+        return builder.append("]}").toString();
+    }
+}
@@ -0,0 +1,115 @@
+package me.blueslime.meteor.storage.database.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the calls of one operation on one class.
+ * Percentiles are estimated from the histogram buckets, so they are exact only to the width of a bucket.
+ */
+public class OperationStatistics {
+
+    private final StorageMetrics.Operation operation;
+    private final String type;
+    private final long count;
+    private final long errors;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long[] bucketCounts;
+    private final long elapsedNanos;
+
+    public OperationStatistics(StorageMetrics.Operation operation, String type, long count, long errors,
+                               long totalNanos, long maxNanos, long[] bucketCounts, long elapsedNanos) {
+        this.operation = operation;
+        this.type = type;
+        this.count = count;
+        this.errors = errors;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.bucketCounts = bucketCounts.clone();
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public StorageMetrics.Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Simple name of the class, null for calls spanning several classes such as a unit of work.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Calls that threw, completed exceptionally or logged an error.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * Calls per second since the metrics were started.
+     */
+    public double getThroughput() {
+        return elapsedNanos <= 0 ? 0 : count / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Estimated latency under which the given fraction of the calls completed.
+     *
+     * @param percentile fraction between 0 and 1, 0.99 for the 99th percentile
+     */
+    public long getPercentileNanos(double percentile) {
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(Math.min(1.0, Math.max(0.0, percentile)) * count));
+
+        long seen = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            long inBucket = bucketCounts[i];
+            if (seen + inBucket < target) {
+                seen += inBucket;
+                continue;
+            }
+            long lower = i == 0 ? 0 : LatencyHistogram.BOUNDS_NANOS[i - 1];
+            long upper = i < LatencyHistogram.BOUNDS_NANOS.length ? Math.min(LatencyHistogram.BOUNDS_NANOS[i], maxNanos) : maxNanos;
+            if (upper <= lower) return upper;
+            return lower + (long) ((upper - lower) * ((double) (target - seen) / inBucket));
+        }
+        return maxNanos;
+    }
+
+    /**
+     * Upper bounds of the histogram buckets in nanoseconds, the last bucket of {@link #getBucketCounts()} has none.
+     */
+    public static long[] getBucketBoundsNanos() {
+        return LatencyHistogram.BOUNDS_NANOS.clone();
+    }
+
+    public long[] getBucketCounts() {
+        return bucketCounts.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStatistics{operation=" + operation + ", type=" + type + ", count=" + count + ", errors=" + errors +
+               ", meanMicros=" + TimeUnit.NANOSECONDS.toMicros((long) getMeanNanos()) +
+               ", p99Micros=" + TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(0.99)) +
+               ", maxMicros=" + TimeUnit.NANOSECONDS.toMicros(maxNanos) + "}";
+    }
+}
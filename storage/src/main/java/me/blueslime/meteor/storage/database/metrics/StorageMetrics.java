@@ -0,0 +1,79 @@
+package me.blueslime.meteor.storage.database.metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts, latency histograms and errors of the operations of a database, by operation and class.
+ * Filled by {@link MeteredDatabase}, read with {@link #snapshot(int)}.
+ */
+public class StorageMetrics {
+
+    public enum Operation {
+        LOAD_BY_ID,
+        LOAD_BY_IDS,
+        LOAD_BY_EXTRA_IDENTIFIER,
+        LOAD_BY_EXTRA_IDENTIFIER_OBJECT,
+        LOAD_ALL,
+        STREAM_ALL,
+        QUERY,
+        SAVE,
+        SAVE_ALL,
+        DELETE,
+        DELETE_ALL,
+        COMMIT
+    }
+
+    private record Key(Operation operation, String type) {
+
+    }
+
+    private final Map<Key, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+    private volatile long startedNanos = System.nanoTime();
+
+    /**
+     * Records one call.
+     *
+     * @param type   class of the call, null when it spans several classes
+     * @param nanos  time from the call to its completion
+     * @param failed whether the call failed
+     */
+    public void record(Operation operation, Class<?> type, long nanos, boolean failed) {
+        histograms.computeIfAbsent(new Key(operation, type == null ? null : type.getSimpleName()), key -> new LatencyHistogram())
+                .record(nanos, failed);
+    }
+
+    /**
+     * Counts an error logged by the database, whether or not it could be tied to a call.
+     */
+    public void error() {
+        errors.increment();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Forgets every recorded call and error.
+     */
+    public void reset() {
+        histograms.clear();
+        errors.reset();
+        startedNanos = System.nanoTime();
+    }
+
+    /**
+     * @param queuedTasks tasks waiting for the executor of the database at the time of the snapshot
+     */
+    public MetricsSnapshot snapshot(int queuedTasks) {
+        long elapsed = System.nanoTime() - startedNanos;
+        List<OperationStatistics> operations = new ArrayList<>(histograms.size());
+        histograms.forEach((key, histogram) -> operations.add(histogram.snapshot(key.operation(), key.type(), elapsed)));
+        operations.sort(Comparator.comparing(OperationStatistics::getOperation)
+                .thenComparing(OperationStatistics::getType, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return new MetricsSnapshot(operations, errors.sum(), queuedTasks, elapsed);
+    }
+}
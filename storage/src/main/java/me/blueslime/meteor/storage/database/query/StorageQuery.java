@@ -0,0 +1,212 @@
+package me.blueslime.meteor.storage.database.query;
+
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import org.bson.Document;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Query over the stored properties of a class.
+ * <p>
+ * Properties are referenced by their storage key. Conditions are combined with AND, results can be
+ * ordered by one property and limited. Backends resolve conditions on properties marked with
+ * {@link me.blueslime.meteor.storage.interfaces.StorageIndexed} natively, any other condition is
+ * evaluated against the stored objects.
+ *
+ * <pre>{@code
+ * StorageQuery query = StorageQuery.builder()
+ *         .greaterThan("level", 50)
+ *         .orderBy("level", false)
+ *         .limit(10);
+ * }</pre>
+ */
+@SuppressWarnings("unused")
+public class StorageQuery {
+
+    public enum Operator {
+        EQUALS,
+        GREATER_THAN,
+        GREATER_OR_EQUALS,
+        LESS_THAN,
+        LESS_OR_EQUALS
+    }
+
+    /**
+     * Single condition, the value is already in its storable form: enums and characters as strings.
+     */
+    public record Condition(String key, Operator operator, Object value) {
+
+        public boolean test(Object stored) {
+            if (operator == Operator.EQUALS) {
+                if (value == null || stored == null) return value == stored;
+                return compare(stored, value) == 0;
+            }
+            if (value == null || stored == null) return false;
+
+            int result = compare(stored, value);
+            return switch (operator) {
+                case GREATER_THAN -> result > 0;
+                case GREATER_OR_EQUALS -> result >= 0;
+                case LESS_THAN -> result < 0;
+                case LESS_OR_EQUALS -> result <= 0;
+                default -> false;
+            };
+        }
+    }
+
+    private final List<Condition> conditions = new ArrayList<>();
+    private String orderBy = null;
+    private boolean ascending = true;
+    private int limit = -1;
+
+    private StorageQuery() {
+
+    }
+
+    public static StorageQuery builder() {
+        return new StorageQuery();
+    }
+
+    public StorageQuery equalTo(String key, Object value) {
+        return where(key, Operator.EQUALS, value);
+    }
+
+    public StorageQuery greaterThan(String key, Object value) {
+        return where(key, Operator.GREATER_THAN, value);
+    }
+
+    public StorageQuery greaterOrEquals(String key, Object value) {
+        return where(key, Operator.GREATER_OR_EQUALS, value);
+    }
+
+    public StorageQuery lessThan(String key, Object value) {
+        return where(key, Operator.LESS_THAN, value);
+    }
+
+    public StorageQuery lessOrEquals(String key, Object value) {
+        return where(key, Operator.LESS_OR_EQUALS, value);
+    }
+
+    /**
+     * Inclusive range on a property.
+     */
+    public StorageQuery between(String key, Object min, Object max) {
+        return greaterOrEquals(key, min).lessOrEquals(key, max);
+    }
+
+    public StorageQuery where(String key, Operator operator, Object value) {
+        conditions.add(new Condition(Objects.requireNonNull(key, "key"), Objects.requireNonNull(operator, "operator"), storable(value)));
+        return this;
+    }
+
+    /**
+     * Orders the results by a property, objects without a value for it go last.
+     */
+    public StorageQuery orderBy(String key, boolean ascending) {
+        this.orderBy = key;
+        this.ascending = ascending;
+        return this;
+    }
+
+    /**
+     * Maximum amount of results, a negative value means no limit.
+     */
+    public StorageQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public List<Condition> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean hasLimit() {
+        return limit >= 0;
+    }
+
+    /**
+     * Storage keys referenced by the conditions and the ordering.
+     */
+    public Set<String> getKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        for (Condition condition : conditions) keys.add(condition.key());
+        if (orderBy != null) keys.add(orderBy);
+        return keys;
+    }
+
+    /**
+     * Whether a stored document satisfies every condition.
+     */
+    public boolean matches(Document document) {
+        for (Condition condition : conditions) {
+            if (!condition.test(document.get(condition.key()))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Filters, orders and limits objects in memory.
+     * Used by backends for the conditions they can not resolve natively.
+     *
+     * @param mapper  mapper used to read the stored properties of every object
+     * @param objects candidate objects, the stream is consumed but not closed
+     * @return matching objects
+     */
+    public <T> List<T> apply(ObjectMapper mapper, Stream<T> objects) {
+        Stream<Map.Entry<T, Document>> matching = objects
+                .map(obj -> Map.entry(obj, mapper.toDocument(obj)))
+                .filter(entry -> matches(entry.getValue()));
+
+        if (orderBy != null) {
+            Comparator<Object> values = ascending ? StorageQuery::compare : (a, b) -> compare(b, a);
+            matching = matching.sorted(Comparator.comparing(entry -> entry.getValue().get(orderBy), Comparator.nullsLast(values)));
+        }
+        if (hasLimit()) {
+            matching = matching.limit(limit);
+        }
+        return matching.map(Map.Entry::getKey).toList();
+    }
+
+    /**
+     * Compares two storable values, numbers of different types are compared by value
+     * and any other pair of non comparable values by their text.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static int compare(Object a, Object b) {
+        if (a instanceof Number x && b instanceof Number y) {
+            if (isIntegral(x) && isIntegral(y)) return Long.compare(x.longValue(), y.longValue());
+            if (x instanceof BigDecimal || y instanceof BigDecimal || x instanceof BigInteger || y instanceof BigInteger) {
+                return new BigDecimal(x.toString()).compareTo(new BigDecimal(y.toString()));
+            }
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        if (a instanceof Comparable comparable && a.getClass() == b.getClass()) {
+            return comparable.compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte;
+    }
+
+    private static Object storable(Object value) {
+        if (value instanceof Enum<?> || value instanceof Character) return value.toString();
+        return value;
+    }
+}
@@ -0,0 +1,648 @@
+package me.blueslime.meteor.storage.database.tiered;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
+import me.blueslime.meteor.storage.database.writebehind.WriteBehindDatabase;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import me.blueslime.meteor.storage.references.ReferencedObject;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Composite {@link StorageDatabase} made of a fast hot tier in front of a durable cold tier,
+ * for example a {@link me.blueslime.meteor.storage.types.RedisDatabase} over a {@link me.blueslime.meteor.storage.types.MariaDatabase}.
+ * <p>
+ * Reads by identifier and by extra identifier try the hot tier first and fall back to the cold tier,
+ * objects found there are promoted to the hot tier. The cold tier holds every object, so
+ * {@link #loadAllSync(Class)}, {@link #streamAll(Class, int)} and queries are served by it.
+ * Saves and deletes reach both tiers, with {@link TieredDatabaseConfig.WritePolicy#WRITE_BACK}
+ * cold tier saves are coalesced by a {@link WriteBehindDatabase}.
+ * <p>
+ * Objects this database reads or writes are removed from the hot tier once they expire or once the hot tier
+ * is full, so it only holds the active working set. A hot tier with its own time to live, such as
+ * {@link me.blueslime.meteor.storage.types.RedisDatabase}, expires the objects by itself, so they also expire
+ * after a restart. Otherwise expiry is driven by the accesses of this database and the objects left by a previous run
+ * are only tracked again for the classes of {@link TieredDatabaseConfig#addHotClass(Class)}.
+ * Objects removed while another server still uses them are promoted again on its next read.
+ */
+@SuppressWarnings("unused")
+public class TieredDatabase extends StorageDatabase {
+
+    private final Map<TierKey, Object> promotions = new ConcurrentHashMap<>();
+
+    private final LongAdder hotHits = new LongAdder();
+    private final LongAdder coldHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder promoted = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private final Cache<TierKey, Boolean> residents;
+    private final WriteBehindDatabase writeBehind;
+    private final TieredDatabaseConfig config;
+    private final StorageDatabase hot;
+    private final StorageDatabase cold;
+
+    public TieredDatabase(StorageDatabase hot, StorageDatabase cold, TieredDatabaseConfig config) {
+        this.config = config != null ? config : TieredDatabaseConfig.builder();
+        this.hot = hot;
+
+        if (this.config.getWritePolicy() == TieredDatabaseConfig.WritePolicy.WRITE_BACK) {
+            this.writeBehind = new WriteBehindDatabase(cold, this.config.getWriteBehind());
+            this.cold = writeBehind;
+        } else {
+            this.writeBehind = null;
+            this.cold = cold;
+        }
+
+        Duration expireAfterAccess = this.config.getHotExpireAfterAccess();
+        long maximumSize = this.config.getHotMaximumSize();
+        boolean expires = expireAfterAccess != null && !expireAfterAccess.isZero()
+                && !hot.expireAfterAccess(expireAfterAccess);
+
+        if (!expires && maximumSize <= 0) {
+            this.residents = null;
+        } else {
+            Caffeine<Object, Object> builder = Caffeine.newBuilder().scheduler(Scheduler.systemScheduler());
+            if (expires) builder.expireAfterAccess(expireAfterAccess);
+            if (maximumSize > 0) builder.maximumSize(maximumSize);
+            this.residents = builder
+                    .<TierKey, Boolean>removalListener((key, value, cause) -> onRemoval(key, cause))
+                    .build();
+        }
+    }
+
+    public TieredDatabase(StorageDatabase hot, StorageDatabase cold) {
+        this(hot, cold, null);
+    }
+
+    @Override
+    public void connect() {
+        cold.connect();
+        hot.connect();
+        if (residents == null) return;
+        for (Class<? extends StorageObject> clazz : config.getHotClasses()) {
+            reseed(clazz);
+        }
+    }
+
+    /**
+     * Tracks the objects of the class already in the hot tier, without refreshing the ones this database tracks.
+     */
+    private void reseed(Class<? extends StorageObject> clazz) {
+        try (Stream<? extends StorageObject> objects = hot.streamAll(clazz)) {
+            objects.forEach(obj -> {
+                String identifier = mapper().extractIdentifier(obj);
+                if (identifier != null) residents.asMap().putIfAbsent(new TierKey(clazz, identifier), Boolean.TRUE);
+            });
+        } catch (Exception e) {
+            logError("Failed to track the hot tier objects of " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * Drains the pending cold tier writes before closing both tiers, objects kept in the hot tier stay there.
+     */
+    @Override
+    public void closeConnection() {
+        if (residents != null) residents.invalidateAll();
+        cold.closeConnection();
+        hot.closeConnection();
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByIdAsync(Class<T> clazz, String identifier) {
+        return hot.loadByIdAsync(clazz, identifier).thenCompose(found -> {
+            if (found.isPresent()) {
+                hit(clazz, identifier);
+                return CompletableFuture.completedFuture(found);
+            }
+            return loadFromColdAsync(clazz, identifier);
+        });
+    }
+
+    private <T extends StorageObject> CompletableFuture<Optional<T>> loadFromColdAsync(Class<T> clazz, String identifier) {
+        Map<TierKey, Object> tokens = beginPromotion(clazz, List.of(identifier));
+        return cold.loadByIdAsync(clazz, identifier).thenApply(loaded -> {
+            promoteAsync(tokens, clazz, single(identifier, loaded));
+            return loaded;
+        });
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<T> loadByIdSync(Class<T> clazz, String identifier) {
+        Optional<T> found = hot.loadByIdSync(clazz, identifier);
+        if (found.isPresent()) {
+            hit(clazz, identifier);
+            return found;
+        }
+        return loadFromCold(clazz, identifier);
+    }
+
+    private <T extends StorageObject> Optional<T> loadFromCold(Class<T> clazz, String identifier) {
+        Map<TierKey, Object> tokens = beginPromotion(clazz, List.of(identifier));
+        Optional<T> loaded = cold.loadByIdSync(clazz, identifier);
+        promoteSync(tokens, clazz, single(identifier, loaded));
+        return loaded;
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Map<String, T>> loadByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return hot.loadByIdsAsync(clazz, identifiers).thenCompose(found -> {
+            Map<String, T> results = new HashMap<>(found);
+            List<String> missing = hits(clazz, identifiers, results);
+            if (missing.isEmpty()) return CompletableFuture.completedFuture(results);
+
+            Map<TierKey, Object> tokens = beginPromotion(clazz, missing);
+            return cold.loadByIdsAsync(clazz, missing).thenApply(loaded -> {
+                promoteAsync(tokens, clazz, counted(loaded, missing.size()));
+                results.putAll(loaded);
+                return results;
+            });
+        });
+    }
+
+    @Override
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        Map<String, T> results = new HashMap<>(hot.loadByIdsSync(clazz, identifiers));
+        List<String> missing = hits(clazz, identifiers, results);
+        if (missing.isEmpty()) return results;
+
+        Map<TierKey, Object> tokens = beginPromotion(clazz, missing);
+        Map<String, T> loaded = cold.loadByIdsSync(clazz, missing);
+        promoteSync(tokens, clazz, counted(loaded, missing.size()));
+        results.putAll(loaded);
+        return results;
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String extraIdentifier) {
+        return hot.loadByExtraIdentifierAsync(clazz, extraIdentifier).thenCompose(found -> found.isPresent()
+                ? CompletableFuture.completedFuture(found)
+                : cold.loadByExtraIdentifierAsync(clazz, extraIdentifier));
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<ReferencedObject> loadByExtraIdentifierSync(Class<T> clazz, String extraIdentifier) {
+        Optional<ReferencedObject> found = hot.loadByExtraIdentifierSync(clazz, extraIdentifier);
+        return found.isPresent() ? found : cold.loadByExtraIdentifierSync(clazz, extraIdentifier);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByExtraIdentifierObjectAsync(Class<T> clazz, String extraIdentifier) {
+        return hot.loadByExtraIdentifierObjectAsync(clazz, extraIdentifier).thenCompose(found -> {
+            if (found.isPresent()) {
+                hit(found.get());
+                return CompletableFuture.completedFuture(found);
+            }
+            return cold.loadByExtraIdentifierAsync(clazz, extraIdentifier).thenCompose(reference -> {
+                if (reference.isEmpty()) {
+                    misses.increment();
+                    return CompletableFuture.completedFuture(Optional.empty());
+                }
+                return loadFromColdAsync(clazz, reference.get().getObject());
+            });
+        });
+    }
+
+    /**
+     * Resolves the extra identifier in the hot tier, a miss resolves it in the cold tier and promotes its object.
+     */
+    @Override
+    public <T extends StorageObject> Optional<T> loadByExtraIdentifierObjectSync(Class<T> clazz, String extraIdentifier) {
+        Optional<T> found = hot.loadByExtraIdentifierObjectSync(clazz, extraIdentifier);
+        if (found.isPresent()) {
+            hit(found.get());
+            return found;
+        }
+        Optional<ReferencedObject> reference = cold.loadByExtraIdentifierSync(clazz, extraIdentifier);
+        if (reference.isEmpty()) {
+            misses.increment();
+            return Optional.empty();
+        }
+        return loadFromCold(clazz, reference.get().getObject());
+    }
+
+    @Override
+    public CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj) {
+        if (obj == null) return CompletableFuture.completedFuture(null);
+        List<StorageObject> objects = List.of(obj);
+        if (writeBehind != null) {
+            writeBehind.saveOrUpdateAsync(obj);
+            return writeHot(objects, () -> hot.saveOrUpdateAsync(obj));
+        }
+        return cold.saveOrUpdateAsync(obj).thenCompose(ignored -> writeHot(objects, () -> hot.saveOrUpdateAsync(obj)));
+    }
+
+    @Override
+    public void saveOrUpdateSync(StorageObject obj) {
+        if (obj == null) return;
+        if (writeBehind != null) {
+            writeBehind.saveOrUpdateAsync(obj);
+        } else {
+            cold.saveOrUpdateSync(obj);
+        }
+        List<TierKey> keys = fence(List.of(obj));
+        hot.saveOrUpdateSync(obj);
+        touch(keys);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAllAsync(Collection<? extends StorageObject> objects) {
+        if (writeBehind != null) {
+            queueCold(objects);
+            return writeHot(objects, () -> hot.saveAllAsync(objects));
+        }
+        return cold.saveAllAsync(objects).thenCompose(ignored -> writeHot(objects, () -> hot.saveAllAsync(objects)));
+    }
+
+    @Override
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        if (writeBehind != null) {
+            queueCold(objects);
+        } else {
+            cold.saveAllSync(objects);
+        }
+        List<TierKey> keys = fence(objects);
+        hot.saveAllSync(objects);
+        touch(keys);
+    }
+
+    private void queueCold(Collection<? extends StorageObject> objects) {
+        for (StorageObject obj : objects) {
+            if (obj != null) writeBehind.saveOrUpdateAsync(obj);
+        }
+    }
+
+    /**
+     * Fences the objects against running promotions before their hot tier write starts.
+     */
+    private CompletableFuture<Void> writeHot(Collection<? extends StorageObject> objects, Supplier<CompletableFuture<Void>> write) {
+        List<TierKey> keys = fence(objects);
+        return write.get().thenRun(() -> touch(keys));
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdAsync(Class<T> clazz, String identifier) {
+        return cold.deleteByIdAsync(clazz, identifier).thenCompose(ignored -> {
+            removed(clazz, List.of(identifier));
+            return hot.deleteByIdAsync(clazz, identifier);
+        });
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String identifier) {
+        cold.deleteByIdSync(clazz, identifier);
+        removed(clazz, List.of(identifier));
+        hot.deleteByIdSync(clazz, identifier);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return cold.deleteByIdsAsync(clazz, identifiers).thenCompose(ignored -> {
+            removed(clazz, identifiers);
+            return hot.deleteByIdsAsync(clazz, identifiers);
+        });
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        cold.deleteByIdsSync(clazz, identifiers);
+        removed(clazz, identifiers);
+        hot.deleteByIdsSync(clazz, identifiers);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Set<T>> loadAllAsync(Class<T> clazz) {
+        return cold.loadAllAsync(clazz);
+    }
+
+    @Override
+    public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
+        return cold.loadAllSync(clazz);
+    }
+
+    @Override
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
+        return cold.streamAll(clazz, fetchSize);
+    }
+
+    @Override
+    public <T extends StorageObject> List<T> querySync(Class<T> clazz, StorageQuery query) {
+        return cold.querySync(clazz, query);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        return cold.queryAsync(clazz, query);
+    }
+
+    /**
+     * Commits the unit to the cold tier and applies it to the hot tier once it is committed,
+     * objects of a unit the hot tier fails to apply are removed from it.
+     */
+    @Override
+    public boolean commitSync(UnitOfWork unit) {
+        boolean committed = cold.commitSync(unit);
+        if (committed) {
+            Map<TierKey, Boolean> keys = fence(unit);
+            committedHot(keys, hot.commitSync(unit));
+        }
+        return committed;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        return cold.commitAsync(unit).thenCompose(committed -> {
+            if (!committed) return CompletableFuture.completedFuture(false);
+            Map<TierKey, Boolean> keys = fence(unit);
+            return hot.commitAsync(unit).thenApply(applied -> {
+                committedHot(keys, applied);
+                return true;
+            });
+        });
+    }
+
+    @Override
+    public ObjectMapper mapper() {
+        return cold.mapper();
+    }
+
+    @Override
+    public void enableChangeTracking(long maximumSize) {
+        cold.enableChangeTracking(maximumSize);
+    }
+
+    @Override
+    public void disableChangeTracking() {
+        cold.disableChangeTracking();
+    }
+
+    @Override
+    public ChangeTracker getChangeTracker() {
+        return cold.getChangeTracker();
+    }
+
+    @Override
+    public boolean isDirty(StorageObject obj) {
+        return cold.isDirty(obj);
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return hot.getQueuedTasks() + cold.getQueuedTasks();
+    }
+
+    @Override
+    public void addErrorListener(BiConsumer<String, Exception> listener) {
+        super.addErrorListener(listener);
+        hot.addErrorListener(listener);
+        cold.addErrorListener(listener);
+    }
+
+    @Override
+    public void removeErrorListener(BiConsumer<String, Exception> listener) {
+        super.removeErrorListener(listener);
+        hot.removeErrorListener(listener);
+        cold.removeErrorListener(listener);
+    }
+
+    public StorageDatabase getHotTier() {
+        return hot;
+    }
+
+    /**
+     * @return durable tier, wrapped in a {@link WriteBehindDatabase} with {@link TieredDatabaseConfig.WritePolicy#WRITE_BACK}
+     */
+    public StorageDatabase getColdTier() {
+        return cold;
+    }
+
+    /**
+     * Amount of saves waiting to be written to the cold tier, always 0 with write-through.
+     */
+    public int getPendingWrites() {
+        return writeBehind == null ? 0 : writeBehind.getPendingWrites();
+    }
+
+    /**
+     * Writes every pending save to the cold tier, nothing to do with write-through.
+     */
+    public void flush() {
+        if (writeBehind != null) writeBehind.flush();
+    }
+
+    /**
+     * Removes an object from the hot tier only, its next read is served by the cold tier.
+     */
+    public void evict(Class<? extends StorageObject> clazz, String identifier) {
+        TierKey key = new TierKey(clazz, identifier);
+        promotions.remove(key);
+        if (residents != null) residents.invalidate(key);
+        hot.deleteByIdSync(clazz, identifier);
+    }
+
+    public TieredStatistics getStatistics() {
+        return new TieredStatistics(
+                hotHits.sum(),
+                coldHits.sum(),
+                misses.sum(),
+                promoted.sum(),
+                expirations.sum(),
+                residents == null ? 0 : residents.estimatedSize()
+        );
+    }
+
+    private void hit(StorageObject obj) {
+        String identifier = mapper().extractIdentifier(obj);
+        if (identifier != null) hit(obj.getClass(), identifier);
+    }
+
+    private void hit(Class<? extends StorageObject> clazz, String identifier) {
+        hotHits.increment();
+        if (residents != null) residents.put(new TierKey(clazz, identifier), Boolean.TRUE);
+    }
+
+    /**
+     * Counts the hot tier hits of a batch read and returns the identifiers it missed.
+     */
+    private List<String> hits(Class<? extends StorageObject> clazz, Collection<String> identifiers, Map<String, ?> found) {
+        List<String> missing = new ArrayList<>();
+        for (String identifier : identifiers) {
+            if (found.containsKey(identifier)) {
+                hit(clazz, identifier);
+            } else {
+                missing.add(identifier);
+            }
+        }
+        return missing;
+    }
+
+    private <T extends StorageObject> Map<String, T> counted(Map<String, T> loaded, int requested) {
+        coldHits.add(loaded.size());
+        misses.add(requested - loaded.size());
+        return loaded;
+    }
+
+    private <T extends StorageObject> Map<String, T> single(String identifier, Optional<T> loaded) {
+        if (loaded.isEmpty()) {
+            misses.increment();
+            return Map.of();
+        }
+        coldHits.increment();
+        return Map.of(identifier, loaded.get());
+    }
+
+    /*
+     * A promotion copies what it read from the cold tier, so it may carry an object older than a write
+     * running at the same time. Every promotion registers a token before reading the cold tier and every write
+     * removes the tokens of its objects after its cold tier write and before its hot tier write.
+     * A promotion that finds its token gone removes its copy from the hot tier: a missing hot copy
+     * only costs a cold read, a stale one would be served until it expires.
+     */
+
+    private Map<TierKey, Object> beginPromotion(Class<? extends StorageObject> clazz, Collection<String> identifiers) {
+        if (!config.isPromoteOnMiss()) return Map.of();
+        Map<TierKey, Object> tokens = new HashMap<>();
+        for (String identifier : identifiers) {
+            TierKey key = new TierKey(clazz, identifier);
+            Object token = new Object();
+            promotions.put(key, token);
+            tokens.put(key, token);
+        }
+        return tokens;
+    }
+
+    private void promoteSync(Map<TierKey, Object> tokens, Class<? extends StorageObject> clazz, Map<String, ? extends StorageObject> loaded) {
+        if (tokens.isEmpty()) return;
+        Set<String> promotedIds = loaded.keySet();
+        if (!loaded.isEmpty()) {
+            try {
+                hot.saveAllSync(loaded.values());
+            } catch (Exception e) {
+                logError("Failed to promote " + loaded.size() + " objects of " + clazz.getName() + " to the hot tier", e);
+                promotedIds = Set.of();
+            }
+        }
+        finishPromotion(tokens, clazz, promotedIds);
+    }
+
+    private void promoteAsync(Map<TierKey, Object> tokens, Class<? extends StorageObject> clazz, Map<String, ? extends StorageObject> loaded) {
+        if (tokens.isEmpty()) return;
+        if (loaded.isEmpty()) {
+            finishPromotion(tokens, clazz, Set.of());
+            return;
+        }
+        hot.saveAllAsync(loaded.values()).whenComplete((ignored, e) -> {
+            if (e != null) {
+                logError("Failed to promote " + loaded.size() + " objects of " + clazz.getName() + " to the hot tier", e instanceof Exception ex ? ex : new RuntimeException(e));
+                finishPromotion(tokens, clazz, Set.of());
+                return;
+            }
+            finishPromotion(tokens, clazz, loaded.keySet());
+        });
+    }
+
+    private void finishPromotion(Map<TierKey, Object> tokens, Class<? extends StorageObject> clazz, Set<String> loaded) {
+        List<String> stale = new ArrayList<>();
+        tokens.forEach((key, token) -> {
+            boolean current = promotions.remove(key, token);
+            if (!loaded.contains(key.identifier())) return;
+            if (current) {
+                promoted.increment();
+                if (residents != null) residents.put(key, Boolean.TRUE);
+            } else {
+                stale.add(key.identifier());
+            }
+        });
+        if (!stale.isEmpty()) hot.deleteByIdsAsync(clazz, stale);
+    }
+
+    private List<TierKey> fence(Collection<? extends StorageObject> objects) {
+        List<TierKey> keys = new ArrayList<>(objects.size());
+        for (StorageObject obj : objects) {
+            if (obj == null) continue;
+            String identifier = mapper().extractIdentifier(obj);
+            if (identifier == null) continue;
+
+            TierKey key = new TierKey(obj.getClass(), identifier);
+            promotions.remove(key);
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Fences every object of the unit, by the last operation applied to it: true when it was saved.
+     */
+    private Map<TierKey, Boolean> fence(UnitOfWork unit) {
+        Map<TierKey, Boolean> keys = new LinkedHashMap<>();
+        for (UnitOfWork.Operation operation : unit.getOperations()) {
+            if (operation instanceof UnitOfWork.Save save) {
+                String identifier = mapper().extractIdentifier(save.object());
+                if (identifier == null) continue;
+                keys.put(new TierKey(save.object().getClass(), identifier), Boolean.TRUE);
+            } else if (operation instanceof UnitOfWork.Delete delete) {
+                keys.put(new TierKey(delete.type(), delete.identifier()), Boolean.FALSE);
+            }
+        }
+        for (TierKey key : keys.keySet()) {
+            promotions.remove(key);
+        }
+        return keys;
+    }
+
+    private void committedHot(Map<TierKey, Boolean> keys, boolean applied) {
+        Map<Class<? extends StorageObject>, List<String>> dropped = new LinkedHashMap<>();
+        keys.forEach((key, saved) -> {
+            if (applied && saved) {
+                if (residents != null) residents.put(key, Boolean.TRUE);
+                return;
+            }
+            if (residents != null) residents.invalidate(key);
+            if (!applied) dropped.computeIfAbsent(key.type(), k -> new ArrayList<>()).add(key.identifier());
+        });
+        dropped.forEach(hot::deleteByIdsSync);
+    }
+
+    private void touch(List<TierKey> keys) {
+        if (residents == null) return;
+        for (TierKey key : keys) {
+            residents.put(key, Boolean.TRUE);
+        }
+    }
+
+    private void removed(Class<? extends StorageObject> clazz, Collection<String> identifiers) {
+        for (String identifier : identifiers) {
+            TierKey key = new TierKey(clazz, identifier);
+            promotions.remove(key);
+            if (residents != null) residents.invalidate(key);
+        }
+    }
+
+    private void onRemoval(TierKey key, RemovalCause cause) {
+        if (key == null || !cause.wasEvicted()) return;
+        expirations.increment();
+        hot.deleteByIdAsync(key.type(), key.identifier()).exceptionally(e -> {
+            logError("Failed to remove expired " + key.type().getName() + " " + key.identifier() + " from the hot tier", e instanceof Exception ex ? ex : new RuntimeException(e));
+            return null;
+        });
+    }
+
+    private record TierKey(Class<? extends StorageObject> type, String identifier) {
+
+    }
+}
@@ -0,0 +1,108 @@
+package me.blueslime.meteor.storage.database.tiered;
+
+import me.blueslime.meteor.storage.database.writebehind.WriteBehindConfig;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class TieredDatabaseConfig {
+    private WritePolicy writePolicy = WritePolicy.WRITE_THROUGH;
+    private WriteBehindConfig writeBehind = WriteBehindConfig.builder();
+    private Duration hotExpireAfterAccess = Duration.ofMinutes(30);
+    private long hotMaximumSize = 50_000L;
+    private boolean promoteOnMiss = true;
+    private final Set<Class<? extends StorageObject>> hotClasses = new LinkedHashSet<>();
+
+    private TieredDatabaseConfig() {
+
+    }
+
+    public static TieredDatabaseConfig builder() {
+        return new TieredDatabaseConfig();
+    }
+
+    public WritePolicy getWritePolicy() {
+        return writePolicy;
+    }
+
+    public TieredDatabaseConfig setWritePolicy(WritePolicy writePolicy) {
+        this.writePolicy = writePolicy;
+        return this;
+    }
+
+    public WriteBehindConfig getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Flush interval and batch size of the cold tier writes, only used with {@link WritePolicy#WRITE_BACK}.
+     */
+    public TieredDatabaseConfig setWriteBehind(WriteBehindConfig writeBehind) {
+        this.writeBehind = writeBehind;
+        return this;
+    }
+
+    public Duration getHotExpireAfterAccess() {
+        return hotExpireAfterAccess;
+    }
+
+    /**
+     * How long an object stays in the hot tier without being read or written, {@link Duration#ZERO} disables expiry.
+     */
+    public TieredDatabaseConfig setHotExpireAfterAccess(Duration hotExpireAfterAccess) {
+        this.hotExpireAfterAccess = hotExpireAfterAccess;
+        return this;
+    }
+
+    public long getHotMaximumSize() {
+        return hotMaximumSize;
+    }
+
+    /**
+     * Maximum amount of objects kept in the hot tier, the least valuable ones are removed first.
+     * Zero or less disables the limit.
+     */
+    public TieredDatabaseConfig setHotMaximumSize(long hotMaximumSize) {
+        this.hotMaximumSize = hotMaximumSize;
+        return this;
+    }
+
+    public boolean isPromoteOnMiss() {
+        return promoteOnMiss;
+    }
+
+    /**
+     * Whether objects found in the cold tier are copied to the hot tier.
+     */
+    public TieredDatabaseConfig setPromoteOnMiss(boolean promoteOnMiss) {
+        this.promoteOnMiss = promoteOnMiss;
+        return this;
+    }
+
+    public Set<Class<? extends StorageObject>> getHotClasses() {
+        return Collections.unmodifiableSet(hotClasses);
+    }
+
+    /**
+     * Class whose objects already in the hot tier are tracked again on connect, so the objects left by a previous run
+     * also expire and count towards the size limit. Not needed for expiry when the hot tier expires objects by itself.
+     */
+    public TieredDatabaseConfig addHotClass(Class<? extends StorageObject> clazz) {
+        this.hotClasses.add(clazz);
+        return this;
+    }
+
+    public enum WritePolicy {
+        /**
+         * Saves and deletes reach the cold tier before the hot tier is updated.
+         */
+        WRITE_THROUGH,
+        /**
+         * Saves update the hot tier right away and are coalesced into batched cold tier writes.
+         */
+        WRITE_BACK
+    }
+}
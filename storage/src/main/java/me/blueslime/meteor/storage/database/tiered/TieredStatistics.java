@@ -0,0 +1,67 @@
+package me.blueslime.meteor.storage.database.tiered;
+
+public class TieredStatistics {
+
+    private final long hotHits;
+    private final long coldHits;
+    private final long misses;
+    private final long promotions;
+    private final long expirations;
+    private final long hotSize;
+
+    public TieredStatistics(long hotHits, long coldHits, long misses, long promotions, long expirations, long hotSize) {
+        this.hotHits = hotHits;
+        this.coldHits = coldHits;
+        this.misses = misses;
+        this.promotions = promotions;
+        this.expirations = expirations;
+        this.hotSize = hotSize;
+    }
+
+    public long getHotHits() {
+        return hotHits;
+    }
+
+    /**
+     * Reads served by the cold tier after a hot tier miss.
+     */
+    public long getColdHits() {
+        return coldHits;
+    }
+
+    /**
+     * Reads not found in any tier.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getPromotions() {
+        return promotions;
+    }
+
+    /**
+     * Objects removed from the hot tier by expiry or by the size limit.
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * Approximate amount of objects this database keeps in the hot tier.
+     */
+    public long getHotSize() {
+        return hotSize;
+    }
+
+    public double getHotHitRate() {
+        long requests = hotHits + coldHits + misses;
+        return requests == 0 ? 1.0 : (double) hotHits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "TieredStatistics{hotHits=" + hotHits + ", coldHits=" + coldHits + ", misses=" + misses +
+               ", promotions=" + promotions + ", expirations=" + expirations + ", hotSize=" + hotSize + "}";
+    }
+}
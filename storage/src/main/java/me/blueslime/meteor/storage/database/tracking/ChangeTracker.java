@@ -0,0 +1,148 @@
+package me.blueslime.meteor.storage.database.tracking;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import org.bson.Document;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the stored state of the objects loaded and saved through a database, so a save can tell which
+ * top-level properties changed since then.
+ * <p>
+ * Snapshots are keyed by object identity and held weakly, an object nobody references anymore is forgotten.
+ * Deleting any object of a class invalidates the snapshots taken of that class before it, the next save of
+ * those objects is a full write. The snapshots describe what this process last saw: another client writing
+ * the same objects makes them stale, so tracking is meant for classes with a single writer.
+ */
+public class ChangeTracker {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 100_000;
+
+    private record Snapshot(Document document, long epoch) {
+
+    }
+
+    /**
+     * State of an object compared with its snapshot.
+     *
+     * @param document current document of the object
+     * @param changed  top-level properties that differ from the snapshot, empty when there is no snapshot
+     * @param tracked  whether there was a snapshot to compare with
+     */
+    public record Changes(Document document, Set<String> changed, boolean tracked) {
+
+        /**
+         * Whether the object is known to be stored exactly as it is.
+         */
+        public boolean isUnchanged() {
+            return tracked && changed.isEmpty();
+        }
+
+        /**
+         * Whether only some properties changed, so a partial update is enough.
+         * A changed identifier always requires a full write.
+         */
+        public boolean isPartial() {
+            return tracked && !changed.isEmpty() && !changed.contains("_id");
+        }
+
+        /**
+         * Current values of the changed properties, removed ones map to null.
+         */
+        public Document delta() {
+            Document delta = new Document();
+            for (String key : changed) {
+                delta.put(key, document.get(key));
+            }
+            return delta;
+        }
+    }
+
+    private final Map<Class<?>, AtomicLong> epochs = new ConcurrentHashMap<>();
+    private final Cache<Object, Snapshot> snapshots;
+    private final ObjectMapper mapper;
+
+    public ChangeTracker(ObjectMapper mapper, long maximumSize) {
+        this.mapper = mapper;
+        this.snapshots = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    public ChangeTracker(ObjectMapper mapper) {
+        this(mapper, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Remembers the current state of an object as stored.
+     *
+     * @return the same object
+     */
+    public <T> T track(T obj) {
+        if (obj != null) track(obj, mapper.toDocument(obj));
+        return obj;
+    }
+
+    /**
+     * Remembers a document already built from the object as its stored state.
+     */
+    public void track(Object obj, Document document) {
+        if (obj == null || document == null) return;
+        snapshots.put(obj, new Snapshot(document, epoch(obj.getClass()).get()));
+    }
+
+    public void forget(Object obj) {
+        if (obj != null) snapshots.invalidate(obj);
+    }
+
+    /**
+     * Invalidates the snapshots of a class, called when objects of it are deleted.
+     */
+    public void deleted(Class<?> clazz) {
+        epoch(clazz).incrementAndGet();
+    }
+
+    public boolean isTracked(Object obj) {
+        return snapshot(obj) != null;
+    }
+
+    public Changes changes(Object obj) {
+        Document document = mapper.toDocument(obj);
+        Snapshot snapshot = snapshot(obj);
+        if (snapshot == null) {
+            return new Changes(document, Set.of(), false);
+        }
+
+        Document previous = snapshot.document();
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            if (!previous.containsKey(entry.getKey()) || !Objects.deepEquals(entry.getValue(), previous.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!document.containsKey(key)) changed.add(key);
+        }
+        return new Changes(document, changed, true);
+    }
+
+    public long size() {
+        return snapshots.estimatedSize();
+    }
+
+    private Snapshot snapshot(Object obj) {
+        if (obj == null) return null;
+        Snapshot snapshot = snapshots.getIfPresent(obj);
+        if (snapshot == null) return null;
+        return snapshot.epoch() == epoch(obj.getClass()).get() ? snapshot : null;
+    }
+
+    private AtomicLong epoch(Class<?> clazz) {
+        return epochs.computeIfAbsent(clazz, key -> new AtomicLong());
+    }
+}
@@ -0,0 +1,87 @@
+package me.blueslime.meteor.storage.database.transaction;
+
+import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Saves and deletes committed together by a {@link StorageDatabase}, in the order they were added.
+ * <p>
+ * Backends with transactions apply the whole unit in one commit, so either every operation is stored or none:
+ * SQL databases in a single JDBC transaction, Redis inside {@code MULTI}/{@code EXEC} and MongoDB in a session
+ * transaction when the cluster supports them. Other backends apply the operations as one grouped write.
+ *
+ * <pre>{@code
+ * boolean committed = database.unitOfWork()
+ *         .save(seller)
+ *         .save(buyer)
+ *         .delete(Trade.class, tradeId)
+ *         .commitSync();
+ * }</pre>
+ */
+@SuppressWarnings("unused")
+public class UnitOfWork {
+
+    public sealed interface Operation permits Save, Delete {
+
+    }
+
+    public record Save(StorageObject object) implements Operation {
+
+    }
+
+    public record Delete(Class<? extends StorageObject> type, String identifier) implements Operation {
+
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+    private final StorageDatabase database;
+
+    public UnitOfWork(StorageDatabase database) {
+        this.database = Objects.requireNonNull(database, "database");
+    }
+
+    public UnitOfWork save(StorageObject obj) {
+        operations.add(new Save(Objects.requireNonNull(obj, "object")));
+        return this;
+    }
+
+    public UnitOfWork saveAll(Collection<? extends StorageObject> objects) {
+        for (StorageObject obj : objects) {
+            if (obj != null) save(obj);
+        }
+        return this;
+    }
+
+    public UnitOfWork delete(Class<? extends StorageObject> clazz, String identifier) {
+        operations.add(new Delete(Objects.requireNonNull(clazz, "type"), Objects.requireNonNull(identifier, "identifier")));
+        return this;
+    }
+
+    public List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Commits every operation.
+     *
+     * @return whether the unit was committed, failures are logged by the database
+     */
+    public boolean commitSync() {
+        return database.commitSync(this);
+    }
+
+    public CompletableFuture<Boolean> commitAsync() {
+        return database.commitAsync(this);
+    }
+}
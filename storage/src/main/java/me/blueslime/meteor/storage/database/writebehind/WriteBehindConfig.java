@@ -0,0 +1,66 @@
+package me.blueslime.meteor.storage.database.writebehind;
+
+import java.time.Duration;
+
+public class WriteBehindConfig {
+    private Duration flushInterval = Duration.ofSeconds(1);
+    private int batchSize = 500;
+    private int maxAttempts = 3;
+    private Duration retryBackoff = Duration.ofSeconds(1);
+
+    private WriteBehindConfig() {
+
+    }
+
+    public static WriteBehindConfig builder() {
+        return new WriteBehindConfig();
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Maximum time a coalesced write waits before it is sent to the backend.
+     */
+    public WriteBehindConfig setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Amount of pending objects that triggers an early flush, it is also the size of every batch sent to the backend.
+     */
+    public WriteBehindConfig setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Times a pending object is sent to the backend before it is dropped, failed batches are queued again until then.
+     */
+    public WriteBehindConfig setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        return this;
+    }
+
+    public Duration getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    /**
+     * Time to wait after a failed flush before writing again, doubled after every consecutive failure.
+     */
+    public WriteBehindConfig setRetryBackoff(Duration retryBackoff) {
+        this.retryBackoff = retryBackoff;
+        return this;
+    }
+}
@@ -0,0 +1,548 @@
+package me.blueslime.meteor.storage.database.writebehind;
+
+import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import me.blueslime.meteor.storage.references.ReferencedObject;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Opt-in write-behind layer for any {@link StorageDatabase}.
+ * <p>
+ * {@link #saveOrUpdateAsync(StorageObject)} calls are coalesced per class and identifier, only the latest
+ * state of every object is kept, and pending writes are sent to the wrapped database through
+ * {@link StorageDatabase#saveAllSync(java.util.Collection)} when the flush interval elapses or when
+ * the configured batch size is reached. The returned futures complete once the write covering them is persisted.
+ * Objects of a failed batch are queued again with their futures and written after {@link WriteBehindConfig#getRetryBackoff()},
+ * their futures complete exceptionally once {@link WriteBehindConfig#getMaxAttempts()} is reached.
+ * <p>
+ * Reads by identifier see pending writes, {@link #loadAllSync(Class)} and queries flush before reading and
+ * {@link #closeConnection()} drains every pending write before closing the wrapped database.
+ * Objects without identifier are not coalesced and are written directly.
+ */
+@SuppressWarnings("unused")
+public class WriteBehindDatabase extends StorageDatabase {
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Map<PendingKey, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final Object flushLock = new Object();
+
+    private final StorageDatabase delegate;
+    private final WriteBehindConfig config;
+
+    private volatile ScheduledExecutorService flusher;
+    private volatile ScheduledFuture<?> flushTask = null;
+    private volatile boolean closed = false;
+
+    private volatile long retryAt = 0L;
+    private int failedFlushes = 0;
+
+    public WriteBehindDatabase(StorageDatabase delegate, WriteBehindConfig config) {
+        this.delegate = delegate;
+        this.config = config != null ? config : WriteBehindConfig.builder();
+        this.flusher = newFlusher();
+    }
+
+    private static ScheduledExecutorService newFlusher() {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "storage-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public WriteBehindDatabase(StorageDatabase delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * Starts the periodic flush, a database closed with {@link #closeConnection()} gets a new flusher thread.
+     */
+    @Override
+    public void connect() {
+        delegate.connect();
+        ScheduledFuture<?> previous = flushTask;
+        if (previous != null) previous.cancel(false);
+        if (flusher.isShutdown()) flusher = newFlusher();
+        closed = false;
+        long interval = Math.max(1L, config.getFlushInterval().toMillis());
+        flushTask = flusher.scheduleWithFixedDelay(this::scheduledFlush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void closeConnection() {
+        closed = true;
+        ScheduledFuture<?> task = flushTask;
+        if (task != null) task.cancel(false);
+
+        ScheduledExecutorService executor = flusher;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        drain();
+        delegate.closeConnection();
+    }
+
+    @Override
+    public CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj) {
+        if (obj == null) return CompletableFuture.completedFuture(null);
+
+        String id = mapper().extractIdentifier(obj);
+        if (closed || id == null || id.isEmpty()) {
+            return delegate.saveOrUpdateAsync(obj);
+        }
+
+        PendingWrite write = pending.compute(new PendingKey(obj.getClass(), id), (key, current) -> {
+            if (current == null) return new PendingWrite(key, obj, 0, new CompletableFuture<>());
+            current.object = obj;
+            return current;
+        });
+
+        if (pending.size() >= config.getBatchSize()) {
+            requestFlush();
+        }
+        return write.future.copy();
+    }
+
+    @Override
+    public void saveOrUpdateSync(StorageObject obj) {
+        if (obj == null) return;
+
+        String id = mapper().extractIdentifier(obj);
+        if (id == null || id.isEmpty()) {
+            delegate.saveOrUpdateSync(obj);
+            return;
+        }
+
+        synchronized (flushLock) {
+            PendingWrite superseded = pending.remove(new PendingKey(obj.getClass(), id));
+            try {
+                delegate.saveOrUpdateSync(obj);
+            } finally {
+                if (superseded != null) superseded.future.complete(null);
+            }
+        }
+    }
+
+    @Override
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        synchronized (flushLock) {
+            List<PendingWrite> superseded = new ArrayList<>();
+            for (StorageObject obj : objects) {
+                if (obj == null) continue;
+                String id = mapper().extractIdentifier(obj);
+                if (id == null || id.isEmpty()) continue;
+
+                PendingWrite write = pending.remove(new PendingKey(obj.getClass(), id));
+                if (write != null) superseded.add(write);
+            }
+            try {
+                delegate.saveAllSync(objects);
+            } catch (RuntimeException e) {
+                for (PendingWrite write : superseded) write.future.completeExceptionally(e);
+                throw e;
+            }
+            for (PendingWrite write : superseded) write.future.complete(null);
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByIdAsync(Class<T> clazz, String identifier) {
+        PendingWrite write = pending.get(new PendingKey(clazz, identifier));
+        if (write != null) {
+            return CompletableFuture.completedFuture(Optional.of(clazz.cast(write.object)));
+        }
+        return delegate.loadByIdAsync(clazz, identifier);
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<T> loadByIdSync(Class<T> clazz, String identifier) {
+        PendingWrite write = pending.get(new PendingKey(clazz, identifier));
+        if (write != null) {
+            return Optional.of(clazz.cast(write.object));
+        }
+        return delegate.loadByIdSync(clazz, identifier);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Map<String, T>> loadByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        Map<String, T> found = new HashMap<>();
+        List<String> missing = collectPending(clazz, identifiers, found);
+        if (missing.isEmpty()) return CompletableFuture.completedFuture(found);
+
+        return delegate.loadByIdsAsync(clazz, missing).thenApply(loaded -> {
+            Map<String, T> results = new HashMap<>(loaded);
+            results.putAll(found);
+            return results;
+        });
+    }
+
+    @Override
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        Map<String, T> found = new HashMap<>();
+        List<String> missing = collectPending(clazz, identifiers, found);
+        if (!missing.isEmpty()) {
+            Map<String, T> results = new HashMap<>(delegate.loadByIdsSync(clazz, missing));
+            results.putAll(found);
+            return results;
+        }
+        return found;
+    }
+
+    private <T extends StorageObject> List<String> collectPending(Class<T> clazz, Collection<String> identifiers, Map<String, T> found) {
+        List<String> missing = new ArrayList<>();
+        for (String identifier : identifiers) {
+            PendingWrite write = pending.get(new PendingKey(clazz, identifier));
+            if (write != null) {
+                found.put(identifier, clazz.cast(write.object));
+            } else {
+                missing.add(identifier);
+            }
+        }
+        return missing;
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String extraIdentifier) {
+        return delegate.loadByExtraIdentifierAsync(clazz, extraIdentifier);
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<ReferencedObject> loadByExtraIdentifierSync(Class<T> clazz, String extraIdentifier) {
+        return delegate.loadByExtraIdentifierSync(clazz, extraIdentifier);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdAsync(Class<T> clazz, String identifier) {
+        if (closed) return delegate.deleteByIdAsync(clazz, identifier);
+        return CompletableFuture.runAsync(() -> deleteByIdSync(clazz, identifier), flusher);
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String identifier) {
+        synchronized (flushLock) {
+            PendingWrite superseded = pending.remove(new PendingKey(clazz, identifier));
+            try {
+                delegate.deleteByIdSync(clazz, identifier);
+            } finally {
+                if (superseded != null) superseded.future.complete(null);
+            }
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        if (closed) return delegate.deleteByIdsAsync(clazz, identifiers);
+        return CompletableFuture.runAsync(() -> deleteByIdsSync(clazz, identifiers), flusher);
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        synchronized (flushLock) {
+            List<PendingWrite> superseded = new ArrayList<>();
+            for (String identifier : identifiers) {
+                PendingWrite write = pending.remove(new PendingKey(clazz, identifier));
+                if (write != null) superseded.add(write);
+            }
+            try {
+                delegate.deleteByIdsSync(clazz, identifiers);
+            } finally {
+                for (PendingWrite write : superseded) write.future.complete(null);
+            }
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Set<T>> loadAllAsync(Class<T> clazz) {
+        if (closed) return delegate.loadAllAsync(clazz);
+        return CompletableFuture.runAsync(this::safeFlush, flusher)
+                .thenCompose(ignored -> delegate.loadAllAsync(clazz));
+    }
+
+    @Override
+    public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
+        flush();
+        return delegate.loadAllSync(clazz);
+    }
+
+    @Override
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
+        flush();
+        return delegate.streamAll(clazz, fetchSize);
+    }
+
+    @Override
+    public <T extends StorageObject> List<T> querySync(Class<T> clazz, StorageQuery query) {
+        flush();
+        return delegate.querySync(clazz, query);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        if (closed) return delegate.queryAsync(clazz, query);
+        return CompletableFuture.runAsync(this::safeFlush, flusher)
+                .thenCompose(ignored -> delegate.queryAsync(clazz, query));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        if (closed) return delegate.commitAsync(unit);
+        return CompletableFuture.supplyAsync(() -> commitSync(unit), flusher);
+    }
+
+    /**
+     * Units are committed immediately, pending writes of their objects are superseded by the unit
+     * and queued again when the unit is not committed.
+     */
+    @Override
+    public boolean commitSync(UnitOfWork unit) {
+        synchronized (flushLock) {
+            Map<PendingKey, PendingWrite> superseded = new LinkedHashMap<>();
+            for (UnitOfWork.Operation operation : unit.getOperations()) {
+                PendingKey key;
+                if (operation instanceof UnitOfWork.Save save) {
+                    String id = mapper().extractIdentifier(save.object());
+                    if (id == null || id.isEmpty()) continue;
+                    key = new PendingKey(save.object().getClass(), id);
+                } else {
+                    UnitOfWork.Delete delete = (UnitOfWork.Delete) operation;
+                    key = new PendingKey(delete.type(), delete.identifier());
+                }
+                PendingWrite write = pending.remove(key);
+                if (write != null) superseded.put(key, write);
+            }
+
+            boolean committed = false;
+            try {
+                committed = delegate.commitSync(unit);
+                return committed;
+            } finally {
+                if (committed) {
+                    for (PendingWrite write : superseded.values()) write.future.complete(null);
+                } else {
+                    superseded.values().forEach(this::requeue);
+                }
+            }
+        }
+    }
+
+    @Override
+    public ObjectMapper mapper() {
+        return delegate.mapper();
+    }
+
+    @Override
+    public void enableChangeTracking(long maximumSize) {
+        delegate.enableChangeTracking(maximumSize);
+    }
+
+    @Override
+    public void disableChangeTracking() {
+        delegate.disableChangeTracking();
+    }
+
+    @Override
+    public ChangeTracker getChangeTracker() {
+        return delegate.getChangeTracker();
+    }
+
+    @Override
+    public boolean isDirty(StorageObject obj) {
+        return delegate.isDirty(obj);
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return delegate.getQueuedTasks();
+    }
+
+    @Override
+    public boolean expireAfterAccess(Duration duration) {
+        return delegate.expireAfterAccess(duration);
+    }
+
+    @Override
+    public void addErrorListener(BiConsumer<String, Exception> listener) {
+        super.addErrorListener(listener);
+        delegate.addErrorListener(listener);
+    }
+
+    @Override
+    public void removeErrorListener(BiConsumer<String, Exception> listener) {
+        super.removeErrorListener(listener);
+        delegate.removeErrorListener(listener);
+    }
+
+    /**
+     * Amount of objects waiting to be written.
+     */
+    public int getPendingWrites() {
+        return pending.size();
+    }
+
+    /**
+     * Writes every object that is pending at the moment of the call.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingWrite> batch = new ArrayList<>(Math.min(pending.size(), config.getBatchSize()));
+            for (PendingKey key : new ArrayList<>(pending.keySet())) {
+                PendingWrite write = pending.remove(key);
+                if (write == null) continue;
+
+                batch.add(write);
+                if (batch.size() >= config.getBatchSize()) {
+                    write(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        }
+    }
+
+    /**
+     * Flushes until nothing is pending, waiting for the retry backoff between failed flushes,
+     * so writes only fail once their attempts are exhausted.
+     */
+    private void drain() {
+        synchronized (flushLock) {
+            while (!pending.isEmpty()) {
+                flush();
+                long delay = retryAt - System.currentTimeMillis();
+                if (pending.isEmpty() || delay <= 0) continue;
+                try {
+                    flushLock.wait(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logError("Interrupted while draining " + pending.size() + " pending writes", e);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> batch) {
+        List<StorageObject> objects = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            objects.add(write.object);
+        }
+        try {
+            delegate.saveAllSync(objects);
+            failedFlushes = 0;
+            retryAt = 0L;
+            for (PendingWrite write : batch) write.future.complete(null);
+        } catch (Exception e) {
+            logError("Failed to flush " + objects.size() + " pending writes", e);
+            retry(batch, e);
+        }
+    }
+
+    /**
+     * Queues the objects of a batch that was not persisted again with their futures, a newer pending state
+     * of an object covers it instead. Futures only fail once their attempts are exhausted.
+     */
+    private void retry(List<PendingWrite> batch, Exception failure) {
+        long backoff = Math.max(0L, config.getRetryBackoff().toMillis());
+        retryAt = System.currentTimeMillis() + Math.min(MAX_BACKOFF_MILLIS, backoff << Math.min(failedFlushes, 16));
+        failedFlushes++;
+
+        int dropped = 0;
+        for (PendingWrite write : batch) {
+            int attempts = write.attempts + 1;
+            if (attempts >= config.getMaxAttempts()) {
+                write.future.completeExceptionally(failure);
+                dropped++;
+                continue;
+            }
+            requeue(new PendingWrite(write.key, write.object, attempts, write.future));
+        }
+        if (dropped > 0) {
+            logError("Dropped " + dropped + " pending writes after " + config.getMaxAttempts() + " failed attempts", failure);
+        }
+    }
+
+    /**
+     * Queues a write again, when a newer state of its object is pending its future completes with that one.
+     */
+    private void requeue(PendingWrite write) {
+        pending.compute(write.key, (key, current) -> {
+            if (current == null) return write;
+            current.future.whenComplete((ignored, e) -> {
+                if (e == null) {
+                    write.future.complete(null);
+                } else {
+                    write.future.completeExceptionally(e);
+                }
+            });
+            return current;
+        });
+    }
+
+    private boolean backingOff() {
+        return System.currentTimeMillis() < retryAt;
+    }
+
+    private void requestFlush() {
+        if (backingOff()) return;
+        if (!flushRequested.compareAndSet(false, true)) return;
+        try {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                scheduledFlush();
+            });
+        } catch (RejectedExecutionException e) {
+            flushRequested.set(false);
+        }
+    }
+
+    /**
+     * Periodic and early flushes, skipped while a failed flush is backing off.
+     */
+    private void scheduledFlush() {
+        if (!backingOff()) safeFlush();
+    }
+
+    private void safeFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logError("Write-behind flush failed", e);
+        }
+    }
+
+    private record PendingKey(Class<?> clazz, String id) {
+
+    }
+
+    private static class PendingWrite {
+        final CompletableFuture<Void> future;
+        final PendingKey key;
+        final int attempts;
+        volatile StorageObject object;
+
+        PendingWrite(PendingKey key, StorageObject object, int attempts, CompletableFuture<Void> future) {
+            this.key = key;
+            this.object = object;
+            this.attempts = attempts;
+            this.future = future;
+        }
+    }
+}
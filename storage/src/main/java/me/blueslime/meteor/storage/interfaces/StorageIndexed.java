@@ -0,0 +1,16 @@
+package me.blueslime.meteor.storage.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a stored field as queryable, backends keep a secondary index for it
+ * so {@link me.blueslime.meteor.storage.database.query.StorageQuery} conditions on it are resolved natively.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.RECORD_COMPONENT})
+public @interface StorageIndexed {
+
+}
@@ -0,0 +1,437 @@
+package me.blueslime.meteor.storage.mapper;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.Document;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Per-class codec compiled from an {@link ObjectMapper.EntityStructure} the first time the class is mapped.
+ * <p>
+ * Constructors and record accessors are bound through {@link LambdaMetafactory}, fields through
+ * {@link MethodHandle}s, and every property gets its encoder and decoder chosen once for its declared type,
+ * so encoding and decoding an object is a plain loop without reflective calls or per-value type dispatch.
+ * When a class cannot be specialised {@link #compile(ObjectMapper, Class, ObjectMapper.EntityStructure)}
+ * returns null and the mapper keeps using its reflective path.
+ */
+final class EntityCodec {
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType SPREAD = MethodType.methodType(Object.class, Object[].class);
+
+    private static final byte MISSING = 0;
+    private static final byte READ_NULL = 1;
+    private static final byte READ_VALUE = 2;
+
+    private final Property[] properties;
+    private final Property[] parameters;
+    private final Supplier<Object> factory;
+    private final MethodHandle constructor;
+
+    /**
+     * Storage key to the indexes of the properties built from it, used when reading a JSON token stream.
+     */
+    private final Map<String, int[]> readIndexes = new HashMap<>();
+
+    private EntityCodec(Property[] properties, Property[] parameters, Supplier<Object> factory, MethodHandle constructor) {
+        this.properties = properties;
+        this.parameters = parameters;
+        this.factory = factory;
+        this.constructor = constructor;
+
+        Property[] targets = constructor != null ? parameters : properties;
+        for (int i = 0; i < targets.length; i++) {
+            int index = i;
+            readIndexes.merge(targets[i].storageKey, new int[] { i }, (current, added) -> {
+                int[] merged = Arrays.copyOf(current, current.length + 1);
+                merged[current.length] = index;
+                return merged;
+            });
+        }
+    }
+
+    static EntityCodec compile(ObjectMapper mapper, Class<?> clazz, ObjectMapper.EntityStructure structure) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+
+            if (structure.isRecord) {
+                Property[] properties = new Property[structure.recordComponents.size()];
+                for (int i = 0; i < properties.length; i++) {
+                    ObjectMapper.RecordComponentData rc = structure.recordComponents.get(i);
+                    properties[i] = new Property(
+                            mapper, rc.storageKey, rc.type, rc.genericType, rc.hasDefaultValue, rc.defaultValue,
+                            bindAccessor(lookup, clazz, structure.recordAccessors.get(rc.key)), null
+                    );
+                }
+                MethodHandle canonical = lookup.findConstructor(clazz, MethodType.methodType(void.class, structure.recordTypes));
+                return new EntityCodec(properties, properties, null, spread(canonical));
+            }
+
+            Property[] properties = new Property[structure.fields.size()];
+            for (int i = 0; i < properties.length; i++) {
+                ObjectMapper.FieldData data = structure.fields.get(i);
+                properties[i] = new Property(
+                        mapper, data.storageKey, data.field.getType(), data.genericType, data.hasDefaultValue, data.defaultValue,
+                        bindGetter(lookup, data.field), bindSetter(lookup, data.field)
+                );
+            }
+
+            if (structure.annotatedConstructor != null) {
+                Property[] params = new Property[structure.constructorParams.size()];
+                for (int i = 0; i < params.length; i++) {
+                    ObjectMapper.ParamData param = structure.constructorParams.get(i);
+                    params[i] = new Property(
+                            mapper, param.storageKey, param.type, param.genericType, param.hasDefaultValue, param.defaultValue,
+                            null, null
+                    );
+                }
+                return new EntityCodec(properties, params, null, spread(lookup.unreflectConstructor(structure.annotatedConstructor)));
+            }
+
+            return new EntityCodec(properties, null, bindFactory(lookup, clazz), null);
+        } catch (Throwable t) {
+            mapper.getLogger().debug("Using reflective mapping for " + clazz.getName() + ", its codec could not be compiled: " + t);
+            return null;
+        }
+    }
+
+    void encode(Object obj, Document doc) {
+        for (Property property : properties) {
+            Object value = property.getter.apply(obj);
+            if (value == null && property.hasDefaultValue) {
+                value = property.defaultValue();
+            }
+            doc.put(property.storageKey, property.encoder.apply(value));
+        }
+    }
+
+    Object decode(Document doc) throws Exception {
+        if (constructor != null) {
+            try {
+                return (Object) constructor.invokeExact(resolveArguments(doc));
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        Object instance = factory.get();
+        for (Property property : properties) {
+            Object raw = doc.get(property.storageKey);
+            if (raw != null || doc.containsKey(property.storageKey)) {
+                Object adapted = property.decoder.apply(raw);
+                if (adapted != null) {
+                    property.setter.accept(instance, adapted);
+                }
+            } else if (property.hasDefaultValue) {
+                property.setter.accept(instance, property.defaultValue());
+            }
+        }
+        return instance;
+    }
+
+    void writeJson(ObjectMapper mapper, BsonWriter writer, Object obj) {
+        for (Property property : properties) {
+            Object value = property.getter.apply(obj);
+            if (value == null && property.hasDefaultValue) {
+                value = property.defaultValue();
+            }
+            writer.writeName(property.storageKey);
+            property.write(mapper, writer, value);
+        }
+    }
+
+    /**
+     * Reads the current document of the reader into a new instance, following the same rules as {@link #decode(Document)}.
+     */
+    Object readJson(ObjectMapper mapper, BsonReader reader) throws Exception {
+        boolean construct = constructor != null;
+        Property[] targets = construct ? parameters : properties;
+        Object[] values = new Object[targets.length];
+        byte[] states = new byte[targets.length];
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            int[] indexes = readIndexes.get(reader.readName());
+            if (indexes == null) {
+                reader.skipValue();
+                continue;
+            }
+
+            boolean isNull = reader.getCurrentBsonType() == BsonType.NULL;
+            Object value = targets[indexes[0]].read(mapper, reader);
+            for (int index : indexes) {
+                values[index] = value;
+                states[index] = isNull ? READ_NULL : READ_VALUE;
+            }
+        }
+        reader.readEndDocument();
+
+        if (construct) {
+            for (int i = 0; i < targets.length; i++) {
+                Property param = targets[i];
+                Object value = states[i] != READ_VALUE && param.hasDefaultValue ? param.defaultValue() : values[i];
+                values[i] = value != null ? value : param.primitiveDefault;
+            }
+            try {
+                return (Object) constructor.invokeExact(values);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        Object instance = factory.get();
+        for (int i = 0; i < targets.length; i++) {
+            Property property = targets[i];
+            if (states[i] != MISSING) {
+                if (values[i] != null) {
+                    property.setter.accept(instance, values[i]);
+                }
+            } else if (property.hasDefaultValue) {
+                property.setter.accept(instance, property.defaultValue());
+            }
+        }
+        return instance;
+    }
+
+    private Object[] resolveArguments(Document doc) {
+        Object[] args = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            Property param = parameters[i];
+            Object raw = doc.get(param.storageKey);
+
+            Object value = raw == null && param.hasDefaultValue ? param.defaultValue() : param.decoder.apply(raw);
+            args[i] = value != null ? value : param.primitiveDefault;
+        }
+        return args;
+    }
+
+    private static MethodHandle spread(MethodHandle constructor) {
+        int arity = constructor.type().parameterCount();
+        return constructor.asSpreader(Object[].class, arity).asType(SPREAD);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> bindFactory(MethodHandles.Lookup lookup, Class<?> clazz) throws Throwable {
+        MethodHandle constructor = lookup.findConstructor(clazz, MethodType.methodType(void.class));
+        CallSite site = LambdaMetafactory.metafactory(
+                lookup, "get", MethodType.methodType(Supplier.class),
+                MethodType.methodType(Object.class), constructor, MethodType.methodType(clazz)
+        );
+        return (Supplier<Object>) site.getTarget().invokeExact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> bindAccessor(MethodHandles.Lookup lookup, Class<?> clazz, Method method) throws Throwable {
+        MethodHandle accessor = lookup.unreflect(method);
+        try {
+            CallSite site = LambdaMetafactory.metafactory(
+                    lookup, "apply", MethodType.methodType(Function.class),
+                    GETTER, accessor, MethodType.methodType(method.getReturnType(), clazz)
+            );
+            return (Function<Object, Object>) site.getTarget().invokeExact();
+        } catch (LambdaConversionException e) {
+            return wrapGetter(accessor.asType(GETTER));
+        }
+    }
+
+    private static Function<Object, Object> bindGetter(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        return wrapGetter(lookup.unreflectGetter(field).asType(GETTER));
+    }
+
+    private static BiConsumer<Object, Object> bindSetter(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        if (Modifier.isFinal(field.getModifiers())) {
+            field.setAccessible(true);
+        }
+        MethodHandle setter = lookup.unreflectSetter(field).asType(SETTER);
+        return (target, value) -> {
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to set " + field.getName(), t);
+            }
+        };
+    }
+
+    private static Function<Object, Object> wrapGetter(MethodHandle getter) {
+        return target -> {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to read property", t);
+            }
+        };
+    }
+
+    static final class Property {
+        private static final int GENERIC = 0;
+        private static final int STRING = 1;
+        private static final int INT = 2;
+        private static final int LONG = 3;
+        private static final int DOUBLE = 4;
+        private static final int BOOLEAN = 5;
+        private static final int ENUM = 6;
+        private static final int OBJECT = 7;
+
+        final String storageKey;
+        final Class<?> type;
+        final int kind;
+        final boolean hasDefaultValue;
+        final Object primitiveDefault;
+
+        final Function<Object, Object> getter;
+        final BiConsumer<Object, Object> setter;
+        final Function<Object, Object> encoder;
+        final Function<Object, Object> decoder;
+
+        private final Supplier<Object> defaults;
+
+        Property(ObjectMapper mapper, String storageKey, Class<?> type, Type genericType,
+                 boolean hasDefaultValue, String defaultValue,
+                 Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this.storageKey = storageKey;
+            this.type = type;
+            this.kind = kindOf(mapper, type);
+            this.hasDefaultValue = hasDefaultValue;
+            this.primitiveDefault = type.isPrimitive() ? mapper.getPrimitiveDefault(type) : null;
+            this.getter = getter;
+            this.setter = setter;
+            this.encoder = encoderFor(mapper, type);
+            this.decoder = decoderFor(mapper, type, genericType);
+
+            if (!hasDefaultValue) {
+                this.defaults = () -> null;
+            } else if (isImmutable(type)) {
+                Object value = mapper.convertValue(type, defaultValue);
+                this.defaults = () -> value;
+            } else {
+                this.defaults = () -> mapper.convertValue(type, defaultValue);
+            }
+        }
+
+        Object defaultValue() {
+            return defaults.get();
+        }
+
+        void write(ObjectMapper mapper, BsonWriter writer, Object value) {
+            if (value == null) {
+                writer.writeNull();
+                return;
+            }
+            switch (kind) {
+                case STRING -> writer.writeString((String) value);
+                case INT -> writer.writeInt32((Integer) value);
+                case LONG -> writer.writeInt64((Long) value);
+                case DOUBLE -> writer.writeDouble((Double) value);
+                case BOOLEAN -> writer.writeBoolean((Boolean) value);
+                case ENUM -> writer.writeString(value.toString());
+                default -> mapper.writeValue(writer, value);
+            }
+        }
+
+        /**
+         * Reads the current value, skipping the generic representation when the token already has the declared type.
+         */
+        Object read(ObjectMapper mapper, BsonReader reader) throws Exception {
+            BsonType token = reader.getCurrentBsonType();
+            if (token == BsonType.NULL) {
+                reader.readNull();
+                return decoder.apply(null);
+            }
+            switch (kind) {
+                case STRING -> {
+                    if (token == BsonType.STRING) return reader.readString();
+                }
+                case INT -> {
+                    if (token == BsonType.INT32) return reader.readInt32();
+                }
+                case LONG -> {
+                    if (token == BsonType.INT64) return reader.readInt64();
+                }
+                case DOUBLE -> {
+                    if (token == BsonType.DOUBLE) return reader.readDouble();
+                }
+                case BOOLEAN -> {
+                    if (token == BsonType.BOOLEAN) return reader.readBoolean();
+                }
+                case OBJECT -> {
+                    if (token == BsonType.DOCUMENT) return mapper.readObject(reader, type);
+                }
+                default -> {}
+            }
+            return decoder.apply(mapper.readValue(reader));
+        }
+
+        private static int kindOf(ObjectMapper mapper, Class<?> type) {
+            if (type == String.class) return STRING;
+            if (type == int.class || type == Integer.class) return INT;
+            if (type == long.class || type == Long.class) return LONG;
+            if (type == double.class || type == Double.class) return DOUBLE;
+            if (type == boolean.class || type == Boolean.class) return BOOLEAN;
+            if (type.isEnum()) return ENUM;
+            if (mapper.isComplexObject(type) && !Collection.class.isAssignableFrom(type) && !Map.class.isAssignableFrom(type)) {
+                return OBJECT;
+            }
+            return GENERIC;
+        }
+
+        private static boolean isImmutable(Class<?> type) {
+            return type.isPrimitive() || type.isEnum() || type == String.class
+                    || Number.class.isAssignableFrom(type) && type.getName().startsWith("java.")
+                    || type == Boolean.class || type == Character.class;
+        }
+
+        private static Function<Object, Object> encoderFor(ObjectMapper mapper, Class<?> type) {
+            if (type.isPrimitive() || type == String.class || type == Boolean.class || type == Character.class
+                    || type == Integer.class || type == Long.class || type == Double.class || type == Float.class
+                    || type == Short.class || type == Byte.class || type == BigInteger.class || type == BigDecimal.class) {
+                return Function.identity();
+            }
+            if (type.isEnum()) {
+                return value -> value != null ? value.toString() : null;
+            }
+            return mapper::transformToStorable;
+        }
+
+        private static Function<Object, Object> decoderFor(ObjectMapper mapper, Class<?> type, Type genericType) {
+            if (type == String.class) {
+                return raw -> raw;
+            }
+            if (type == int.class || type == Integer.class) {
+                return raw -> raw instanceof Number n ? (Object) n.intValue() : mapper.adaptValue(type, genericType, raw);
+            }
+            if (type == long.class || type == Long.class) {
+                return raw -> raw instanceof Number n ? (Object) n.longValue() : mapper.adaptValue(type, genericType, raw);
+            }
+            if (type == double.class || type == Double.class) {
+                return raw -> raw instanceof Number n ? (Object) n.doubleValue() : mapper.adaptValue(type, genericType, raw);
+            }
+            if (type == float.class || type == Float.class) {
+                return raw -> raw instanceof Number n ? (Object) n.floatValue() : mapper.adaptValue(type, genericType, raw);
+            }
+            if (type == boolean.class || type == Boolean.class) {
+                return raw -> raw instanceof Boolean ? raw : mapper.adaptValue(type, genericType, raw);
+            }
+            return raw -> mapper.adaptValue(type, genericType, raw);
+        }
+    }
+}
@@ -2,9 +2,26 @@ package me.blueslime.meteor.storage.mapper;
 
 import me.blueslime.meteor.platforms.api.service.PlatformService;
 import me.blueslime.meteor.storage.interfaces.*;
+import me.blueslime.meteor.storage.mapper.payload.PayloadCodec;
 import me.blueslime.meteor.utilities.consumer.PluginConsumer;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
 import org.bson.Document;
-
+import org.bson.codecs.*;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonReader;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -21,6 +38,41 @@ public class ObjectMapper implements PlatformService {
     private final Map<Class<?>, Function<Collection<?>, ?>> collections = new ConcurrentHashMap<>();
     private final Map<Class<?>, Function<String, ?>> converters = new ConcurrentHashMap<>();
 
+    private static final CodecRegistry JSON_REGISTRY = CodecRegistries.fromProviders(
+            new ValueCodecProvider(), new BsonValueCodecProvider(), new DocumentCodecProvider()
+    );
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+    private static final BsonTypeClassMap BSON_TYPES = new BsonTypeClassMap();
+    /**
+     * Relaxed output with the strict forms of doubles, longs, dates and binaries, so payloads keep their previous bytes.
+     */
+    private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder()
+            .outputMode(JsonMode.RELAXED)
+            .doubleConverter((value, writer) -> writer.writeNumber(Double.toString(value)))
+            .int64Converter((value, writer) -> {
+                writer.writeStartObject();
+                writer.writeString("$numberLong", Long.toString(value));
+                writer.writeEndObject();
+            })
+            .dateTimeConverter((value, writer) -> {
+                writer.writeStartObject();
+                writer.writeNumber("$date", Long.toString(value));
+                writer.writeEndObject();
+            })
+            .binaryConverter((value, writer) -> {
+                writer.writeStartObject();
+                writer.writeString("$binary", Base64.getEncoder().encodeToString(value.getData()));
+                writer.writeString("$type", String.format("%02X", value.getType()));
+                writer.writeEndObject();
+            })
+            .build();
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+    private final Map<Class<?>, PayloadCodec> payloadCodecs = new ConcurrentHashMap<>();
+    private final List<PayloadCodec> payloadFormats = new CopyOnWriteArrayList<>(List.of(PayloadCodec.BSON, PayloadCodec.JSON));
+    private volatile PayloadCodec defaultPayloadCodec = PayloadCodec.JSON;
+
     private final ThreadLocal<Set<Object>> serializationStack = ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
 
     public ObjectMapper() {
@@ -75,7 +127,9 @@ public class ObjectMapper implements PlatformService {
             EntityStructure structure = getStructure(obj.getClass());
             Document doc = new Document();
 
-            if (structure.isRecord) {
+            if (structure.codec != null) {
+                structure.codec.encode(obj, doc);
+            } else if (structure.isRecord) {
                 for (RecordComponentData rc : structure.recordComponents) {
                     try {
                         Method accessor = structure.recordAccessors.get(rc.key);
@@ -115,6 +169,10 @@ public class ObjectMapper implements PlatformService {
         EntityStructure structure = getStructure(clazz);
 
         try {
+            if (structure.codec != null) {
+                return (T) structure.codec.decode(doc);
+            }
+
             if (structure.isRecord) {
                 return createRecord(clazz, structure, doc);
             }
@@ -170,7 +228,7 @@ public class ObjectMapper implements PlatformService {
         return canonical.newInstance(args);
     }
 
-    private Object transformToStorable(Object value) {
+    Object transformToStorable(Object value) {
         if (value == null) return null;
 
         if (isPrimitiveOrWrapper(value.getClass()) || value instanceof String) return value;
@@ -218,7 +276,7 @@ public class ObjectMapper implements PlatformService {
         return args;
     }
 
-    private Object adaptValue(Class<?> expected, Type genericType, Object raw) {
+    Object adaptValue(Class<?> expected, Type genericType, Object raw) {
         if (raw == null) return null;
 
         if (expected.isEnum() && raw instanceof String) {
@@ -320,26 +378,394 @@ public class ObjectMapper implements PlatformService {
     }
 
     public String toJson(Object value) {
-        if (value instanceof StorageObject) return toDocument(value).toJson();
-        if (value instanceof Collection) return new Document("list", value).toJson();
-        return new Document("v", value).toJson();
+        StringWriter out = new StringWriter();
+        encode(new JsonWriter(out, JSON_SETTINGS), value);
+        return out.toString();
+    }
+
+    /**
+     * Writes an object as JSON straight to the output, without building an intermediate {@link Document}.
+     * The output is identical to {@code toDocument(obj).toJson()}.
+     *
+     * @param obj object to write
+     * @param out destination, not closed by this method
+     */
+    public void writeJson(Object obj, Writer out) {
+        JsonWriter writer = new JsonWriter(out, JSON_SETTINGS);
+        writeObject(writer, obj);
+        writer.flush();
     }
 
     public <T> T fromJson(String json, Class<T> clazz) {
         try {
-            Document doc = Document.parse(json);
-            if (doc.containsKey("v") && !isComplexObject(clazz)) {
-                return (T) adaptValue(clazz, clazz, doc.get("v"));
-            }
-            if (doc.containsKey("list") && Collection.class.isAssignableFrom(clazz)) {
-                return (T) adaptValue(clazz, clazz, doc.get("list"));
+            return decode(new JsonReader(json), clazz);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads an object from a JSON token stream straight into the target class, without building an intermediate {@link Document}.
+     *
+     * @param json  source, not closed by this method
+     * @param clazz target class
+     * @return the object, or null if the JSON could not be read
+     */
+    public <T> T fromJson(Reader json, Class<T> clazz) {
+        try {
+            return decode(new JsonReader(json), clazz);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a value to any bson writer, JSON or binary, using the same layout as {@link #toJson(Object)}:
+     * storage objects and documents are written as documents, collections are wrapped in {@code list} and other values in {@code v}.
+     *
+     * @param writer destination
+     * @param value  value to write
+     */
+    public void encode(BsonWriter writer, Object value) {
+        if (value instanceof StorageObject) {
+            writeObject(writer, value);
+        } else if (value instanceof Document document) {
+            DOCUMENT_CODEC.encode(writer, document, ENCODER_CONTEXT);
+        } else if (value instanceof Collection) {
+            DOCUMENT_CODEC.encode(writer, new Document("list", value), ENCODER_CONTEXT);
+        } else {
+            DOCUMENT_CODEC.encode(writer, new Document("v", value), ENCODER_CONTEXT);
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #encode(BsonWriter, Object)} from any bson reader.
+     *
+     * @param reader source positioned before the document
+     * @param clazz  expected type
+     * @return the value, null if it could not be built
+     */
+    public <T> T decode(BsonReader reader, Class<T> clazz) throws Exception {
+        if (isStreamable(clazz)) {
+            return readObject(reader, clazz);
+        }
+        Document doc = DOCUMENT_CODEC.decode(reader, DECODER_CONTEXT);
+        if (doc.containsKey("v") && !isComplexObject(clazz)) {
+            return (T) adaptValue(clazz, clazz, doc.get("v"));
+        }
+        if (doc.containsKey("list") && Collection.class.isAssignableFrom(clazz)) {
+            return (T) adaptValue(clazz, clazz, doc.get("list"));
+        }
+        if (clazz == Document.class) {
+            return (T) doc;
+        }
+        return fromDocument(clazz, doc);
+    }
+
+    /**
+     * Registers the payload format used to store and send objects of a class.
+     * Every registered format is also used to detect existing payloads on read.
+     *
+     * @param clazz class using the format
+     * @param codec payload format
+     */
+    public void registerPayloadCodec(Class<?> clazz, PayloadCodec codec) {
+        payloadCodecs.put(clazz, codec);
+        registerPayloadFormat(codec);
+    }
+
+    /**
+     * Registers a payload format only for detection, so payloads written with it can be read back.
+     *
+     * @param codec payload format
+     */
+    public void registerPayloadFormat(PayloadCodec codec) {
+        if (!payloadFormats.contains(codec)) {
+            payloadFormats.add(0, codec);
+        }
+    }
+
+    /**
+     * Sets the payload format used by classes without a registered one, {@link PayloadCodec#JSON} by default.
+     *
+     * @param codec payload format
+     */
+    public void setDefaultPayloadCodec(PayloadCodec codec) {
+        this.defaultPayloadCodec = codec;
+        registerPayloadFormat(codec);
+    }
+
+    public PayloadCodec getPayloadCodec(Class<?> clazz) {
+        return payloadCodecs.getOrDefault(clazz, defaultPayloadCodec);
+    }
+
+    /**
+     * Encodes a value with the payload format of its class.
+     *
+     * @param value value to encode
+     * @return payload bytes
+     */
+    public byte[] toPayload(Object value) {
+        return getPayloadCodec(value == null ? Object.class : value.getClass()).encode(this, value);
+    }
+
+    /**
+     * Decodes a payload in any registered format, the format is detected from the payload itself
+     * so rows and messages written before a class switched formats are still read.
+     *
+     * @param payload payload bytes
+     * @param clazz   expected type
+     * @return the value, or null if the payload could not be read
+     */
+    public <T> T fromPayload(byte[] payload, Class<T> clazz) {
+        if (payload == null || payload.length == 0) return null;
+        try {
+            for (PayloadCodec codec : payloadFormats) {
+                if (codec.canDecode(payload)) {
+                    return codec.decode(this, payload, clazz);
+                }
             }
-            return fromDocument(clazz, doc);
         } catch (Exception e) {
+            logError("Failed to decode payload of " + clazz.getSimpleName(), e);
+        }
+        return null;
+    }
+
+    private boolean isStreamable(Class<?> clazz) {
+        return isComplexObject(clazz) && !Collection.class.isAssignableFrom(clazz) && !Map.class.isAssignableFrom(clazz);
+    }
+
+    void writeObject(BsonWriter writer, Object obj) {
+        if (obj == null) {
+            writer.writeStartDocument();
+            writer.writeEndDocument();
+            return;
+        }
+
+        Set<Object> stack = serializationStack.get();
+        if (stack.contains(obj)) {
+            writer.writeStartDocument();
+            writer.writeString("_cyclic_ref", obj.getClass().getSimpleName());
+            writer.writeEndDocument();
+            return;
+        }
+
+        EntityStructure structure = getStructure(obj.getClass());
+        if (structure.codec == null) {
+            DOCUMENT_CODEC.encode(writer, toDocument(obj), ENCODER_CONTEXT);
+            return;
+        }
+
+        stack.add(obj);
+        try {
+            writer.writeStartDocument();
+            structure.codec.writeJson(this, writer, obj);
+            writer.writeEndDocument();
+        } finally {
+            stack.remove(obj);
+        }
+    }
+
+    /**
+     * Writes any value the same way {@link #transformToStorable(Object)} followed by {@link DocumentCodec} would.
+     */
+    @SuppressWarnings("rawtypes")
+    void writeValue(BsonWriter writer, Object value) {
+        if (value == null) {
+            writer.writeNull();
+        } else if (value instanceof String string) {
+            writer.writeString(string);
+        } else if (value instanceof Integer number) {
+            writer.writeInt32(number);
+        } else if (value instanceof Long number) {
+            writer.writeInt64(number);
+        } else if (value instanceof Double number) {
+            writer.writeDouble(number);
+        } else if (value instanceof Boolean bool) {
+            writer.writeBoolean(bool);
+        } else if (isPrimitiveOrWrapper(value.getClass())) {
+            ((Encoder) JSON_REGISTRY.get(value.getClass())).encode(writer, value, ENCODER_CONTEXT);
+        } else if (value.getClass().isEnum()) {
+            writer.writeString(value.toString());
+        } else if (value instanceof Collection<?> collection) {
+            writer.writeStartArray();
+            for (Object element : collection) writeValue(writer, element);
+            writer.writeEndArray();
+        } else if (value instanceof Map<?, ?> map) {
+            writer.writeStartDocument();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writer.writeName(String.valueOf(entry.getKey()));
+                writeValue(writer, entry.getValue());
+            }
+            writer.writeEndDocument();
+        } else if (value.getClass().isArray()) {
+            writer.writeStartArray();
+            int len = Array.getLength(value);
+            for (int i = 0; i < len; i++) writeValue(writer, Array.get(value, i));
+            writer.writeEndArray();
+        } else {
+            writeObject(writer, value);
+        }
+    }
+
+    <T> T readObject(BsonReader reader, Class<T> clazz) throws Exception {
+        EntityStructure structure = getStructure(clazz);
+        if (structure.codec == null) {
+            return fromDocument(clazz, DOCUMENT_CODEC.decode(reader, DECODER_CONTEXT));
+        }
+        return (T) structure.codec.readJson(this, reader);
+    }
+
+    /**
+     * Reads the current value into the same Java type {@link DocumentCodec} would produce.
+     */
+    Object readValue(BsonReader reader) {
+        BsonType type = reader.getCurrentBsonType();
+        switch (type) {
+            case NULL -> {
+                reader.readNull();
+                return null;
+            }
+            case STRING -> {
+                return reader.readString();
+            }
+            case INT32 -> {
+                return reader.readInt32();
+            }
+            case INT64 -> {
+                return reader.readInt64();
+            }
+            case DOUBLE -> {
+                return reader.readDouble();
+            }
+            case BOOLEAN -> {
+                return reader.readBoolean();
+            }
+            case DOCUMENT -> {
+                return DOCUMENT_CODEC.decode(reader, DECODER_CONTEXT);
+            }
+            case ARRAY -> {
+                List<Object> list = new ArrayList<>();
+                reader.readStartArray();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    list.add(readValue(reader));
+                }
+                reader.readEndArray();
+                return list;
+            }
+            default -> {
+                return JSON_REGISTRY.get(BSON_TYPES.get(type)).decode(reader, DECODER_CONTEXT);
+            }
+        }
+    }
+
+    /**
+     * Resolves the value of the {@link StorageIdentifier} member of an object.
+     * Accessors are resolved once per class, so no reflective lookup happens after the first call.
+     *
+     * @param obj object to inspect
+     * @return identifier as string, or null when the class has no identifier or it is not set
+     */
+    public String extractIdentifier(Object obj) {
+        if (obj == null) return null;
+        IdentifierAccessor accessor = getStructure(obj.getClass()).identifier;
+        if (accessor == null) return null;
+        try {
+            Object value = accessor.getter.invokeExact(obj);
+            return value != null ? value.toString() : null;
+        } catch (Throwable t) {
+            logError("Failed to extract identifier of " + obj.getClass().getSimpleName(), t instanceof Exception e ? e : new RuntimeException(t));
             return null;
         }
     }
 
+    /**
+     * Resolves the values of every {@link StorageExtraIdentifier} member of an object.
+     *
+     * @param obj object to inspect
+     * @return non-null extra identifiers as strings
+     */
+    public Set<String> extractExtraIdentifiers(Object obj) {
+        if (obj == null) return Collections.emptySet();
+        List<IdentifierAccessor> accessors = getStructure(obj.getClass()).extraIdentifiers;
+        if (accessors.isEmpty()) return Collections.emptySet();
+
+        Set<String> extras = new HashSet<>();
+        for (IdentifierAccessor accessor : accessors) {
+            try {
+                Object value = accessor.getter.invokeExact(obj);
+                if (value != null) extras.add(value.toString());
+            } catch (Throwable t) {
+                logError("Failed to extract extra identifier of " + obj.getClass().getSimpleName(), t instanceof Exception e ? e : new RuntimeException(t));
+            }
+        }
+        return extras;
+    }
+
+    /**
+     * Writes a generated identifier into the {@link StorageIdentifier} member of an object.
+     *
+     * @param obj        object to update
+     * @param identifier identifier to set, converted to the member type when a converter is registered
+     * @return true if the identifier was written
+     */
+    public boolean injectIdentifier(Object obj, String identifier) {
+        if (obj == null) return false;
+        IdentifierAccessor accessor = getStructure(obj.getClass()).identifier;
+        if (accessor == null || accessor.setter == null) return false;
+        try {
+            accessor.setter.invokeExact(obj, convertValue(accessor.type, identifier));
+            return true;
+        } catch (Throwable ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * Stored properties of a class in the order {@link #toDocument(Object)} writes them.
+     * When several members share a storage key only the last one is kept, as it is the one stored.
+     *
+     * @param clazz mapped class
+     * @return properties keyed by storage key
+     */
+    public List<StorageProperty> describe(Class<?> clazz) {
+        EntityStructure structure = getStructure(clazz);
+        Map<String, StorageProperty> properties = new LinkedHashMap<>();
+        if (structure.isRecord) {
+            for (RecordComponentData rc : structure.recordComponents) {
+                properties.put(rc.storageKey, new StorageProperty(rc.storageKey, rc.type, rc.genericType, rc.indexed));
+            }
+        } else {
+            for (FieldData data : structure.fields) {
+                properties.put(data.storageKey, new StorageProperty(data.storageKey, data.field.getType(), data.genericType, data.indexed));
+            }
+        }
+        return new ArrayList<>(properties.values());
+    }
+
+    /**
+     * Writes a single storable value, as produced by {@link #toDocument(Object)}, as JSON.
+     * Values keep their extended JSON representation, so {@link #fromJsonValue(String)} restores the same type.
+     *
+     * @param value storable value
+     * @return JSON text of the value
+     */
+    public String toJsonValue(Object value) {
+        String json = new Document("v", value).toJson(JSON_SETTINGS);
+        return json.substring(json.indexOf(':') + 1, json.length() - 1).trim();
+    }
+
+    /**
+     * Reads a value written by {@link #toJsonValue(Object)}.
+     *
+     * @param json JSON text of the value
+     * @return storable value, documents and lists as {@link Document} and {@link List}
+     */
+    public Object fromJsonValue(String json) {
+        if (json == null) return null;
+        return Document.parse("{\"v\": " + json + "}").get("v");
+    }
+
     public boolean isComplexObject(Class<?> clazz) {
         return StorageObject.class.isAssignableFrom(clazz) ||
                (!clazz.getName().startsWith("java.") && !clazz.isPrimitive() && !clazz.isEnum());
@@ -349,11 +775,11 @@ public class ObjectMapper implements PlatformService {
         return type.isPrimitive();
     }
 
-    private boolean isPrimitiveOrWrapper(Class<?> type) {
+    boolean isPrimitiveOrWrapper(Class<?> type) {
         return type.isPrimitive() || Number.class.isAssignableFrom(type) || type == Boolean.class || type == Character.class;
     }
 
-    private Object getPrimitiveDefault(Class<?> type) {
+    Object getPrimitiveDefault(Class<?> type) {
         if (type == int.class) return 0;
         if (type == boolean.class) return false;
         if (type == double.class) return 0.0;
@@ -379,10 +805,14 @@ public class ObjectMapper implements PlatformService {
     }
 
     private EntityStructure getStructure(Class<?> clazz) {
-        return structureCache.computeIfAbsent(clazz, EntityStructure::new);
+        return structureCache.computeIfAbsent(clazz, type -> {
+            EntityStructure structure = new EntityStructure(type);
+            structure.codec = EntityCodec.compile(this, type, structure);
+            return structure;
+        });
     }
 
-    private static class EntityStructure {
+    static class EntityStructure {
         final boolean isRecord;
         final List<FieldData> fields = new ArrayList<>();
 
@@ -393,6 +823,14 @@ public class ObjectMapper implements PlatformService {
         final Class<?>[] recordTypes;
         final Map<String, Method> recordAccessors = new HashMap<>();
 
+        IdentifierAccessor identifier = null;
+        final List<IdentifierAccessor> extraIdentifiers = new ArrayList<>();
+
+        /**
+         * Specialised codec, null when the class could not be compiled and the reflective path is used.
+         */
+        EntityCodec codec = null;
+
         public EntityStructure(Class<?> clazz) {
             this.isRecord = clazz.isRecord();
 
@@ -404,6 +842,28 @@ public class ObjectMapper implements PlatformService {
                 scanFields(clazz);
                 scanConstructors(clazz);
             }
+            scanIdentifiers(clazz);
+        }
+
+        /**
+         * Identifiers are looked up on every declared field, even ignored ones, so they are resolved
+         * the same way for records, classes and their superclasses.
+         */
+        private void scanIdentifiers(Class<?> clazz) {
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) continue;
+                    boolean main = field.isAnnotationPresent(StorageIdentifier.class);
+                    boolean extra = field.isAnnotationPresent(StorageExtraIdentifier.class);
+                    if (!main && !extra) continue;
+
+                    IdentifierAccessor accessor = IdentifierAccessor.of(field);
+                    if (accessor == null) continue;
+
+                    if (main && identifier == null) identifier = accessor;
+                    if (extra) extraIdentifiers.add(accessor);
+                }
+            }
         }
 
         private void scanRecord(Class<?> clazz) {
@@ -422,6 +882,7 @@ public class ObjectMapper implements PlatformService {
             if (clazz == null || clazz == Object.class) return;
             for (Field field : clazz.getDeclaredFields()) {
                 if (field.isAnnotationPresent(StorageIgnore.class)) continue;
+                if (Modifier.isStatic(field.getModifiers())) continue;
                 field.setAccessible(true);
                 fields.add(new FieldData(field));
             }
@@ -441,20 +902,57 @@ public class ObjectMapper implements PlatformService {
         }
     }
 
-    private static class FieldData {
+    private static class IdentifierAccessor {
+        private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+        private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+        final Class<?> type;
+        final MethodHandle getter;
+        final MethodHandle setter;
+
+        private IdentifierAccessor(Class<?> type, MethodHandle getter, MethodHandle setter) {
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        static IdentifierAccessor of(Field field) {
+            try {
+                field.setAccessible(true);
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle getter = lookup.unreflectGetter(field).asType(GETTER);
+
+                MethodHandle setter = null;
+                if (!field.getDeclaringClass().isRecord()) {
+                    try {
+                        setter = lookup.unreflectSetter(field).asType(SETTER);
+                    } catch (IllegalAccessException ignored) {}
+                }
+                return new IdentifierAccessor(field.getType(), getter, setter);
+            } catch (Exception ignored) {
+                return null;
+            }
+        }
+    }
+
+    static class FieldData {
         final Field field;
         final String storageKey;
         final boolean hasDefaultValue;
         final String defaultValue;
         final Type genericType;
+        final boolean identifier;
+        final boolean indexed;
 
         FieldData(Field field) {
             this.field = field;
             this.genericType = field.getGenericType();
+            this.identifier = field.isAnnotationPresent(StorageIdentifier.class);
+            this.indexed = field.isAnnotationPresent(StorageIndexed.class);
             String key = field.getName();
             String def = "";
             boolean hasDef = false;
-            if (field.isAnnotationPresent(StorageIdentifier.class)) {
+            if (identifier) {
                 key = "_id";
             }
             if (field.isAnnotationPresent(StorageKey.class)) {
@@ -471,7 +969,7 @@ public class ObjectMapper implements PlatformService {
         }
     }
 
-    private static class ParamData {
+    static class ParamData {
         final String storageKey;
         final Class<?> type;
         final Type genericType;
@@ -501,18 +999,20 @@ public class ObjectMapper implements PlatformService {
         }
     }
 
-    private static class RecordComponentData {
+    static class RecordComponentData {
         final String key;
         final String storageKey;
         final Class<?> type;
         final Type genericType;
         final boolean hasDefaultValue;
         final String defaultValue;
+        final boolean indexed;
 
         RecordComponentData(RecordComponent rc) {
             this.type = rc.getType();
             this.genericType = rc.getGenericType();
             this.key = rc.getName();
+            this.indexed = rc.isAnnotationPresent(StorageIndexed.class);
 
             String sKey = rc.getName();
             String def = "";
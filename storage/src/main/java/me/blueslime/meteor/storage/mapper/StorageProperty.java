@@ -0,0 +1,15 @@
+package me.blueslime.meteor.storage.mapper;
+
+import java.lang.reflect.Type;
+
+/**
+ * Stored property of a mapped class.
+ *
+ * @param key         storage key, {@code _id} for the identifier unless renamed with {@link me.blueslime.meteor.storage.interfaces.StorageKey}
+ * @param type        declared type
+ * @param genericType declared generic type
+ * @param indexed     whether the property is marked with {@link me.blueslime.meteor.storage.interfaces.StorageIndexed}
+ */
+public record StorageProperty(String key, Class<?> type, Type genericType, boolean indexed) {
+
+}
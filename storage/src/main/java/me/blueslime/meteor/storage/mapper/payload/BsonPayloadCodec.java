@@ -0,0 +1,53 @@
+package me.blueslime.meteor.storage.mapper.payload;
+
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.io.BasicOutputBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary format, the BSON document is written and read directly by the mapper codecs,
+ * numbers keep their binary representation and decoding needs no text parsing.
+ */
+public class BsonPayloadCodec implements PayloadCodec {
+
+    /**
+     * First byte of every payload, never the first byte of a JSON document.
+     */
+    public static final byte MARKER = 0x01;
+
+    @Override
+    public String name() {
+        return "bson";
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(ObjectMapper mapper, Object value) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        buffer.writeByte(MARKER);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            mapper.encode(writer, value);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(ObjectMapper mapper, byte[] payload, Class<T> clazz) throws Exception {
+        ByteBuffer document = ByteBuffer.wrap(payload, 1, payload.length - 1).slice();
+        try (BsonBinaryReader reader = new BsonBinaryReader(document)) {
+            return mapper.decode(reader, clazz);
+        }
+    }
+
+    @Override
+    public boolean canDecode(byte[] payload) {
+        return payload.length > 5 && payload[0] == MARKER;
+    }
+}
@@ -0,0 +1,41 @@
+package me.blueslime.meteor.storage.mapper.payload;
+
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import org.bson.json.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+public class JsonPayloadCodec implements PayloadCodec {
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+
+    @Override
+    public byte[] encode(ObjectMapper mapper, Object value) {
+        return mapper.toJson(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(ObjectMapper mapper, byte[] payload, Class<T> clazz) throws Exception {
+        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8);
+        return mapper.decode(new JsonReader(reader), clazz);
+    }
+
+    @Override
+    public boolean canDecode(byte[] payload) {
+        for (byte b : payload) {
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n') continue;
+            return b == '{' || b == '[';
+        }
+        return false;
+    }
+}
@@ -0,0 +1,43 @@
+package me.blueslime.meteor.storage.mapper.payload;
+
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+
+/**
+ * Format used to turn objects into stored rows, cache values and channel payloads.
+ * <p>
+ * Formats are selected per class with {@link ObjectMapper#registerPayloadCodec(Class, PayloadCodec)}
+ * and detected on read with {@link #canDecode(byte[])}, so data written in another registered format
+ * keeps loading after a class switches formats.
+ */
+public interface PayloadCodec {
+
+    /**
+     * UTF-8 JSON text, the format every backend used before payload formats existed.
+     */
+    PayloadCodec JSON = new JsonPayloadCodec();
+
+    /**
+     * Raw BSON document bytes prefixed with {@link BsonPayloadCodec#MARKER}.
+     */
+    PayloadCodec BSON = new BsonPayloadCodec();
+
+    /**
+     * Short unique name of the format.
+     */
+    String name();
+
+    /**
+     * Binary formats are stored in binary columns and values, text formats keep using text storage.
+     */
+    boolean isBinary();
+
+    byte[] encode(ObjectMapper mapper, Object value);
+
+    <T> T decode(ObjectMapper mapper, byte[] payload, Class<T> clazz) throws Exception;
+
+    /**
+     * @param payload stored or received payload
+     * @return true if the payload was written by this format
+     */
+    boolean canDecode(byte[] payload);
+}
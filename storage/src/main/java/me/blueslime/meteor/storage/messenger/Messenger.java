@@ -2,7 +2,9 @@ package me.blueslime.meteor.storage.messenger;
 
 import me.blueslime.meteor.platforms.api.service.PlatformService;
 import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import me.blueslime.meteor.storage.mapper.payload.PayloadCodec;
 import me.blueslime.meteor.storage.messenger.channels.parameter.ChannelMessageEvent;
+import java.util.Base64;
 import java.util.function.Consumer;
 
 public interface Messenger extends PlatformService {
@@ -12,6 +14,14 @@ public interface Messenger extends PlatformService {
      */
     void publish(String channelId, String payload);
 
+    /**
+     * Publish a binary payload produced by a binary {@link PayloadCodec}.
+     * Messengers without a binary transport send it as Base64 text.
+     */
+    default void publish(String channelId, byte[] payload) {
+        publish(channelId, Base64.getEncoder().encodeToString(payload));
+    }
+
     /**
      * Subscribe to incoming messages for a given channel id.
      * The messenger implementation must call the consumer when a message arrives.
@@ -38,6 +38,10 @@ public abstract class BaseChannel extends Channel {
         messenger.publish(getId(), payload);
     }
 
+    protected void publishRaw(byte[] payload) {
+        messenger.publish(getId(), payload);
+    }
+
     public ChannelCache cache() {
         return cache;
     }
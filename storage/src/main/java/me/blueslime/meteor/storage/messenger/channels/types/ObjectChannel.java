@@ -3,9 +3,11 @@ package me.blueslime.meteor.storage.messenger.channels.types;
 import me.blueslime.meteor.platforms.api.logger.PlatformLogger;
 import me.blueslime.meteor.storage.interfaces.StorageObject;
 import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import me.blueslime.meteor.storage.mapper.payload.PayloadCodec;
 import me.blueslime.meteor.storage.messenger.channels.BaseChannel;
 import me.blueslime.meteor.storage.messenger.channels.cache.ChannelCache;
 import me.blueslime.meteor.storage.messenger.Messenger;
+import org.bson.Document;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -40,6 +42,12 @@ public abstract class ObjectChannel<V extends StorageObject> extends BaseChannel
             payload.put("messages", new ArrayList<>());
         }
 
+        PayloadCodec codec = objectMapper.getPayloadCodec(value.getClass());
+        if (codec.isBinary()) {
+            publishRaw(codec.encode(objectMapper, new Document(payload)));
+            return;
+        }
+
         String json = objectMapper.toJson(payload);
         publishRaw(json);
     }
@@ -5,10 +5,12 @@ import me.blueslime.meteor.storage.messenger.Messenger;
 import me.blueslime.meteor.storage.messenger.channels.parameter.ChannelMessageEvent;
 import me.blueslime.meteor.storage.messenger.channels.parameter.types.ChannelMessageWithObjectEvent;
 import me.blueslime.meteor.storage.messenger.channels.parameter.types.ChannelMessageWithoutObjectEvent;
+import me.blueslime.meteor.storage.mapper.payload.BsonPayloadCodec;
 import com.rabbitmq.client.*;
 import org.bson.Document;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -59,11 +61,16 @@ public class RabbitMQMessenger implements Messenger {
 
     @Override
     public void publish(String channelId, String payload) {
+        publish(channelId, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void publish(String channelId, byte[] payload) {
         try {
             if (channel == null || !channel.isOpen()) connectAsync();
             String exchange = "umeteor_channels";
             channel.exchangeDeclare(exchange, BuiltinExchangeType.TOPIC, true);
-            channel.basicPublish(exchange, channelId, null, payload.getBytes());
+            channel.basicPublish(exchange, channelId, null, payload);
         } catch (Exception e) {
             getLogger().error(e, "RabbitMQ publish error: " + e.getMessage());
             connectAsync();
@@ -100,10 +107,12 @@ public class RabbitMQMessenger implements Messenger {
             handle.consumerTag = channel.basicConsume(q, handle.autoAck, new DefaultConsumer(channel) {
                 @Override
                 public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
-                    String payload = new String(body);
                     processingExecutor.submit(() -> {
                         try {
-                            Document map = Document.parse(payload);
+                            Document map = body.length > 0 && body[0] == BsonPayloadCodec.MARKER
+                                    ? objectMapper.fromPayload(body, Document.class)
+                                    : Document.parse(new String(body));
+                            if (map == null) throw new IllegalArgumentException("Unknown payload format");
 
                             String destiny = map.getString("destiny");
                             String type = map.getString("type");
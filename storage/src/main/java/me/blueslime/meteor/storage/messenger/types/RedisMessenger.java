@@ -213,7 +213,7 @@ public class RedisMessenger implements Messenger {
     private void dispatchParsedPayload(String channel, String message, Consumer<ChannelMessageEvent> consumer, SubscriptionHandle handle) {
         Runnable job = () -> {
             try {
-                Document map = Document.parse(message);
+                Document map = parsePayload(message);
 
                 String destiny = map.getString("destiny");
                 String type = map.getString("type");
@@ -266,6 +266,18 @@ public class RedisMessenger implements Messenger {
         }
     }
 
+    /**
+     * JSON payloads are parsed as they are, binary payloads arrive as Base64 text.
+     */
+    private Document parsePayload(String message) {
+        if (message.trim().startsWith("{")) {
+            return Document.parse(message);
+        }
+        Document map = objectMapper.fromPayload(Base64.getDecoder().decode(message), Document.class);
+        if (map == null) throw new IllegalArgumentException("Unknown payload format");
+        return map;
+    }
+
     private void safeInvokeConsumer(ChannelMessageEvent ev, Consumer<ChannelMessageEvent> consumer) {
         try {
             consumer.accept(ev);
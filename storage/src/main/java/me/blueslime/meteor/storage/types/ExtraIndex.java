@@ -0,0 +1,243 @@
+package me.blueslime.meteor.storage.types;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Extra identifiers of the objects of one class, used by {@link YamlDatabase}.
+ * <p>
+ * The whole index lives in memory and every change is appended to {@code .extras.journal} in the class folder,
+ * which is replayed when the index is opened and rewritten with only the live entries once it has grown
+ * well past them. Entries of objects whose file no longer exists are dropped when they are found.
+ */
+final class ExtraIndex implements Closeable {
+
+    private static final String JOURNAL = ".extras.journal";
+    private static final String LEGACY_FOLDER = ".index";
+    private static final int COMPACTION_SLACK = 1024;
+
+    private static final byte SET = 1;
+    private static final byte REMOVE = 2;
+
+    private final Map<String, String> identifiers = new HashMap<>();
+    private final Map<String, Set<String>> extras = new HashMap<>();
+
+    private final Path folder;
+    private final Path journal;
+    private FileChannel channel;
+    private int entries = 0;
+
+    private ExtraIndex(Path folder) {
+        this.folder = folder;
+        this.journal = folder.resolve(JOURNAL);
+    }
+
+    /**
+     * Loads the index of a class folder, importing the {@code .index/<extra>.idx} files of older versions.
+     *
+     * @param exists tells whether the object of an identifier is still stored
+     * @param errors receives the problems found while replaying the journal
+     */
+    static ExtraIndex open(Path folder, Predicate<String> exists, BiConsumer<String, Exception> errors) throws IOException {
+        Files.createDirectories(folder);
+        ExtraIndex index = new ExtraIndex(folder);
+
+        boolean rewrite = false;
+        if (Files.exists(index.journal)) {
+            rewrite = index.replay(errors);
+        } else if (Files.isDirectory(folder.resolve(LEGACY_FOLDER))) {
+            index.importLegacy();
+            rewrite = true;
+        }
+
+        for (String id : new ArrayList<>(index.extras.keySet())) {
+            if (!exists.test(id)) {
+                index.apply(id, Set.of());
+                rewrite = true;
+            }
+        }
+
+        if (rewrite || index.entries > index.extras.size() + COMPACTION_SLACK) {
+            index.rewrite();
+        } else {
+            index.channel = FileChannel.open(index.journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        deleteLegacy(folder.resolve(LEGACY_FOLDER));
+        return index;
+    }
+
+    synchronized String get(String extraLower) {
+        return identifiers.get(extraLower);
+    }
+
+    /**
+     * Replaces the extra identifiers of an object, releasing the ones it no longer has.
+     */
+    synchronized void set(String id, Set<String> extraLowers) throws IOException {
+        Set<String> previous = extras.getOrDefault(id, Set.of());
+        if (previous.equals(extraLowers) && extraLowers.stream().allMatch(extra -> id.equals(identifiers.get(extra)))) {
+            return;
+        }
+        apply(id, extraLowers);
+        append(extraLowers.isEmpty() ? REMOVE : SET, id, extraLowers);
+    }
+
+    synchronized void remove(String id) throws IOException {
+        if (!extras.containsKey(id)) return;
+        apply(id, Set.of());
+        append(REMOVE, id, Set.of());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+        channel.force(false);
+        channel.close();
+        channel = null;
+    }
+
+    private void apply(String id, Set<String> extraLowers) {
+        Set<String> previous = extraLowers.isEmpty() ? extras.remove(id) : extras.put(id, new HashSet<>(extraLowers));
+        if (previous != null) {
+            for (String extra : previous) {
+                if (!extraLowers.contains(extra)) identifiers.remove(extra, id);
+            }
+        }
+        for (String extra : extraLowers) {
+            String owner = identifiers.put(extra, id);
+            if (owner != null && !owner.equals(id)) {
+                Set<String> owned = extras.get(owner);
+                if (owned != null) owned.remove(extra);
+            }
+        }
+    }
+
+    private void append(byte type, String id, Set<String> extraLowers) throws IOException {
+        ByteBuffer record = encode(type, id, extraLowers);
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        channel.force(false);
+
+        entries++;
+        if (entries > 2 * extras.size() + COMPACTION_SLACK) rewrite();
+    }
+
+    /**
+     * Replays the journal, truncating a record torn by a crash.
+     *
+     * @return whether the journal has to be rewritten
+     */
+    private boolean replay(BiConsumer<String, Exception> errors) throws IOException {
+        long valid = 0;
+        long size = Files.size(journal);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal), 1 << 16))) {
+            while (valid + 8 <= size) {
+                int length = in.readInt();
+                int crc = in.readInt();
+                if (length <= 0 || length > size - valid - 8) break;
+
+                byte[] body = new byte[length];
+                in.readFully(body);
+                CRC32C checksum = new CRC32C();
+                checksum.update(body);
+                if ((int) checksum.getValue() != crc) break;
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                byte type = record.readByte();
+                String id = record.readUTF();
+                Set<String> extraLowers = new HashSet<>();
+                if (type == SET) {
+                    int count = record.readUnsignedShort();
+                    for (int i = 0; i < count; i++) {
+                        extraLowers.add(record.readUTF());
+                    }
+                }
+                apply(id, extraLowers);
+                entries++;
+                valid += 8 + length;
+            }
+        }
+        if (valid == size) return false;
+
+        errors.accept("Dropped " + (size - valid) + " bytes of an incomplete entry at the end of " + journal, null);
+        return true;
+    }
+
+    private void importLegacy() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder.resolve(LEGACY_FOLDER), "*.idx")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String extra = name.substring(0, name.length() - ".idx".length());
+                String id = Files.readString(file).trim();
+                if (id.isEmpty()) continue;
+
+                Set<String> extraLowers = new HashSet<>(extras.getOrDefault(id, Set.of()));
+                extraLowers.add(extra);
+                apply(id, extraLowers);
+            }
+        }
+    }
+
+    private static void deleteLegacy(Path legacy) {
+        if (!Files.isDirectory(legacy)) return;
+        try (Stream<Path> files = Files.walk(legacy)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Writes the live entries into a new journal and renames it over the current one.
+     */
+    private void rewrite() throws IOException {
+        Path temporary = folder.resolve(JOURNAL + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, Set<String>> entry : extras.entrySet()) {
+                ByteBuffer record = encode(SET, entry.getKey(), entry.getValue());
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        }
+
+        if (channel != null) channel.close();
+        try {
+            Files.move(temporary, journal, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, journal, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        entries = extras.size();
+    }
+
+    private static ByteBuffer encode(byte type, String id, Set<String> extraLowers) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeUTF(id);
+        if (type == SET) {
+            out.writeShort(extraLowers.size());
+            for (String extra : extraLowers) {
+                out.writeUTF(extra);
+            }
+        }
+
+        byte[] body = bytes.toByteArray();
+        CRC32C checksum = new CRC32C();
+        checksum.update(body);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+        record.putInt(body.length);
+        record.putInt((int) checksum.getValue());
+        record.put(body);
+        return record.flip();
+    }
+}
@@ -0,0 +1,56 @@
+package me.blueslime.meteor.storage.types;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how long borrows wait for a connection of a Hikari pool.
+ * Connection counts are read from the {@link HikariPoolMXBean} of the pool when a snapshot is taken.
+ */
+final class HikariPoolMetrics implements MetricsTrackerFactory, IMetricsTracker {
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquisitions.increment();
+        totalWaitNanos.add(elapsedAcquiredNanos);
+        maxWaitNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        timeouts.increment();
+    }
+
+    PoolStatistics snapshot(HikariDataSource dataSource) {
+        HikariPoolMXBean pool = dataSource != null ? dataSource.getHikariPoolMXBean() : null;
+        if (pool == null) {
+            return new PoolStatistics(0, 0, 0, 0, acquisitions.sum(), timeouts.sum(), totalWaitNanos.sum(), maxWaitNanos.get());
+        }
+        return new PoolStatistics(
+                pool.getActiveConnections(),
+                pool.getIdleConnections(),
+                pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection(),
+                acquisitions.sum(),
+                timeouts.sum(),
+                totalWaitNanos.sum(),
+                maxWaitNanos.get()
+        );
+    }
+}
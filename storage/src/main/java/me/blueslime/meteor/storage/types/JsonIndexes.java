@@ -0,0 +1,84 @@
+package me.blueslime.meteor.storage.types;
+
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import me.blueslime.meteor.storage.mapper.StorageProperty;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Indexes of the {@link me.blueslime.meteor.storage.interfaces.StorageIndexed} properties of classes stored
+ * as JSON documents by {@link SQLDatabase}.
+ * <p>
+ * Every indexed property gets a generated column extracting its value from {@code json_data},
+ * named {@code idx_<key>}, with a regular index on it. Nested objects, collections and maps are not indexed.
+ */
+final class JsonIndexes {
+
+    private static final String ID = "_id";
+
+    final List<TypedTable.Column> columns;
+    final Map<String, TypedTable.Column> queryColumns;
+
+    private final SqlDialect dialect;
+    private final Map<String, String> expressions;
+
+    private JsonIndexes(SqlDialect dialect, List<TypedTable.Column> columns, Map<String, String> expressions) {
+        this.dialect = dialect;
+        this.columns = columns;
+        this.expressions = expressions;
+
+        Map<String, TypedTable.Column> queryable = new HashMap<>();
+        queryable.put(ID, new TypedTable.Column(dialect, ID, TypedTable.Kind.SHORT_STRING, false));
+        for (TypedTable.Column column : columns) {
+            queryable.put(column.key, column);
+        }
+        this.queryColumns = Map.copyOf(queryable);
+    }
+
+    static JsonIndexes of(ObjectMapper mapper, Class<?> clazz, SqlDialect dialect) {
+        List<TypedTable.Column> columns = new ArrayList<>();
+        Map<String, String> expressions = new HashMap<>();
+        String document = dialect.quote("json_data");
+        for (StorageProperty property : mapper.describe(clazz)) {
+            if (!property.indexed() || ID.equals(property.key())) continue;
+
+            TypedTable.Kind kind = switch (TypedTable.Kind.of(property.type())) {
+                case STRING, SHORT_STRING -> TypedTable.Kind.SHORT_STRING;
+                case INT, LONG -> TypedTable.Kind.LONG;
+                case DOUBLE, FLOAT, DECIMAL -> TypedTable.Kind.DECIMAL;
+                case BOOLEAN -> TypedTable.Kind.BOOLEAN;
+                case JSON -> null;
+            };
+            if (kind == null) continue;
+
+            TypedTable.Column column = new TypedTable.Column(dialect, property.key(), "idx_" + property.key(), kind, true);
+            columns.add(column);
+            expressions.put(column.name, dialect.jsonValue(document, property.key(), kind));
+        }
+        return new JsonIndexes(dialect, List.copyOf(columns), Map.copyOf(expressions));
+    }
+
+    boolean isEmpty() {
+        return columns.isEmpty();
+    }
+
+    /**
+     * Adds the generated columns missing in the table and their indexes.
+     */
+    void migrate(Connection connection, String table) throws SQLException {
+        if (columns.isEmpty()) return;
+
+        Set<String> existing = TypedTable.columnNames(connection, dialect.unquote(table));
+        try (Statement stmt = connection.createStatement()) {
+            for (TypedTable.Column column : columns) {
+                if (existing.contains(column.name.toLowerCase(Locale.ROOT))) continue;
+                stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column.quoted + " " +
+                             dialect.generatedColumn(dialect.columnType(column.kind), expressions.get(column.name)));
+            }
+        }
+        TypedTable.createIndexes(connection, dialect, table, columns);
+    }
+}
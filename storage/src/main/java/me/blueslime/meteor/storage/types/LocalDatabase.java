@@ -1,17 +1,37 @@
 package me.blueslime.meteor.storage.types;
 
 import org.jetbrains.annotations.NotNull;
+import org.sqlite.SQLiteConfig;
 
 import java.io.File;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 
+/**
+ * SQLite database stored in a single local file.
+ * <p>
+ * The database runs in WAL mode: every write goes through one writer thread that commits the writes queued
+ * while the previous transaction was running as a single transaction, so a burst of saves costs one fsync,
+ * and reads are served by a small pool of read-only connections that never wait for the writer.
+ */
 @SuppressWarnings("unused")
 public class LocalDatabase extends SQLDatabase {
 
+    private static final int MAX_WRITE_BATCH = 256;
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+    private static final long READ_TIMEOUT_SECONDS = 30;
+
     private final String name;
     private final File folder;
+    private final int readers;
 
+    private final BlockingQueue<WriteTask<?>> writes = new LinkedBlockingQueue<>();
+    private BlockingQueue<Connection> readConnections = null;
     private Connection connection = null;
+    private Thread writer = null;
+    private volatile boolean running = false;
 
     /**
      * Creates a new SQL Database.
@@ -19,13 +39,26 @@ public class LocalDatabase extends SQLDatabase {
      * @param databaseName The name of the MySQL database.
      */
     public LocalDatabase(@NotNull String databaseName, @NotNull File folder) {
+        this(databaseName, folder, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a new SQL Database.
+     *
+     * @param databaseName The name of the SQLite database file.
+     * @param readers      Amount of read-only connections serving reads.
+     */
+    public LocalDatabase(@NotNull String databaseName, @NotNull File folder, int readers) {
         super("localhost", databaseName, "root", "", 3306);
         this.name = databaseName + (databaseName.endsWith(".db") ? "" : ".db");
         this.folder = folder;
+        this.readers = Math.max(1, readers);
     }
 
     @Override
-    public void connect() {
+    public synchronized void connect() {
+        if (running) return;
+
         File databaseFile = new File(folder, name);
         if (!databaseFile.exists()) {
             try {
@@ -39,17 +72,62 @@ public class LocalDatabase extends SQLDatabase {
             }
         }
 
+        String url = "jdbc:sqlite:" + databaseFile;
         try {
             Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile);
+
+            SQLiteConfig writeConfig = new SQLiteConfig();
+            writeConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            writeConfig.setSynchronous(SQLiteConfig.SynchronousMode.FULL);
+            writeConfig.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+            connection = DriverManager.getConnection(url, writeConfig.toProperties());
+            connection.setAutoCommit(false);
+
+            // Readers are opened once the database is in WAL mode, which is kept in the file
+            SQLiteConfig readConfig = new SQLiteConfig();
+            readConfig.setReadOnly(true);
+            readConfig.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+            readConnections = new ArrayBlockingQueue<>(readers);
+            for (int i = 0; i < readers; i++) {
+                readConnections.add(DriverManager.getConnection(url, readConfig.toProperties()));
+            }
         } catch (Exception e) {
+            close();
             throw new RuntimeException("Failed to connect to SQLite database: " + e);
         }
+
+        running = true;
+        writer = new Thread(this::runWriter, "meteor-sqlite-writer-" + name);
+        writer.setDaemon(true);
+        writer.start();
+
+        migrateTypedTables();
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+
+        SQLException failure = new SQLException("SQLite database is closed");
+        for (WriteTask<?> task; (task = writes.poll()) != null; ) {
+            task.result.completeExceptionally(failure);
+        }
+
         try {
+            if (readConnections != null) {
+                for (Connection reader; (reader = readConnections.poll()) != null; ) {
+                    reader.close();
+                }
+            }
             if (connection != null && !connection.isClosed()) {
                 connection.close();
             }
@@ -61,7 +139,7 @@ public class LocalDatabase extends SQLDatabase {
     @Override
     protected void ensureConnected() {
         try {
-            if (connection == null || connection.isClosed()) {
+            if (connection == null || connection.isClosed() || !running) {
                 connect();
             }
         } catch (SQLException e) {
@@ -69,8 +147,141 @@ public class LocalDatabase extends SQLDatabase {
         }
     }
 
+    @Override
+    protected SqlDialect dialect() {
+        return SqlDialect.SQLITE;
+    }
+
+    /**
+     * Queues the work for the writer thread and waits until the transaction containing it is committed.
+     * Work queued from the writer thread itself runs directly.
+     */
+    @Override
+    protected <R> R withWriteConnection(ConnectionWork<R> work) throws SQLException {
+        if (Thread.currentThread() == writer) {
+            return work.execute(connection);
+        }
+        if (!running) {
+            throw new SQLException("SQLite database is closed");
+        }
+
+        WriteTask<R> task = new WriteTask<>(work, new CompletableFuture<>());
+        writes.add(task);
+        if (!running && writes.remove(task)) {
+            throw new SQLException("SQLite database is closed");
+        }
+        try {
+            return task.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sql) throw sql;
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    private void runWriter() {
+        List<WriteTask<?>> batch = new ArrayList<>();
+        while (running || !writes.isEmpty()) {
+            try {
+                WriteTask<?> first = running ? writes.take() : writes.poll();
+                if (first == null) break;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // Closing, the writes already queued are still committed
+                continue;
+            }
+            writes.drainTo(batch, MAX_WRITE_BATCH - 1);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Runs every queued write in one transaction, a failing write is rolled back to its savepoint
+     * without discarding the others. Results are only published once the transaction is committed.
+     */
+    private void commit(List<WriteTask<?>> batch) {
+        Object[] results = new Object[batch.size()];
+        Throwable[] failures = new Throwable[batch.size()];
+
+        for (int i = 0; i < batch.size(); i++) {
+            Savepoint savepoint = null;
+            try {
+                savepoint = connection.setSavepoint();
+                results[i] = batch.get(i).work.execute(connection);
+                connection.releaseSavepoint(savepoint);
+            } catch (Throwable e) {
+                failures[i] = e;
+                if (savepoint != null) {
+                    try {
+                        connection.rollback(savepoint);
+                    } catch (SQLException ignored) {
+                        // The statement already aborted the transaction
+                    }
+                }
+            }
+        }
+
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            logError("Failed to commit " + batch.size() + " writes to the SQLite database", e);
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+            for (WriteTask<?> task : batch) {
+                task.result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results[i], failures[i]);
+        }
+    }
+
+    /**
+     * Borrows one of the read-only connections, it must be returned with {@link #releaseConnection(Connection)}.
+     * Writes are only performed through {@link #withWriteConnection(ConnectionWork)}.
+     */
     @Override
     public Connection getConnection() throws SQLException {
-        return connection;
+        if (readConnections == null) {
+            throw new SQLException("SQLite database is not connected");
+        }
+        try {
+            Connection reader = readConnections.poll(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (reader == null) {
+                throw new SQLException("Timed out waiting for a SQLite read connection");
+            }
+            return reader;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a SQLite read connection", e);
+        }
+    }
+
+    /**
+     * Returns a read-only connection to the pool, connections are only closed by {@link #close()}.
+     */
+    @Override
+    protected void releaseConnection(Connection connection) throws SQLException {
+        if (connection == this.connection) return;
+        if (!running || connection.isClosed() || !readConnections.offer(connection)) {
+            connection.close();
+        }
+    }
+
+    private record WriteTask<R>(ConnectionWork<R> work, CompletableFuture<R> result) {
+
+        @SuppressWarnings("unchecked")
+        void complete(Object value, Throwable failure) {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete((R) value);
+            }
+        }
     }
 }
@@ -9,6 +9,7 @@ import java.sql.*;
 @SuppressWarnings("unused")
 public class MariaDatabase extends SQLDatabase {
 
+    private final HikariPoolMetrics metrics = new HikariPoolMetrics();
     private HikariDataSource dataSource = null;
 
     /**
@@ -27,12 +28,22 @@ public class MariaDatabase extends SQLDatabase {
     @Override
     public void connect() {
         dataSource = new HikariDataSource();
-        dataSource.setDataSourceClassName("com.mysql.jdbc.jdbc2.optional.MysqlDataSource");
+        dataSource.setMetricsTrackerFactory(metrics);
+        dataSource.setDataSourceClassName("com.mysql.cj.jdbc.MysqlDataSource");
         dataSource.addDataSourceProperty("serverName", host);
         dataSource.addDataSourceProperty("port", port);
         dataSource.addDataSourceProperty("databaseName", databaseName);
         dataSource.addDataSourceProperty("user", user);
         dataSource.addDataSourceProperty("password", password);
+        dataSource.addDataSourceProperty("useCursorFetch", true);
+        dataSource.addDataSourceProperty("rewriteBatchedStatements", true);
+        dataSource.addDataSourceProperty("cachePrepStmts", true);
+        dataSource.addDataSourceProperty("prepStmtCacheSize", 250);
+        dataSource.addDataSourceProperty("prepStmtCacheSqlLimit", 2048);
+        // Idle connections are checked by the pool instead of on every operation
+        dataSource.setKeepaliveTime(300000);
+
+        migrateTypedTables();
     }
 
     @Override
@@ -42,17 +53,21 @@ public class MariaDatabase extends SQLDatabase {
         }
     }
 
+    /**
+     * Only checks that the pool is running, connections are validated by the pool when they are borrowed.
+     */
     @Override
     protected void ensureConnected() {
-        try {
-            if (dataSource == null || dataSource.getConnection() == null || dataSource.getConnection().isClosed() || !dataSource.getConnection().isValid(2)) {
-                throw new IllegalStateException("MariaDB connection is not valid; call connect() first.");
-            }
-        } catch (SQLException e) {
-            throw new IllegalStateException("Error checking DB connection", e);
+        if (dataSource == null || dataSource.isClosed()) {
+            throw new IllegalStateException("MariaDB connection pool is not running; call connect() first.");
         }
     }
 
+    @Override
+    public PoolStatistics getPoolStatistics() {
+        return metrics.snapshot(dataSource);
+    }
+
     @Override
     public Connection getConnection() throws SQLException {
         return dataSource.getConnection();
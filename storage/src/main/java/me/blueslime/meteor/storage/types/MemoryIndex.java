@@ -0,0 +1,156 @@
+package me.blueslime.meteor.storage.types;
+
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import org.bson.Document;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * In-memory secondary index of the {@link me.blueslime.meteor.storage.interfaces.StorageIndexed}
+ * properties of one class, used by backends without native indexes.
+ * <p>
+ * Every indexed property keeps its values sorted with {@link StorageQuery#compare(Object, Object)},
+ * so equality and range conditions are resolved without reading the stored objects. Null values are not indexed.
+ * While the index is being built from the stored objects, writes registered through {@link #put(String, Document)}
+ * and {@link #remove(String)} win over the values read by the build.
+ */
+final class MemoryIndex {
+
+    private final Map<String, NavigableMap<Object, Set<String>>> values = new HashMap<>();
+    private final Map<String, Map<String, Object>> byIdentifier = new HashMap<>();
+    private final Set<String> written = new HashSet<>();
+    private final CountDownLatch built = new CountDownLatch(1);
+    private boolean building = true;
+
+    MemoryIndex(Collection<String> keys) {
+        for (String key : keys) {
+            values.put(key, new TreeMap<>(StorageQuery::compare));
+        }
+    }
+
+    Set<String> keys() {
+        return values.keySet();
+    }
+
+    synchronized void put(String identifier, Document document) {
+        if (building) written.add(identifier);
+        index(identifier, document);
+    }
+
+    synchronized void remove(String identifier) {
+        if (building) written.add(identifier);
+        unindex(identifier);
+    }
+
+    /**
+     * Adds an object read while building, ignored when it was written since the build started.
+     */
+    synchronized void load(String identifier, Document document) {
+        if (!written.contains(identifier)) index(identifier, document);
+    }
+
+    synchronized void finishBuilding() {
+        building = false;
+        written.clear();
+        built.countDown();
+    }
+
+    /**
+     * Blocks until the thread building the index finishes.
+     */
+    void awaitBuilt() {
+        try {
+            built.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Identifiers matching every condition on an indexed property, in no particular order.
+     *
+     * @return matching identifiers, or null when no condition is on an indexed property
+     */
+    synchronized Set<String> find(List<StorageQuery.Condition> conditions) {
+        Set<String> result = null;
+        for (StorageQuery.Condition condition : conditions) {
+            NavigableMap<Object, Set<String>> index = values.get(condition.key());
+            if (index == null || condition.value() == null) continue;
+
+            Set<String> matching = new HashSet<>();
+            for (Set<String> ids : select(index, condition).values()) {
+                matching.addAll(ids);
+            }
+            if (result == null) {
+                result = matching;
+            } else {
+                result.retainAll(matching);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Identifiers matching the conditions on one indexed property, sorted by its value.
+     */
+    synchronized List<String> findOrdered(String key, List<StorageQuery.Condition> conditions, boolean ascending) {
+        NavigableMap<Object, Set<String>> index = values.get(key);
+        if (index == null) return List.of();
+
+        NavigableMap<Object, Set<String>> range = index;
+        try {
+            for (StorageQuery.Condition condition : conditions) {
+                range = select(range, condition);
+            }
+        } catch (IllegalArgumentException disjoint) {
+            // The bounds of two conditions do not overlap
+            return List.of();
+        }
+        if (!ascending) range = range.descendingMap();
+
+        List<String> ids = new ArrayList<>();
+        for (Set<String> bucket : range.values()) {
+            ids.addAll(bucket);
+        }
+        return ids;
+    }
+
+    private static NavigableMap<Object, Set<String>> select(NavigableMap<Object, Set<String>> index, StorageQuery.Condition condition) {
+        Object value = condition.value();
+        return switch (condition.operator()) {
+            case EQUALS -> index.subMap(value, true, value, true);
+            case GREATER_THAN -> index.tailMap(value, false);
+            case GREATER_OR_EQUALS -> index.tailMap(value, true);
+            case LESS_THAN -> index.headMap(value, false);
+            case LESS_OR_EQUALS -> index.headMap(value, true);
+        };
+    }
+
+    private void index(String identifier, Document document) {
+        unindex(identifier);
+
+        Map<String, Object> indexed = new HashMap<>();
+        for (Map.Entry<String, NavigableMap<Object, Set<String>>> entry : values.entrySet()) {
+            Object value = document.get(entry.getKey());
+            if (value == null) continue;
+
+            entry.getValue().computeIfAbsent(value, k -> new HashSet<>()).add(identifier);
+            indexed.put(entry.getKey(), value);
+        }
+        if (!indexed.isEmpty()) byIdentifier.put(identifier, indexed);
+    }
+
+    private void unindex(String identifier) {
+        Map<String, Object> previous = byIdentifier.remove(identifier);
+        if (previous == null) return;
+
+        previous.forEach((key, value) -> {
+            NavigableMap<Object, Set<String>> index = values.get(key);
+            Set<String> ids = index.get(value);
+            if (ids == null) return;
+            ids.remove(identifier);
+            if (ids.isEmpty()) index.remove(value);
+        });
+    }
+}
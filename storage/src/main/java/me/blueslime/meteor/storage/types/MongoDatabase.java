@@ -1,33 +1,72 @@
 package me.blueslime.meteor.storage.types;
 
 import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
 import me.blueslime.meteor.storage.interfaces.*;
 import me.blueslime.meteor.storage.references.ReferencedObject;
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import me.blueslime.meteor.storage.mapper.StorageProperty;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
 
 @SuppressWarnings("unused")
 public class MongoDatabase extends StorageDatabase {
 
+    private final Set<Class<?>> indexedClasses = ConcurrentHashMap.newKeySet();
+
+    private volatile Boolean transactions = null;
+
     private MongoClient mongoClient;
     private com.mongodb.client.MongoDatabase database;
 
+    private final ExecutorService executor;
     private final String uri;
     private final String databaseName;
 
-    public MongoDatabase(String uri, String databaseName) {
+    /**
+     * @param executor runs the blocking driver calls of the async methods, so they never reach the common pool.
+     *                 Null uses a fixed pool, {@link Executors#newVirtualThreadPerTaskExecutor()} gives every call
+     *                 its own virtual thread and leaves the bound to the driver's connection pool
+     */
+    public MongoDatabase(String uri, String databaseName, ExecutorService executor) {
         this.uri = uri;
         this.databaseName = databaseName;
+        this.executor = executor != null ? executor :
+                Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    public MongoDatabase(String uri, String databaseName) {
+        this(uri, databaseName, null);
     }
 
     @Override
@@ -42,6 +81,16 @@ public class MongoDatabase extends StorageDatabase {
     @Override
     public void closeConnection() {
         if (mongoClient != null) mongoClient.close();
+        indexedClasses.clear();
+        transactions = null;
+        try {
+            executor.shutdown();
+        } catch (Exception ignored) {}
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return queuedTasks(executor);
     }
 
     private void ensureConnected() {
@@ -52,51 +101,217 @@ public class MongoDatabase extends StorageDatabase {
 
     @Override
     public CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj) {
-        return CompletableFuture.runAsync(() -> saveOrUpdateSync(obj));
+        return CompletableFuture.runAsync(() -> saveOrUpdateSync(obj), executor);
     }
 
     @Override
     public void saveOrUpdateSync(StorageObject obj) {
         ensureConnected();
 
-        Document doc = mapper().toDocument(obj);
+        ChangeTracker.Changes changes = changes(obj);
+        if (changes != null && changes.isUnchanged()) return;
+
+        Document doc = changes != null ? changes.document() : mapper().toDocument(obj);
 
         String collectionName = obj.getClass().getSimpleName();
-        String id = extractIdentifier(obj);
+        String id = mapper().extractIdentifier(obj);
 
         MongoCollection<Document> coll = database.getCollection(collectionName);
+        ensureIndexes(obj.getClass(), coll);
         ReplaceOptions opts = new ReplaceOptions().upsert(true);
 
-        if (id != null) {
-            coll.replaceOne(eq("_id", id), doc, opts);
-        } else {
+        if (id == null) {
             coll.insertOne(doc);
+        } else if (changes == null || !changes.isPartial() || coll.updateOne(eq("_id", id), update(changes)).getMatchedCount() == 0) {
+            coll.replaceOne(eq("_id", id), doc, opts);
         }
 
-        Set<String> extraId = extractExtraIdentifier(obj);
+        Set<String> extraId = mapper().extractExtraIdentifiers(obj);
         if (id != null && !extraId.isEmpty()) {
-            MongoCollection<Document> collectionNaming = database.getCollection(collectionName + "-StringNaming");
+            database.getCollection(collectionName + "-StringNaming")
+                    .bulkWrite(namingWrites(id, extraId), new BulkWriteOptions().ordered(false));
+        }
+        saved(obj, changes);
+    }
+
+    /**
+     * {@code $set} of the changed properties of an object and {@code $unset} of the removed ones.
+     */
+    private static Document update(ChangeTracker.Changes changes) {
+        Document set = new Document();
+        Document unset = new Document();
+        for (String key : changes.changed()) {
+            if (changes.document().containsKey(key)) {
+                set.put(key, changes.document().get(key));
+            } else {
+                unset.put(key, "");
+            }
+        }
+
+        Document update = new Document();
+        if (!set.isEmpty()) update.put("$set", set);
+        if (!unset.isEmpty()) update.put("$unset", unset);
+        return update;
+    }
 
-            Document idFetch = new Document("referenced", id);
+    /**
+     * Upserts pointing every extra identifier of an object to its identifier, in the {@code -StringNaming} collection.
+     */
+    private List<WriteModel<Document>> namingWrites(String id, Set<String> extraIds) {
+        ReplaceOptions opts = new ReplaceOptions().upsert(true);
+        Document idFetch = new Document("referenced", id);
+
+        List<WriteModel<Document>> models = new ArrayList<>(extraIds.size());
+        for (String extra : extraIds) {
+            Document completed = new Document();
+            completed.append("extra", extra);
+            completed.append("data", idFetch);
 
-            for (String extra : extraId) {
-                Document completed = new Document();
-                completed.append("extra", extra);
-                completed.append("data", idFetch);
+            models.add(new ReplaceOneModel<>(eq("_id", extra.toLowerCase(Locale.ENGLISH)), completed, opts));
+        }
+        return models;
+    }
 
-                collectionNaming.replaceOne(
-                        eq("_id", extra.toLowerCase(Locale.ENGLISH)),
-                        completed,
-                        opts
-                );
+    @Override
+    public CompletableFuture<Void> saveAllAsync(Collection<? extends StorageObject> objects) {
+        return CompletableFuture.runAsync(() -> saveAllSync(objects), executor);
+    }
+
+    @Override
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        if (objects.isEmpty()) return;
+        ensureConnected();
+
+        Map<String, List<WriteModel<Document>>> writes = new LinkedHashMap<>();
+        Map<String, List<WriteModel<Document>>> namingWrites = new LinkedHashMap<>();
+        ReplaceOptions opts = new ReplaceOptions().upsert(true);
+
+        List<StorageObject> written = new ArrayList<>(objects.size());
+        for (StorageObject obj : objects) {
+            if (obj == null) continue;
+
+            ChangeTracker.Changes changes = changes(obj);
+            if (changes != null && changes.isUnchanged()) continue;
+            written.add(obj);
+
+            String collectionName = obj.getClass().getSimpleName();
+            String id = mapper().extractIdentifier(obj);
+            Document doc = changes != null ? changes.document() : mapper().toDocument(obj);
+
+            List<WriteModel<Document>> models = writes.computeIfAbsent(collectionName, k -> {
+                ensureIndexes(obj.getClass(), database.getCollection(k));
+                return new ArrayList<>();
+            });
+            if (id == null) {
+                models.add(new InsertOneModel<>(doc));
+                continue;
+            }
+            if (changes != null && changes.isPartial()) {
+                models.add(new UpdateOneModel<>(eq("_id", id), update(changes)));
+            } else {
+                models.add(new ReplaceOneModel<>(eq("_id", id), doc, opts));
+            }
+
+            Set<String> extraIds = mapper().extractExtraIdentifiers(obj);
+            if (!extraIds.isEmpty()) {
+                namingWrites.computeIfAbsent(collectionName + "-StringNaming", k -> new ArrayList<>())
+                        .addAll(namingWrites(id, extraIds));
             }
         }
+
+        BulkWriteOptions bulkOptions = new BulkWriteOptions().ordered(false);
+        try {
+            writes.forEach((name, models) -> database.getCollection(name).bulkWrite(models, bulkOptions));
+            namingWrites.forEach((name, models) -> database.getCollection(name).bulkWrite(models, bulkOptions));
+        } catch (RuntimeException e) {
+            throw writeFailure("Failed to save batch of " + written.size() + " objects to MongoDB", e);
+        }
+        tracked(written);
+    }
+
+    /**
+     * Groups the unit into one ordered bulk write per collection. On replica sets and sharded clusters
+     * the bulk writes run inside a session transaction, standalone servers apply them without atomicity.
+     * Indexes are created before the transaction starts.
+     */
+    @Override
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        return CompletableFuture.supplyAsync(() -> commitSync(unit), executor);
+    }
+
+    @Override
+    public boolean commitSync(UnitOfWork unit) {
+        if (unit.isEmpty()) return true;
+        ensureConnected();
+
+        Map<String, List<WriteModel<Document>>> writes = new LinkedHashMap<>();
+        ReplaceOptions opts = new ReplaceOptions().upsert(true);
+
+        for (UnitOfWork.Operation operation : unit.getOperations()) {
+            if (operation instanceof UnitOfWork.Delete delete) {
+                writes.computeIfAbsent(delete.type().getSimpleName(), k -> new ArrayList<>())
+                        .add(new DeleteOneModel<>(eq("_id", delete.identifier())));
+                continue;
+            }
+
+            StorageObject obj = ((UnitOfWork.Save) operation).object();
+            String collectionName = obj.getClass().getSimpleName();
+            String id = mapper().extractIdentifier(obj);
+            Document doc = mapper().toDocument(obj);
+
+            List<WriteModel<Document>> models = writes.computeIfAbsent(collectionName, k -> {
+                ensureIndexes(obj.getClass(), database.getCollection(k));
+                return new ArrayList<>();
+            });
+            if (id == null) {
+                models.add(new InsertOneModel<>(doc));
+                continue;
+            }
+            models.add(new ReplaceOneModel<>(eq("_id", id), doc, opts));
+
+            Set<String> extraIds = mapper().extractExtraIdentifiers(obj);
+            if (!extraIds.isEmpty()) {
+                writes.computeIfAbsent(collectionName + "-StringNaming", k -> new ArrayList<>())
+                        .addAll(namingWrites(id, extraIds));
+            }
+        }
+
+        try {
+            if (supportsTransactions()) {
+                try (ClientSession session = mongoClient.startSession()) {
+                    session.withTransaction(() -> {
+                        writes.forEach((name, models) -> database.getCollection(name).bulkWrite(session, models));
+                        return null;
+                    });
+                }
+            } else {
+                writes.forEach((name, models) -> database.getCollection(name).bulkWrite(models));
+            }
+            committed(unit);
+            return true;
+        } catch (Exception e) {
+            logError("Failed to commit unit of " + unit.size() + " operations", e);
+            return false;
+        }
+    }
+
+    /**
+     * Transactions need a replica set or a sharded cluster, asked once to the server.
+     */
+    private boolean supportsTransactions() {
+        Boolean supported = transactions;
+        if (supported == null) {
+            Document hello = database.runCommand(new Document("isMaster", 1));
+            supported = hello.containsKey("setName") || "isdbgrid".equals(hello.getString("msg"));
+            transactions = supported;
+        }
+        return supported;
     }
 
     @Override
     public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String extraIdentifier) {
         ensureConnected();
-        return CompletableFuture.supplyAsync(() -> loadByExtraIdentifierSync(clazz, extraIdentifier));
+        return CompletableFuture.supplyAsync(() -> loadByExtraIdentifierSync(clazz, extraIdentifier), executor);
     }
 
     @Override
@@ -120,10 +335,37 @@ public class MongoDatabase extends StorageDatabase {
         return Optional.empty();
     }
 
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByExtraIdentifierObjectAsync(Class<T> clazz, String extraIdentifier) {
+        ensureConnected();
+        return CompletableFuture.supplyAsync(() -> loadByExtraIdentifierObjectSync(clazz, extraIdentifier), executor);
+    }
+
+    /**
+     * Joins the naming document with its object through a {@code $lookup} aggregation, in one round trip.
+     */
+    @Override
+    public <T extends StorageObject> Optional<T> loadByExtraIdentifierObjectSync(Class<T> clazz, String extraIdentifier) {
+        ensureConnected();
+
+        String extra = extraIdentifier.toLowerCase(Locale.ENGLISH);
+
+        MongoCollection<Document> collection = database.getCollection(clazz.getSimpleName() + "-StringNaming");
+        Document doc = collection.aggregate(List.of(
+                Aggregates.match(eq("_id", extra)),
+                Aggregates.lookup(clazz.getSimpleName(), "data.referenced", "_id", "object"),
+                Aggregates.unwind("$object"),
+                Aggregates.replaceRoot("$object")
+        )).first();
+        if (doc == null) return Optional.empty();
+
+        return Optional.ofNullable(tracked(mapper().fromDocument(clazz, doc)));
+    }
+
     @Override
     public <T extends StorageObject> CompletableFuture<Optional<T>> loadByIdAsync(Class<T> clazz, String identifier) {
         ensureConnected();
-        return CompletableFuture.supplyAsync(() -> loadByIdSync(clazz, identifier));
+        return CompletableFuture.supplyAsync(() -> loadByIdSync(clazz, identifier), executor);
     }
 
     @Override
@@ -136,75 +378,141 @@ public class MongoDatabase extends StorageDatabase {
 
         T obj = mapper().fromDocument(clazz, doc);
 
-        return Optional.ofNullable(obj);
+        return Optional.ofNullable(tracked(obj));
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Map<String, T>> loadByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        ensureConnected();
+        return CompletableFuture.supplyAsync(() -> loadByIdsSync(clazz, identifiers), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        ensureConnected();
+        Map<String, T> results = new HashMap<>();
+        if (identifiers.isEmpty()) return results;
+
+        MongoCollection<Document> coll = database.getCollection(clazz.getSimpleName());
+        for (Document doc : coll.find(in("_id", new HashSet<>(identifiers)))) {
+            T obj = tracked(mapper().fromDocument(clazz, doc));
+            if (obj != null) results.put(String.valueOf(doc.get("_id")), obj);
+        }
+        return results;
     }
 
     @Override
     public <T extends StorageObject> CompletableFuture<Void> deleteByIdAsync(Class<T> clazz, String identifier) {
-        return CompletableFuture.runAsync(() -> deleteByIdSync(clazz, identifier));
+        return CompletableFuture.runAsync(() -> deleteByIdSync(clazz, identifier), executor);
     }
 
     @Override
     public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String identifier) {
         ensureConnected();
+        deleted(clazz);
         MongoCollection<Document> coll = database.getCollection(clazz.getSimpleName());
         coll.deleteOne(eq("_id", identifier));
     }
 
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return CompletableFuture.runAsync(() -> deleteByIdsSync(clazz, identifiers), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        ensureConnected();
+        if (identifiers.isEmpty()) return;
+        deleted(clazz);
+        MongoCollection<Document> coll = database.getCollection(clazz.getSimpleName());
+        coll.deleteMany(in("_id", new HashSet<>(identifiers)));
+    }
+
     @Override
     public <T extends StorageObject> CompletableFuture<Set<T>> loadAllAsync(Class<T> clazz) {
         ensureConnected();
-        return CompletableFuture.supplyAsync(() -> loadAllSync(clazz));
+        return CompletableFuture.supplyAsync(() -> loadAllSync(clazz), executor);
     }
 
     @Override
     public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
+        try (Stream<T> stream = streamAll(clazz)) {
+            return stream.collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
         ensureConnected();
-        Set<T> results = new HashSet<>();
         MongoCollection<Document> coll = database.getCollection(clazz.getSimpleName());
+        MongoCursor<Document> cursor = coll.find().batchSize(fetchSize).iterator();
+
+        LazyIterator<T> iterator = new LazyIterator<>() {
+            @Override
+            protected T fetchNext() {
+                while (cursor.hasNext()) {
+                    T obj = tracked(mapper().fromDocument(clazz, cursor.next()));
+                    if (obj != null) return obj;
+                }
+                return null;
+            }
+        };
+        return lazyStream(iterator, cursor::close);
+    }
 
-        for (Document doc : coll.find()) {
-            T obj = mapper().fromDocument(clazz, doc);
+    @Override
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        ensureConnected();
+        return CompletableFuture.supplyAsync(() -> querySync(clazz, query), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> List<T> querySync(Class<T> clazz, StorageQuery query) {
+        ensureConnected();
+        MongoCollection<Document> coll = database.getCollection(clazz.getSimpleName());
+        ensureIndexes(clazz, coll);
+
+        List<Bson> filters = new ArrayList<>();
+        for (StorageQuery.Condition condition : query.getConditions()) {
+            filters.add(switch (condition.operator()) {
+                case EQUALS -> Filters.eq(condition.key(), condition.value());
+                case GREATER_THAN -> Filters.gt(condition.key(), condition.value());
+                case GREATER_OR_EQUALS -> Filters.gte(condition.key(), condition.value());
+                case LESS_THAN -> Filters.lt(condition.key(), condition.value());
+                case LESS_OR_EQUALS -> Filters.lte(condition.key(), condition.value());
+            });
+        }
+
+        FindIterable<Document> find = filters.isEmpty() ? coll.find() : coll.find(Filters.and(filters));
+        if (query.getOrderBy() != null) {
+            find = find.sort(query.isAscending() ? Indexes.ascending(query.getOrderBy()) : Indexes.descending(query.getOrderBy()));
+        }
+        if (query.hasLimit()) {
+            find = find.limit(query.getLimit());
+        }
+
+        List<T> results = new ArrayList<>();
+        for (Document doc : find) {
+            T obj = tracked(mapper().fromDocument(clazz, doc));
             if (obj != null) results.add(obj);
         }
         return results;
     }
 
-    private String extractIdentifier(StorageObject obj) {
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (var field : c.getDeclaredFields()) {
-                if (field.isAnnotationPresent(StorageIdentifier.class)) {
-                    field.setAccessible(true);
-                    try {
-                        Object val = field.get(obj);
-                        return val != null ? val.toString() : null;
-                    } catch (Exception e) {
-                        logError("Failed to extract identifier", e);
-                        return null;
-                    }
-                }
-            }
-        }
-        return null;
-    }
-
-    private Set<String> extractExtraIdentifier(StorageObject obj) {
-        Set<String> extraIdentifiers = new HashSet<>();
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (var field : c.getDeclaredFields()) {
-                if (field.isAnnotationPresent(StorageExtraIdentifier.class)) {
-                    field.setAccessible(true);
-                    try {
-                        Object val = field.get(obj);
-                        if (val != null) {
-                            extraIdentifiers.add(val.toString());
-                        }
-                    } catch (Exception e) {
-                        logError("Failed to extract extra identifier", e);
-                    }
+    /**
+     * Creates the indexes of the {@link StorageIndexed} properties of a class the first time its collection is used.
+     */
+    private void ensureIndexes(Class<?> clazz, MongoCollection<Document> coll) {
+        if (!indexedClasses.add(clazz)) return;
+        try {
+            for (StorageProperty property : mapper().describe(clazz)) {
+                if (property.indexed() && !"_id".equals(property.key())) {
+                    coll.createIndex(Indexes.ascending(property.key()));
                 }
             }
+        } catch (Exception e) {
+            indexedClasses.remove(clazz);
+            logError("Can't create indexes of " + clazz.getSimpleName(), e);
         }
-        return extraIdentifiers;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,79 @@
+package me.blueslime.meteor.storage.types;
+
+/**
+ * Snapshot of the connection pool of a {@link SQLDatabase}.
+ * Connection counts are read at the time of the snapshot, acquisitions, timeouts and wait times
+ * are accumulated since the pool was started.
+ */
+public class PoolStatistics {
+
+    public static final PoolStatistics EMPTY = new PoolStatistics(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final int active;
+    private final int idle;
+    private final int total;
+    private final int pending;
+    private final long acquisitions;
+    private final long timeouts;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+
+    public PoolStatistics(int active, int idle, int total, int pending, long acquisitions, long timeouts, long totalWaitNanos, long maxWaitNanos) {
+        this.active = active;
+        this.idle = idle;
+        this.total = total;
+        this.pending = pending;
+        this.acquisitions = acquisitions;
+        this.timeouts = timeouts;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * Connections currently borrowed by an operation.
+     */
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Threads waiting for a connection to be returned to the pool.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    /**
+     * Borrows that gave up after waiting the whole connection timeout.
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public double getAverageWaitMillis() {
+        return acquisitions == 0 ? 0.0 : totalWaitNanos / 1_000_000.0 / acquisitions;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStatistics{active=" + active + ", idle=" + idle + ", total=" + total + ", pending=" + pending +
+               ", acquisitions=" + acquisitions + ", timeouts=" + timeouts +
+               ", averageWaitMillis=" + getAverageWaitMillis() + ", maxWaitMillis=" + getMaxWaitMillis() + "}";
+    }
+}
@@ -9,6 +9,7 @@ import java.sql.SQLException;
 
 public class PostgreDatabase extends SQLDatabase {
 
+    private final HikariPoolMetrics metrics = new HikariPoolMetrics();
     private HikariDataSource dataSource;
 
     /**
@@ -27,6 +28,7 @@ public class PostgreDatabase extends SQLDatabase {
     @Override
     public void connect() {
         dataSource = new HikariDataSource();
+        dataSource.setMetricsTrackerFactory(metrics);
         dataSource.setDriverClassName("org.postgresql.Driver");
 
         String jdbcUrl = String.format("jdbc:postgresql://%s:%d/%s", host, port, databaseName);
@@ -36,10 +38,9 @@ public class PostgreDatabase extends SQLDatabase {
         dataSource.setPassword(password);
 
         
-        dataSource.addDataSourceProperty("cachePrepStmts", "true");
-        dataSource.addDataSourceProperty("prepStmtCacheSize", "250");
-        dataSource.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        dataSource.addDataSourceProperty("useServerPrepStmts", "true");
+        dataSource.addDataSourceProperty("prepareThreshold", "1");
+        dataSource.addDataSourceProperty("preparedStatementCacheQueries", "250");
+        dataSource.addDataSourceProperty("preparedStatementCacheSizeMiB", "8");
         dataSource.addDataSourceProperty("reWriteBatchedInserts", "true");
 
         
@@ -48,6 +49,9 @@ public class PostgreDatabase extends SQLDatabase {
         dataSource.setConnectionTimeout(30000);
         dataSource.setIdleTimeout(600000);
         dataSource.setMaxLifetime(1800000);
+        dataSource.setKeepaliveTime(300000);
+
+        migrateTypedTables();
     }
 
     @Override
@@ -57,17 +61,31 @@ public class PostgreDatabase extends SQLDatabase {
         }
     }
 
+    /**
+     * Only checks that the pool is running, connections are validated by the pool when they are borrowed.
+     */
     @Override
     protected void ensureConnected() {
-        try {
-            if (dataSource == null || dataSource.getConnection() == null || dataSource.getConnection().isClosed() || !dataSource.getConnection().isValid(2)) {
-                throw new IllegalStateException("MariaDB connection is not valid; call connect() first.");
-            }
-        } catch (SQLException e) {
-            throw new IllegalStateException("Error checking DB connection", e);
+        if (dataSource == null || dataSource.isClosed()) {
+            throw new IllegalStateException("PostgreSQL connection pool is not running; call connect() first.");
         }
     }
 
+    @Override
+    public PoolStatistics getPoolStatistics() {
+        return metrics.snapshot(dataSource);
+    }
+
+    @Override
+    protected SqlDialect dialect() {
+        return SqlDialect.POSTGRESQL;
+    }
+
+    @Override
+    protected boolean cursorRequiresTransaction() {
+        return true;
+    }
+
     @Override
     public Connection getConnection() throws SQLException {
         return dataSource.getConnection();
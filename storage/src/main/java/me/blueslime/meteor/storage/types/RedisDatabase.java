@@ -1,14 +1,31 @@
 package me.blueslime.meteor.storage.types;
 
 import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
 import me.blueslime.meteor.storage.interfaces.*;
+import me.blueslime.meteor.storage.mapper.StorageProperty;
 import me.blueslime.meteor.storage.references.ReferencedObject;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.PipeliningBase;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import org.bson.Document;
 
-import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Redis-backed implementation optimized for the new ObjectMapper.
@@ -17,10 +34,83 @@ import java.util.concurrent.*;
 @SuppressWarnings("unused")
 public class RedisDatabase extends StorageDatabase {
 
+    private static final int BULK_CHUNK_SIZE = 500;
+    private static final int COMMIT_ATTEMPTS = 3;
+
+    private static final LuaScript RESOLVE_EXTRA_SCRIPT = LuaScript.of(
+            "local id = redis.call('GET', KEYS[1]) " +
+            "if not id then return false end " +
+            "return redis.call('GET', ARGV[1] .. id)"
+    );
+
+    /**
+     * Replies with the identifier followed by the fields of its hash.
+     */
+    private static final LuaScript RESOLVE_EXTRA_HASH_SCRIPT = LuaScript.of(
+            "local id = redis.call('GET', KEYS[1]) " +
+            "if not id then return false end " +
+            "local fields = redis.call('HGETALL', ARGV[1] .. id) " +
+            "table.insert(fields, 1, id) " +
+            "return fields"
+    );
+
+    /**
+     * KEYS: object, identifiers set, extras of the object.
+     * ARGV: identifier, naming key prefix, amount of extras, layout, time to live in milliseconds (0 keeps the keys),
+     * extras, then the payload or the changed hash fields.
+     */
+    private static final LuaScript SAVE_SCRIPT = LuaScript.of(
+            "local extras = tonumber(ARGV[3]) " +
+            "local ttl = tonumber(ARGV[5]) " +
+            "if ARGV[4] == 'hash' then " +
+            "  redis.call('HSET', KEYS[1], unpack(ARGV, 6 + extras, #ARGV)) " +
+            "else " +
+            "  redis.call('SET', KEYS[1], ARGV[6 + extras]) " +
+            "end " +
+            "redis.call('SADD', KEYS[2], ARGV[1]) " +
+            "local keep = {} " +
+            "for i = 6, 5 + extras do keep[ARGV[i]] = true end " +
+            "for _, extra in ipairs(redis.call('SMEMBERS', KEYS[3])) do " +
+            "  if not keep[extra] then " +
+            "    redis.call('DEL', ARGV[2] .. extra) " +
+            "    redis.call('SREM', KEYS[3], extra) " +
+            "  end " +
+            "end " +
+            "for i = 6, 5 + extras do " +
+            "  redis.call('SET', ARGV[2] .. ARGV[i], ARGV[1]) " +
+            "  redis.call('SADD', KEYS[3], ARGV[i]) " +
+            "  if ttl > 0 then redis.call('PEXPIRE', ARGV[2] .. ARGV[i], ttl) end " +
+            "end " +
+            "if ttl > 0 then " +
+            "  redis.call('PEXPIRE', KEYS[1], ttl) " +
+            "  redis.call('PEXPIRE', KEYS[3], ttl) " +
+            "end " +
+            "return 1"
+    );
+
+    /**
+     * KEYS: object, identifiers set, extras of the object. ARGV: identifier, naming key prefix.
+     */
+    private static final LuaScript DELETE_SCRIPT = LuaScript.of(
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('SREM', KEYS[2], ARGV[1]) " +
+            "for _, extra in ipairs(redis.call('SMEMBERS', KEYS[3])) do " +
+            "  redis.call('DEL', ARGV[2] .. extra) " +
+            "end " +
+            "redis.call('DEL', KEYS[3]) " +
+            "return 1"
+    );
+
+    private final Map<Class<?>, List<IndexedProperty>> indexedProperties = new ConcurrentHashMap<>();
+    private final Set<Class<?>> hashedClasses = ConcurrentHashMap.newKeySet();
+    private final RedisHashLayout hashLayout = new RedisHashLayout(mapper());
+
     private final JedisPool jedisPool;
     private final ExecutorService executor;
     private final String prefix;
 
+    private volatile long expireMillis = 0L;
+
     public RedisDatabase(JedisPool jedisPool, ExecutorService executor, String prefix) {
         this.jedisPool = jedisPool;
         this.executor = executor != null ? executor :
@@ -32,6 +122,82 @@ public class RedisDatabase extends StorageDatabase {
         this(jedisPool, null, "storage");
     }
 
+    /**
+     * Stores the objects of a class as hashes with one field per top-level property instead of one payload string,
+     * so saves send only the properties that changed and {@link #loadFieldsSync(Class, String, Collection)}
+     * reads some of them without decoding the object. Payload codecs do not apply to these classes.
+     * <p>
+     * Register the class before any of its objects is stored, objects already stored as payloads are not converted.
+     * Saves diff against the fields this database last wrote or read, so the class should have no other writer.
+     */
+    public void registerHashLayout(Class<? extends StorageObject> clazz) {
+        hashedClasses.add(clazz);
+    }
+
+    /**
+     * Expires the key of every object, and its extra identifiers, once the object was not saved or loaded by identifier
+     * for the given time. Expired identifiers stay in the identifiers set and indexes of their class, loads skip them.
+     * {@link Duration#ZERO} disables expiry, keys that already have a time to live keep it until they are saved.
+     */
+    @Override
+    public boolean expireAfterAccess(Duration duration) {
+        expireMillis = duration == null ? 0L : Math.max(0L, duration.toMillis());
+        return true;
+    }
+
+    /**
+     * Refreshes the time to live of loaded objects and of their extra identifiers.
+     */
+    private void touch(Jedis j, Class<?> clazz, Collection<String> identifiers) {
+        long ttl = expireMillis;
+        if (ttl <= 0 || identifiers.isEmpty()) return;
+        Pipeline p = j.pipelined();
+        List<Response<Set<String>>> extras = new ArrayList<>(identifiers.size());
+        for (String identifier : identifiers) {
+            p.pexpire(keyFor(clazz, identifier), ttl);
+            p.pexpire(extrasIndexKeyFor(clazz, identifier), ttl);
+            extras.add(p.smembers(extrasIndexKeyFor(clazz, identifier)));
+        }
+        p.sync();
+
+        Pipeline naming = j.pipelined();
+        for (Response<Set<String>> response : extras) {
+            for (String extraLower : response.get()) {
+                naming.pexpire(namingKeyFor(clazz, extraLower), ttl);
+            }
+        }
+        naming.sync();
+    }
+
+    /**
+     * Queues the time to live of a written object, its extras index and its naming keys.
+     */
+    private void expire(PipeliningBase p, Class<?> clazz, String identifier, Set<String> extras) {
+        long ttl = expireMillis;
+        if (ttl <= 0) return;
+        p.pexpire(keyFor(clazz, identifier), ttl);
+        p.pexpire(extrasIndexKeyFor(clazz, identifier), ttl);
+        for (String extraLower : extras) {
+            p.pexpire(namingKeyFor(clazz, extraLower), ttl);
+        }
+    }
+
+    /**
+     * Hash fields to write, every field when keys expire as the remembered hash may be gone.
+     */
+    private Map<byte[], byte[]> hashChanges(String key, Map<String, String> fields) {
+        if (expireMillis > 0) hashLayout.forget(key);
+        return hashLayout.changes(key, fields);
+    }
+
+    private boolean isHashed(Class<?> clazz) {
+        return !hashedClasses.isEmpty() && hashedClasses.contains(clazz);
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
     private String keyFor(Class<?> clazz, String identifier) {
         return prefix + ":" + clazz.getSimpleName() + ":" + identifier;
     }
@@ -45,6 +211,16 @@ public class RedisDatabase extends StorageDatabase {
         return prefix + ":ids:" + clazz.getSimpleName() + ":extras:" + identifier;
     }
 
+    private String indexedValuesKeyFor(Class<?> clazz, String identifier) {
+        return prefix + ":ids:" + clazz.getSimpleName() + ":indexed:" + identifier;
+    }
+    private String sortedIndexKeyFor(Class<?> clazz, String key) {
+        return prefix + ":index:" + clazz.getSimpleName() + ":" + key;
+    }
+    private String valueIndexKeyFor(Class<?> clazz, String key, String value) {
+        return prefix + ":index:" + clazz.getSimpleName() + ":" + key + ":" + value;
+    }
+
     private void ensurePool() {
         if (jedisPool == null) throw new IllegalStateException("JedisPool is null. Call connect() or provide a pool.");
     }
@@ -54,56 +230,429 @@ public class RedisDatabase extends StorageDatabase {
         return runAsync(() -> saveOrUpdateSync(obj));
     }
 
+    /**
+     * Stores the object, its identifier and its extra identifiers with one script call.
+     * Classes with {@link StorageIndexed} properties take the two pipelines of {@link #saveAllSync(Collection)},
+     * as their previous indexed values have to be read first.
+     */
     @Override
     public void saveOrUpdateSync(StorageObject obj) {
         if (obj == null) return;
         ensurePool();
         Class<?> clazz = obj.getClass();
+        if (!indexedProperties(clazz).isEmpty()) {
+            try {
+                saveAll(Collections.singletonList(obj));
+            } catch (Exception e) {
+                logError("Failed saveOrUpdateSync for " + clazz.getSimpleName(), e);
+            }
+            return;
+        }
 
-        String identifier = extractIdentifier(obj);
+        String identifier = mapper().extractIdentifier(obj);
         if (identifier == null || identifier.isEmpty()) {
             identifier = UUID.randomUUID().toString();
-            injectIdentifier(obj, identifier);
+            mapper().injectIdentifier(obj, identifier);
         }
 
-        String json = mapper().toJson(obj);
+        ChangeTracker.Changes tracked = changes(obj);
+        if (tracked != null && tracked.isUnchanged()) return;
 
-        try (Jedis j = jedisPool.getResource()) {
-            String key = keyFor(clazz, identifier);
-            j.set(key, json);
-            j.sadd(idsKeyFor(clazz), identifier);
+        String key = keyFor(clazz, identifier);
+        Map<String, String> fields = null;
+        List<byte[]> values = new ArrayList<>();
+        if (isHashed(clazz)) {
+            fields = hashLayout.fields(obj);
+            Map<byte[], byte[]> changes = hashChanges(key, fields);
+            // Extra identifiers come from the properties, so they did not change either
+            if (changes.isEmpty()) return;
+            changes.forEach((field, value) -> {
+                values.add(field);
+                values.add(value);
+            });
+        } else {
+            values.add(mapper().toPayload(obj));
+        }
+
+        Set<String> extras = new LinkedHashSet<>();
+        for (String ex : mapper().extractExtraIdentifiers(obj)) {
+            if (ex != null) extras.add(ex.toLowerCase(Locale.ENGLISH));
+        }
+
+        List<byte[]> args = new ArrayList<>(5 + extras.size() + values.size());
+        args.add(bytes(identifier));
+        args.add(bytes(namingKeyFor(clazz, "")));
+        args.add(bytes(String.valueOf(extras.size())));
+        args.add(bytes(fields != null ? "hash" : "string"));
+        args.add(bytes(String.valueOf(expireMillis)));
+        for (String extra : extras) {
+            args.add(bytes(extra));
+        }
+        args.addAll(values);
 
-            updateExtraIdentifiers(j, obj, identifier);
+        List<byte[]> keys = List.of(bytes(key), bytes(idsKeyFor(clazz)), bytes(extrasIndexKeyFor(clazz, identifier)));
+        try (Jedis j = jedisPool.getResource()) {
+            eval(j, SAVE_SCRIPT, keys, args);
+            if (fields != null) hashLayout.remember(key, fields);
+            saved(obj, tracked);
         } catch (Exception e) {
+            hashLayout.forget(key);
             logError("Failed saveOrUpdateSync for " + clazz.getSimpleName(), e);
         }
     }
 
-    private void updateExtraIdentifiers(Jedis j, StorageObject obj, String identifier) {
+    /**
+     * Queues the write of an object's value.
+     *
+     * @return hash fields to remember once the write succeeded, null for payload classes
+     */
+    private Map<String, String> writeValue(PipeliningBase p, StorageObject obj, String identifier) {
+        Class<?> clazz = obj.getClass();
+        String key = keyFor(clazz, identifier);
+        if (!isHashed(clazz)) {
+            p.set(bytes(key), mapper().toPayload(obj));
+            return null;
+        }
+
+        Map<String, String> fields = hashLayout.fields(obj);
+        Map<byte[], byte[]> changes = hashChanges(key, fields);
+        if (!changes.isEmpty()) p.hset(bytes(key), changes);
+        return fields;
+    }
+
+    /**
+     * Applies the hash snapshots of a successful write, null fields mark deleted objects.
+     */
+    private void remember(Map<String, Map<String, String>> written) {
+        written.forEach((key, fields) -> {
+            if (fields == null) {
+                hashLayout.forget(key);
+            } else {
+                hashLayout.remember(key, fields);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAllAsync(Collection<? extends StorageObject> objects) {
+        return runAsync(() -> saveAllSync(objects));
+    }
+
+    @Override
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        try {
+            saveAll(objects);
+        } catch (Exception e) {
+            throw writeFailure("Failed saveAllSync for " + objects.size() + " objects", e);
+        }
+    }
+
+    private void saveAll(Collection<? extends StorageObject> objects) throws Exception {
+        if (objects.isEmpty()) return;
+        ensurePool();
+
+        List<StorageObject> batch = new ArrayList<>(objects.size());
+        List<String> identifiers = new ArrayList<>(objects.size());
+        for (StorageObject obj : objects) {
+            if (obj == null) continue;
+            String identifier = mapper().extractIdentifier(obj);
+            if (identifier == null || identifier.isEmpty()) {
+                identifier = UUID.randomUUID().toString();
+                mapper().injectIdentifier(obj, identifier);
+            }
+            if (!isDirty(obj)) continue;
+            batch.add(obj);
+            identifiers.add(identifier);
+        }
+
+        if (batch.isEmpty()) return;
+
+        Map<String, Map<String, String>> written = new LinkedHashMap<>();
+        try (Jedis j = jedisPool.getResource()) {
+            List<Response<Set<String>>> previousExtras = new ArrayList<>(batch.size());
+            List<Response<Map<String, String>>> previousIndexed = new ArrayList<>(batch.size());
+            Pipeline reads = j.pipelined();
+            for (int i = 0; i < batch.size(); i++) {
+                Class<?> clazz = batch.get(i).getClass();
+                previousExtras.add(reads.smembers(extrasIndexKeyFor(clazz, identifiers.get(i))));
+                previousIndexed.add(indexedProperties(clazz).isEmpty() ? null : reads.hgetAll(indexedValuesKeyFor(clazz, identifiers.get(i))));
+            }
+            reads.sync();
+
+            Pipeline writes = j.pipelined();
+            for (int i = 0; i < batch.size(); i++) {
+                StorageObject obj = batch.get(i);
+                Class<?> clazz = obj.getClass();
+                String identifier = identifiers.get(i);
+
+                Map<String, String> fields = writeValue(writes, obj, identifier);
+                if (fields != null) written.put(keyFor(clazz, identifier), fields);
+                writes.sadd(idsKeyFor(clazz), identifier);
+
+                Set<String> prevExtras = previousExtras.get(i).get();
+                Set<String> extras = updateExtraIdentifiers(writes, obj, identifier, prevExtras == null ? Collections.emptySet() : prevExtras);
+                expire(writes, clazz, identifier, extras);
+
+                Response<Map<String, String>> prevIndexed = previousIndexed.get(i);
+                if (prevIndexed != null) {
+                    updateIndexes(writes, obj, identifier, indexedProperties(clazz), prevIndexed.get());
+                }
+            }
+            writes.sync();
+            remember(written);
+            tracked(batch);
+        } catch (Exception e) {
+            written.keySet().forEach(hashLayout::forget);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        return supplyAsync(() -> commitSync(unit));
+    }
+
+    /**
+     * Applies the unit inside one {@code MULTI}/{@code EXEC} block. The extra identifiers and indexed values
+     * it replaces are read first under {@code WATCH}, when another client changes them before the block runs
+     * the unit is read and queued again.
+     */
+    @Override
+    public boolean commitSync(UnitOfWork unit) {
+        if (unit.isEmpty()) return true;
+        ensurePool();
+
+        List<UnitOfWork.Operation> operations = unit.getOperations();
+        List<String> identifiers = new ArrayList<>(operations.size());
+        for (UnitOfWork.Operation operation : operations) {
+            if (operation instanceof UnitOfWork.Save save) {
+                String identifier = mapper().extractIdentifier(save.object());
+                if (identifier == null || identifier.isEmpty()) {
+                    identifier = UUID.randomUUID().toString();
+                    mapper().injectIdentifier(save.object(), identifier);
+                }
+                identifiers.add(identifier);
+            } else {
+                identifiers.add(((UnitOfWork.Delete) operation).identifier());
+            }
+        }
+
+        try (Jedis j = jedisPool.getResource()) {
+            for (int attempt = 0; attempt < COMMIT_ATTEMPTS; attempt++) {
+                if (commit(j, operations, identifiers)) {
+                    committed(unit);
+                    return true;
+                }
+            }
+            logError("Failed to commit unit of " + unit.size() + " operations, its keys kept changing", null);
+        } catch (Exception e) {
+            logError("Failed to commit unit of " + unit.size() + " operations", e);
+        }
+        return false;
+    }
+
+    private boolean commit(Jedis j, List<UnitOfWork.Operation> operations, List<String> identifiers) {
+        List<StoredKey> keys = new ArrayList<>(operations.size());
+        Set<String> watched = new LinkedHashSet<>();
+        for (int i = 0; i < operations.size(); i++) {
+            Class<?> clazz = operations.get(i) instanceof UnitOfWork.Save save
+                    ? save.object().getClass()
+                    : ((UnitOfWork.Delete) operations.get(i)).type();
+            StoredKey key = new StoredKey(clazz, identifiers.get(i));
+            keys.add(key);
+
+            watched.add(extrasIndexKeyFor(clazz, key.identifier()));
+            if (!indexedProperties(clazz).isEmpty()) watched.add(indexedValuesKeyFor(clazz, key.identifier()));
+        }
+        j.watch(watched.toArray(new String[0]));
+
+        Map<StoredKey, Response<Set<String>>> extrasReads = new HashMap<>();
+        Map<StoredKey, Response<Map<String, String>>> indexedReads = new HashMap<>();
+        Pipeline reads = j.pipelined();
+        for (StoredKey key : new LinkedHashSet<>(keys)) {
+            extrasReads.put(key, reads.smembers(extrasIndexKeyFor(key.clazz(), key.identifier())));
+            if (!indexedProperties(key.clazz()).isEmpty()) {
+                indexedReads.put(key, reads.hgetAll(indexedValuesKeyFor(key.clazz(), key.identifier())));
+            }
+        }
+        reads.sync();
+
+        // Extras and indexed values of every object, updated as the unit is queued
+        Map<StoredKey, Set<String>> extras = new HashMap<>();
+        Map<StoredKey, Map<String, String>> indexedValues = new HashMap<>();
+        extrasReads.forEach((key, response) -> extras.put(key, response.get() == null ? Set.of() : response.get()));
+        indexedReads.forEach((key, response) -> indexedValues.put(key, response.get()));
+
+        Map<String, Map<String, String>> written = new LinkedHashMap<>();
+        Transaction t = j.multi();
+        for (int i = 0; i < operations.size(); i++) {
+            StoredKey key = keys.get(i);
+            Class<?> clazz = key.clazz();
+            String identifier = key.identifier();
+            List<IndexedProperty> indexed = indexedProperties(clazz);
+
+            if (operations.get(i) instanceof UnitOfWork.Save save) {
+                StorageObject obj = save.object();
+                String objectKey = keyFor(clazz, identifier);
+                written.remove(objectKey);
+                written.put(objectKey, writeValue(t, obj, identifier));
+                t.sadd(idsKeyFor(clazz), identifier);
+                extras.put(key, updateExtraIdentifiers(t, obj, identifier, extras.get(key)));
+                expire(t, clazz, identifier, extras.get(key));
+                if (!indexed.isEmpty()) {
+                    indexedValues.put(key, updateIndexes(t, obj, identifier, indexed, indexedValues.get(key)));
+                }
+                continue;
+            }
+
+            t.del(keyFor(clazz, identifier));
+            written.remove(keyFor(clazz, identifier));
+            written.put(keyFor(clazz, identifier), null);
+            t.srem(idsKeyFor(clazz), identifier);
+            for (String extraLower : extras.get(key)) {
+                t.del(namingKeyFor(clazz, extraLower));
+            }
+            t.del(extrasIndexKeyFor(clazz, identifier));
+            extras.put(key, Set.of());
+            if (!indexed.isEmpty()) {
+                removeIndexes(t, clazz, identifier, indexed, indexedValues.get(key));
+                indexedValues.put(key, Map.of());
+            }
+        }
+        if (t.exec() == null) return false;
+
+        remember(written);
+        return true;
+    }
+
+    private Set<String> updateExtraIdentifiers(PipeliningBase p, StorageObject obj, String identifier, Set<String> prevExtras) {
         Class<?> clazz = obj.getClass();
         String extrasIndexKey = extrasIndexKeyFor(clazz, identifier);
 
         Set<String> newExtras = new HashSet<>();
-        for (String ex : extractExtraIdentifier(obj)) {
+        for (String ex : mapper().extractExtraIdentifiers(obj)) {
             if (ex != null) newExtras.add(ex.toLowerCase(Locale.ENGLISH));
         }
 
-        Set<String> prevExtras = j.smembers(extrasIndexKey);
-        if (prevExtras == null) prevExtras = Collections.emptySet();
-
         for (String prev : prevExtras) {
             if (!newExtras.contains(prev)) {
-                j.del(namingKeyFor(clazz, prev));
+                p.del(namingKeyFor(clazz, prev));
+                p.srem(extrasIndexKey, prev);
             }
         }
 
-        if (!newExtras.isEmpty()) {
-            for (String exLower : newExtras) {
-                j.set(namingKeyFor(clazz, exLower), identifier);
-                j.sadd(extrasIndexKey, exLower);
+        for (String exLower : newExtras) {
+            p.set(namingKeyFor(clazz, exLower), identifier);
+            p.sadd(extrasIndexKey, exLower);
+        }
+        return newExtras;
+    }
+
+    /**
+     * Numeric {@link StorageIndexed} properties are kept in a sorted set scored by their value,
+     * any other one in a set per value. The indexed values of every object are kept in a hash
+     * so stale entries can be removed when the object changes or is deleted.
+     */
+    private Map<String, String> updateIndexes(PipeliningBase p, StorageObject obj, String identifier, List<IndexedProperty> indexed, Map<String, String> previous) {
+        Class<?> clazz = obj.getClass();
+        Document doc = mapper().toDocument(obj);
+        Map<String, String> current = new HashMap<>();
+
+        for (IndexedProperty property : indexed) {
+            Object value = doc.get(property.key());
+            String old = previous == null ? null : previous.get(property.key());
+
+            if (property.numeric() && !(value instanceof Number)) value = null;
+            String encoded = value == null ? null : String.valueOf(value);
+            if (encoded != null) current.put(property.key(), encoded);
+
+            if (property.numeric()) {
+                if (value != null) {
+                    p.zadd(sortedIndexKeyFor(clazz, property.key()), ((Number) value).doubleValue(), identifier);
+                } else if (old != null) {
+                    p.zrem(sortedIndexKeyFor(clazz, property.key()), identifier);
+                }
+                continue;
+            }
+            if (old != null && !old.equals(encoded)) {
+                p.srem(valueIndexKeyFor(clazz, property.key(), old), identifier);
+            }
+            if (encoded != null) {
+                p.sadd(valueIndexKeyFor(clazz, property.key(), encoded), identifier);
+            }
+        }
+
+        String indexedKey = indexedValuesKeyFor(clazz, identifier);
+        p.del(indexedKey);
+        if (!current.isEmpty()) p.hset(indexedKey, current);
+        return current;
+    }
+
+    private void removeIndexes(PipeliningBase p, Class<?> clazz, String identifier, List<IndexedProperty> indexed, Map<String, String> previous) {
+        for (IndexedProperty property : indexed) {
+            String old = previous == null ? null : previous.get(property.key());
+            if (old == null) continue;
+            if (property.numeric()) {
+                p.zrem(sortedIndexKeyFor(clazz, property.key()), identifier);
+            } else {
+                p.srem(valueIndexKeyFor(clazz, property.key(), old), identifier);
+            }
+        }
+        p.del(indexedValuesKeyFor(clazz, identifier));
+    }
+
+    private List<IndexedProperty> indexedProperties(Class<?> clazz) {
+        return indexedProperties.computeIfAbsent(clazz, k -> {
+            List<IndexedProperty> indexed = new ArrayList<>();
+            for (StorageProperty property : mapper().describe(k)) {
+                if (property.indexed() && !"_id".equals(property.key())) {
+                    indexed.add(new IndexedProperty(property.key(), isNumeric(property.type()), !property.type().isPrimitive()));
+                }
+            }
+            return List.copyOf(indexed);
+        });
+    }
+
+    private static boolean isNumeric(Class<?> type) {
+        return type == int.class || type == long.class || type == double.class || type == float.class
+                || type == short.class || type == byte.class
+                || (Number.class.isAssignableFrom(type) && type.getName().startsWith("java.lang."));
+    }
+
+    /**
+     * Rebuilds the indexes of every stored object of a class,
+     * needed once for objects saved before a property was marked as {@link StorageIndexed}.
+     */
+    public <T extends StorageObject> void reindex(Class<T> clazz) {
+        ensurePool();
+        List<IndexedProperty> indexed = indexedProperties(clazz);
+        if (indexed.isEmpty()) return;
+
+        try (Stream<T> stream = streamAll(clazz); Jedis j = jedisPool.getResource()) {
+            Iterator<T> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                List<T> page = new ArrayList<>(BULK_CHUNK_SIZE);
+                while (iterator.hasNext() && page.size() < BULK_CHUNK_SIZE) page.add(iterator.next());
+
+                List<String> ids = new ArrayList<>(page.size());
+                List<Response<Map<String, String>>> previous = new ArrayList<>(page.size());
+                Pipeline reads = j.pipelined();
+                for (T obj : page) {
+                    String identifier = mapper().extractIdentifier(obj);
+                    ids.add(identifier);
+                    previous.add(identifier == null ? null : reads.hgetAll(indexedValuesKeyFor(clazz, identifier)));
+                }
+                reads.sync();
+
+                Pipeline writes = j.pipelined();
+                for (int i = 0; i < page.size(); i++) {
+                    if (ids.get(i) == null) continue;
+                    updateIndexes(writes, page.get(i), ids.get(i), indexed, previous.get(i).get());
+                }
+                writes.sync();
             }
-        } else if (!prevExtras.isEmpty()) {
-            j.del(extrasIndexKey);
+        } catch (Exception e) {
+            logError("Failed reindex for " + clazz.getSimpleName(), e);
         }
     }
 
@@ -116,16 +665,136 @@ public class RedisDatabase extends StorageDatabase {
     public <T extends StorageObject> Optional<T> loadByIdSync(Class<T> clazz, String identifier) {
         ensurePool();
         try (Jedis j = jedisPool.getResource()) {
-            String json = j.get(keyFor(clazz, identifier));
-            if (json == null) return Optional.empty();
-
-            return Optional.ofNullable(mapper().fromJson(json, clazz));
+            String key = keyFor(clazz, identifier);
+            T obj;
+            if (isHashed(clazz)) {
+                obj = hashLayout.decode(key, clazz, j.hgetAll(bytes(key)));
+            } else {
+                byte[] payload = j.get(bytes(key));
+                if (payload == null) return Optional.empty();
+                obj = mapper().fromPayload(payload, clazz);
+            }
+            if (obj != null) touch(j, clazz, List.of(identifier));
+            return Optional.ofNullable(tracked(obj));
         } catch (Exception e) {
             logError("Failed loadByIdSync for " + clazz.getSimpleName(), e);
             return Optional.empty();
         }
     }
 
+    @Override
+    public <T extends StorageObject> CompletableFuture<Map<String, T>> loadByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return supplyAsync(() -> loadByIdsSync(clazz, identifiers));
+    }
+
+    @Override
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        Map<String, T> out = new HashMap<>();
+        if (identifiers.isEmpty()) return out;
+        ensurePool();
+
+        try (Jedis j = jedisPool.getResource()) {
+            loadByIds(j, clazz, identifiers, out);
+        } catch (Exception e) {
+            logError("Failed loadByIdsSync for " + clazz.getSimpleName(), e);
+        }
+        return out;
+    }
+
+    /**
+     * Loads the objects chunk by chunk on an already borrowed connection.
+     */
+    private <T extends StorageObject> void loadByIds(Jedis j, Class<T> clazz, Collection<String> identifiers, Map<String, T> out) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(identifiers));
+        for (int from = 0; from < ids.size(); from += BULK_CHUNK_SIZE) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + BULK_CHUNK_SIZE));
+            List<T> objects = fetch(j, clazz, chunk);
+            List<String> found = new ArrayList<>(chunk.size());
+            for (int i = 0; i < objects.size(); i++) {
+                if (objects.get(i) == null) continue;
+                out.put(chunk.get(i), objects.get(i));
+                found.add(chunk.get(i));
+            }
+            touch(j, clazz, found);
+        }
+    }
+
+    /**
+     * Loads a page of objects with one MGET, or one pipeline of HGETALL for hash classes.
+     *
+     * @return objects in the order of the identifiers, null for the missing ones
+     */
+    private <T extends StorageObject> List<T> fetch(Jedis j, Class<T> clazz, List<String> ids) {
+        List<T> objects = new ArrayList<>(ids.size());
+        if (isHashed(clazz)) {
+            List<Response<Map<byte[], byte[]>>> hashes = new ArrayList<>(ids.size());
+            Pipeline p = j.pipelined();
+            for (String id : ids) {
+                hashes.add(p.hgetAll(bytes(keyFor(clazz, id))));
+            }
+            p.sync();
+            for (int i = 0; i < ids.size(); i++) {
+                objects.add(tracked(hashLayout.decode(keyFor(clazz, ids.get(i)), clazz, hashes.get(i).get())));
+            }
+            return objects;
+        }
+
+        byte[][] keys = new byte[ids.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = bytes(keyFor(clazz, ids.get(i)));
+        }
+        for (byte[] payload : j.mget(keys)) {
+            objects.add(payload == null ? null : tracked(mapper().fromPayload(payload, clazz)));
+        }
+        return objects;
+    }
+
+    public CompletableFuture<Map<String, Object>> loadFieldsAsync(Class<? extends StorageObject> clazz, String identifier, Collection<String> keys) {
+        return supplyAsync(() -> loadFieldsSync(clazz, identifier, keys));
+    }
+
+    /**
+     * Reads some top-level properties of an object, with a single HMGET for classes registered with
+     * {@link #registerHashLayout(Class)}. Payload classes are decoded whole.
+     *
+     * @param keys storage keys of the properties
+     * @return storable values by key, properties that are not stored are missing
+     */
+    public Map<String, Object> loadFieldsSync(Class<? extends StorageObject> clazz, String identifier, Collection<String> keys) {
+        ensurePool();
+        Map<String, Object> values = new LinkedHashMap<>();
+        if (keys.isEmpty()) return values;
+
+        List<String> fields = new ArrayList<>(new LinkedHashSet<>(keys));
+        try (Jedis j = jedisPool.getResource()) {
+            String key = keyFor(clazz, identifier);
+            if (isHashed(clazz)) {
+                byte[][] names = new byte[fields.size()][];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = bytes(fields.get(i));
+                }
+                List<byte[]> stored = j.hmget(bytes(key), names);
+                for (int i = 0; i < fields.size(); i++) {
+                    byte[] value = stored.get(i);
+                    if (value != null) values.put(fields.get(i), mapper().fromJsonValue(new String(value, StandardCharsets.UTF_8)));
+                }
+                return values;
+            }
+
+            byte[] payload = j.get(bytes(key));
+            Object obj = payload == null ? null : mapper().fromPayload(payload, clazz);
+            if (obj == null) return values;
+
+            Document document = mapper().toDocument(obj);
+            for (String field : fields) {
+                if (document.containsKey(field)) values.put(field, document.get(field));
+            }
+        } catch (Exception e) {
+            logError("Failed loadFieldsSync for " + clazz.getSimpleName(), e);
+        }
+        return values;
+    }
+
     @Override
     public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String extraIdentifier) {
         return supplyAsync(() -> loadByExtraIdentifierSync(clazz, extraIdentifier));
@@ -150,28 +819,120 @@ public class RedisDatabase extends StorageDatabase {
         return Optional.empty();
     }
 
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByExtraIdentifierObjectAsync(Class<T> clazz, String extraIdentifier) {
+        return supplyAsync(() -> loadByExtraIdentifierObjectSync(clazz, extraIdentifier));
+    }
+
+    /**
+     * Follows the naming key to the object inside a Lua script, in one round trip.
+     * The object key is built by the script, so both keys must live on the same node when clustering.
+     */
+    @Override
+    public <T extends StorageObject> Optional<T> loadByExtraIdentifierObjectSync(Class<T> clazz, String extraIdentifier) {
+        ensurePool();
+        if (extraIdentifier == null) return Optional.empty();
+
+        String extraLower = extraIdentifier.toLowerCase(Locale.ENGLISH);
+        try (Jedis j = jedisPool.getResource()) {
+            List<byte[]> keys = List.of(bytes(namingKeyFor(clazz, extraLower)));
+            List<byte[]> args = List.of(bytes(keyFor(clazz, "")));
+            if (isHashed(clazz)) {
+                Object reply = eval(j, RESOLVE_EXTRA_HASH_SCRIPT, keys, args);
+                if (reply instanceof List<?> fields && !fields.isEmpty()) {
+                    String identifier = new String((byte[]) fields.get(0), StandardCharsets.UTF_8);
+                    T obj = hashLayout.decode(keyFor(clazz, identifier), clazz, fields.subList(1, fields.size()));
+                    if (obj != null) touch(j, clazz, List.of(identifier));
+                    return Optional.ofNullable(tracked(obj));
+                }
+                return Optional.empty();
+            }
+
+            Object payload = eval(j, RESOLVE_EXTRA_SCRIPT, keys, args);
+            if (payload instanceof byte[] bytes) {
+                T obj = mapper().fromPayload(bytes, clazz);
+                String identifier = obj == null ? null : mapper().extractIdentifier(obj);
+                if (identifier != null) touch(j, clazz, List.of(identifier));
+                return Optional.ofNullable(tracked(obj));
+            }
+        } catch (Exception e) {
+            logError("Failed loadByExtraIdentifierObjectSync for " + clazz.getSimpleName(), e);
+        }
+        return Optional.empty();
+    }
+
     @Override
     public <T extends StorageObject> CompletableFuture<Void> deleteByIdAsync(Class<T> clazz, String identifier) {
         return runAsync(() -> deleteByIdSync(clazz, identifier));
     }
 
+    /**
+     * Removes the object, its identifier and its extra identifiers with one script call.
+     * Classes with {@link StorageIndexed} properties take the two pipelines of {@link #deleteByIdsSync(Class, Collection)}.
+     */
     @Override
     public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String identifier) {
         ensurePool();
+        deleted(clazz);
+        if (!indexedProperties(clazz).isEmpty()) {
+            deleteByIdsSync(clazz, Collections.singletonList(identifier));
+            return;
+        }
+
+        List<byte[]> keys = List.of(bytes(keyFor(clazz, identifier)), bytes(idsKeyFor(clazz)), bytes(extrasIndexKeyFor(clazz, identifier)));
+        hashLayout.forget(keyFor(clazz, identifier));
+        try (Jedis j = jedisPool.getResource()) {
+            eval(j, DELETE_SCRIPT, keys, List.of(bytes(identifier), bytes(namingKeyFor(clazz, ""))));
+        } catch (Exception e) {
+            logError("Failed deleteByIdSync for " + clazz.getSimpleName(), e);
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return runAsync(() -> deleteByIdsSync(clazz, identifiers));
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        if (identifiers.isEmpty()) return;
+        ensurePool();
+        deleted(clazz);
+
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(identifiers));
         try (Jedis j = jedisPool.getResource()) {
-            j.del(keyFor(clazz, identifier));
-            j.srem(idsKeyFor(clazz), identifier);
-
-            String extrasIndexKey = extrasIndexKeyFor(clazz, identifier);
-            Set<String> extras = j.smembers(extrasIndexKey);
-            if (extras != null) {
-                for (String extraLower : extras) {
-                    j.del(namingKeyFor(clazz, extraLower));
+            List<IndexedProperty> indexed = indexedProperties(clazz);
+            List<Response<Set<String>>> extras = new ArrayList<>(ids.size());
+            List<Response<Map<String, String>>> indexedValues = new ArrayList<>(ids.size());
+            Pipeline reads = j.pipelined();
+            for (String identifier : ids) {
+                extras.add(reads.smembers(extrasIndexKeyFor(clazz, identifier)));
+                if (!indexed.isEmpty()) indexedValues.add(reads.hgetAll(indexedValuesKeyFor(clazz, identifier)));
+            }
+            reads.sync();
+
+            Pipeline writes = j.pipelined();
+            writes.srem(idsKeyFor(clazz), ids.toArray(new String[0]));
+            for (int i = 0; i < ids.size(); i++) {
+                String identifier = ids.get(i);
+                hashLayout.forget(keyFor(clazz, identifier));
+                writes.del(keyFor(clazz, identifier));
+
+                Set<String> extraLowers = extras.get(i).get();
+                if (extraLowers != null) {
+                    for (String extraLower : extraLowers) {
+                        writes.del(namingKeyFor(clazz, extraLower));
+                    }
+                }
+                writes.del(extrasIndexKeyFor(clazz, identifier));
+
+                if (!indexed.isEmpty()) {
+                    removeIndexes(writes, clazz, identifier, indexed, indexedValues.get(i).get());
                 }
             }
-            j.del(extrasIndexKey);
+            writes.sync();
         } catch (Exception e) {
-            logError("Failed deleteByIdSync for " + clazz.getSimpleName(), e);
+            logError("Failed deleteByIdsSync for " + clazz.getSimpleName(), e);
         }
     }
 
@@ -182,19 +943,128 @@ public class RedisDatabase extends StorageDatabase {
 
     @Override
     public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
+        try (Stream<T> stream = streamAll(clazz)) {
+            return stream.collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    /**
+     * Walks the identifiers set with SSCAN and decodes every page with a single MGET,
+     * one pooled connection is held until the stream is closed.
+     * As SSCAN guarantees, an object may be returned more than once if the set changes while streaming.
+     */
+    @Override
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
         ensurePool();
-        Set<T> out = new HashSet<>();
+        Jedis j = jedisPool.getResource();
+        String idsKey = idsKeyFor(clazz);
+        ScanParams params = new ScanParams().count(fetchSize);
+
+        LazyIterator<T> iterator = new LazyIterator<>() {
+            private final Deque<T> page = new ArrayDeque<>();
+            private String cursor = ScanParams.SCAN_POINTER_START;
+            private boolean scanned = false;
+
+            @Override
+            protected T fetchNext() {
+                while (page.isEmpty() && !scanned) {
+                    ScanResult<String> result = j.sscan(idsKey, cursor, params);
+                    cursor = result.getCursor();
+                    scanned = result.isCompleteIteration();
+
+                    List<String> ids = result.getResult();
+                    if (ids.isEmpty()) continue;
+
+                    for (T obj : fetch(j, clazz, ids)) {
+                        if (obj != null) page.add(obj);
+                    }
+                }
+                return page.poll();
+            }
+        };
+        return lazyStream(iterator, j::close);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        return supplyAsync(() -> querySync(clazz, query));
+    }
+
+    /**
+     * Candidates are read from the indexes: equality conditions on non numeric properties intersect their sets
+     * with SINTER, otherwise the conditions of one numeric property are resolved with a sorted set range.
+     * The candidates are loaded with MGET and every condition is checked again on them.
+     * Queries without conditions on indexed properties scan every object of the class.
+     */
+    @Override
+    public <T extends StorageObject> List<T> querySync(Class<T> clazz, StorageQuery query) {
+        ensurePool();
+        Map<String, IndexedProperty> indexed = new HashMap<>();
+        for (IndexedProperty property : indexedProperties(clazz)) {
+            indexed.put(property.key(), property);
+        }
+
+        List<String> sets = new ArrayList<>();
+        Map<String, ScoreRange> ranges = new LinkedHashMap<>();
+        boolean complete = true;
+        for (StorageQuery.Condition condition : query.getConditions()) {
+            IndexedProperty property = indexed.get(condition.key());
+            if (property == null || condition.value() == null) {
+                complete = false;
+            } else if (property.numeric() && condition.value() instanceof Number number) {
+                ranges.computeIfAbsent(property.key(), k -> new ScoreRange()).restrict(condition.operator(), number.doubleValue());
+            } else if (!property.numeric() && condition.operator() == StorageQuery.Operator.EQUALS) {
+                sets.add(valueIndexKeyFor(clazz, property.key(), String.valueOf(condition.value())));
+            } else {
+                complete = false;
+            }
+        }
+
+        IndexedProperty order = query.getOrderBy() != null ? indexed.get(query.getOrderBy()) : null;
+        List<String> ids;
+        Map<String, T> loaded = new HashMap<>();
+        boolean ordered = false;
         try (Jedis j = jedisPool.getResource()) {
-            Set<String> ids = j.smembers(idsKeyFor(clazz));
-            if (ids != null) {
-                for (String id : ids) {
-                    loadByIdSync(clazz, id).ifPresent(out::add);
+            if (!sets.isEmpty()) {
+                ids = new ArrayList<>(j.sinter(sets.toArray(new String[0])));
+            } else if (!ranges.isEmpty() || (order != null && order.numeric() && !order.nullable() && complete)) {
+                String key = !ranges.isEmpty() ? ranges.keySet().iterator().next() : order.key();
+                ScoreRange range = ranges.getOrDefault(key, new ScoreRange());
+                String sortedKey = sortedIndexKeyFor(clazz, key);
+
+                // The sorted set alone answers the query when it holds the only restricted property
+                ordered = complete && ranges.size() <= 1 && (query.getOrderBy() == null || query.getOrderBy().equals(key));
+                int limit = ordered && query.hasLimit() ? query.getLimit() : -1;
+
+                if (ordered && query.getOrderBy() != null && !query.isAscending()) {
+                    ids = limit >= 0
+                            ? j.zrevrangeByScore(sortedKey, range.max(), range.min(), 0, limit)
+                            : j.zrevrangeByScore(sortedKey, range.max(), range.min());
+                } else {
+                    ids = limit >= 0
+                            ? j.zrangeByScore(sortedKey, range.min(), range.max(), 0, limit)
+                            : j.zrangeByScore(sortedKey, range.min(), range.max());
                 }
+            } else {
+                ids = null;
             }
+            if (ids != null) loadByIds(j, clazz, ids, loaded);
         } catch (Exception e) {
-            logError("Failed loadAllSync for " + clazz.getSimpleName(), e);
+            logError("Failed querySync for " + clazz.getSimpleName(), e);
+            return new ArrayList<>();
         }
-        return out;
+        // Scanned without holding the index connection, the stream borrows its own
+        if (ids == null) return super.querySync(clazz, query);
+
+        List<T> candidates = new ArrayList<>(loaded.size());
+        for (String id : ids) {
+            T obj = loaded.get(id);
+            if (obj != null) candidates.add(obj);
+        }
+        if (ordered) {
+            return candidates;
+        }
+        return query.apply(mapper(), candidates.stream());
     }
 
     // --- CONNECTION & HELPERS ---
@@ -222,47 +1092,23 @@ public class RedisDatabase extends StorageDatabase {
         } catch (Exception ignored) {}
     }
 
-    private String extractIdentifier(StorageObject obj) {
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (Field f : c.getDeclaredFields()) {
-                if (f.isAnnotationPresent(StorageIdentifier.class)) {
-                    f.setAccessible(true);
-                    try {
-                        Object v = f.get(obj);
-                        return v != null ? v.toString() : null;
-                    } catch (Exception e) { return null; }
-                }
-            }
-        }
-        return null;
+    @Override
+    public int getQueuedTasks() {
+        return queuedTasks(executor);
     }
 
-    private void injectIdentifier(StorageObject obj, String id) {
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (Field f : c.getDeclaredFields()) {
-                if (f.isAnnotationPresent(StorageIdentifier.class)) {
-                    f.setAccessible(true);
-                    try { f.set(obj, id); } catch (Exception ignored) {}
-                    return;
-                }
-            }
-        }
-    }
 
-    private Set<String> extractExtraIdentifier(StorageObject obj) {
-        Set<String> extras = new HashSet<>();
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (Field f : c.getDeclaredFields()) {
-                if (f.isAnnotationPresent(StorageExtraIdentifier.class)) {
-                    f.setAccessible(true);
-                    try {
-                        Object v = f.get(obj);
-                        if (v != null) extras.add(v.toString());
-                    } catch (Exception ignored) {}
-                }
-            }
+
+
+    /**
+     * Runs a script by its digest, sending its source only when the server does not have it cached yet.
+     */
+    private static Object eval(Jedis j, LuaScript script, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return j.evalsha(script.sha(), keys, args);
+        } catch (JedisNoScriptException e) {
+            return j.eval(script.source(), keys, args);
         }
-        return extras;
     }
 
     private <U> CompletableFuture<U> supplyAsync(SupplierWithException<U> supplier) {
@@ -279,6 +1125,77 @@ public class RedisDatabase extends StorageDatabase {
         }, executor);
     }
 
+    private record LuaScript(byte[] source, byte[] sha) {
+
+        static LuaScript of(String source) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes(source));
+                return new LuaScript(bytes(source), bytes(HexFormat.of().formatHex(digest)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private record IndexedProperty(String key, boolean numeric, boolean nullable) {
+
+    }
+
+    private record StoredKey(Class<?> clazz, String identifier) {
+
+    }
+
+    /**
+     * Score bounds of the conditions on one numeric property, in ZRANGEBYSCORE syntax.
+     */
+    private static final class ScoreRange {
+        private double min = Double.NEGATIVE_INFINITY;
+        private double max = Double.POSITIVE_INFINITY;
+        private boolean minExclusive = false;
+        private boolean maxExclusive = false;
+
+        void restrict(StorageQuery.Operator operator, double value) {
+            switch (operator) {
+                case EQUALS -> {
+                    lower(value, false);
+                    upper(value, false);
+                }
+                case GREATER_THAN -> lower(value, true);
+                case GREATER_OR_EQUALS -> lower(value, false);
+                case LESS_THAN -> upper(value, true);
+                case LESS_OR_EQUALS -> upper(value, false);
+            }
+        }
+
+        private void lower(double value, boolean exclusive) {
+            if (value > min || (value == min && exclusive)) {
+                min = value;
+                minExclusive = exclusive;
+            }
+        }
+
+        private void upper(double value, boolean exclusive) {
+            if (value < max || (value == max && exclusive)) {
+                max = value;
+                maxExclusive = exclusive;
+            }
+        }
+
+        String min() {
+            return bound(min, minExclusive);
+        }
+
+        String max() {
+            return bound(max, maxExclusive);
+        }
+
+        private static String bound(double value, boolean exclusive) {
+            if (value == Double.NEGATIVE_INFINITY) return "-inf";
+            if (value == Double.POSITIVE_INFINITY) return "+inf";
+            return (exclusive ? "(" : "") + value;
+        }
+    }
+
     @FunctionalInterface private interface SupplierWithException<T> { T get() throws Exception; }
     @FunctionalInterface private interface RunnableWithException { void run() throws Exception; }
 }
\ No newline at end of file
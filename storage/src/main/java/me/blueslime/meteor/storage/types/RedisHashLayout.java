@@ -0,0 +1,104 @@
+package me.blueslime.meteor.storage.types;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import org.bson.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Hash layout of {@link RedisDatabase}, where every top-level property of an object is its own hash field
+ * holding the property's JSON value.
+ * <p>
+ * The field values last written or read for every object are remembered, so a save only sends the fields
+ * that changed since then. The snapshots describe what this process last saw: another client writing the
+ * same objects makes them stale, so classes stored with this layout should have a single writer.
+ */
+final class RedisHashLayout {
+
+    private static final int MAX_SNAPSHOTS = 10_000;
+
+    private final Cache<String, Map<String, String>> snapshots = Caffeine.newBuilder()
+            .maximumSize(MAX_SNAPSHOTS)
+            .build();
+
+    private final ObjectMapper mapper;
+
+    RedisHashLayout(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Encodes every top-level property of an object into its field value.
+     */
+    Map<String, String> fields(Object obj) {
+        Document document = mapper.toDocument(obj);
+        Map<String, String> fields = new LinkedHashMap<>(document.size() * 2);
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            fields.put(entry.getKey(), mapper.toJsonValue(entry.getValue()));
+        }
+        return fields;
+    }
+
+    /**
+     * Fields that differ from the snapshot of the object, every field when there is none.
+     */
+    Map<byte[], byte[]> changes(String key, Map<String, String> fields) {
+        Map<String, String> previous = snapshots.getIfPresent(key);
+        Map<byte[], byte[]> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (previous == null || !field.getValue().equals(previous.get(field.getKey()))) {
+                changes.put(bytes(field.getKey()), bytes(field.getValue()));
+            }
+        }
+        return changes;
+    }
+
+    void remember(String key, Map<String, String> fields) {
+        snapshots.put(key, fields);
+    }
+
+    void forget(String key) {
+        snapshots.invalidate(key);
+    }
+
+    /**
+     * Decodes a stored hash, remembering its fields, null when the hash is empty.
+     */
+    <T> T decode(String key, Class<T> clazz, Map<byte[], byte[]> hash) {
+        if (hash == null || hash.isEmpty()) return null;
+
+        Map<String, String> fields = new LinkedHashMap<>(hash.size() * 2);
+        for (Map.Entry<byte[], byte[]> field : hash.entrySet()) {
+            fields.put(new String(field.getKey(), StandardCharsets.UTF_8), new String(field.getValue(), StandardCharsets.UTF_8));
+        }
+        T obj = mapper.fromDocument(clazz, document(fields));
+        if (obj != null) remember(key, fields);
+        return obj;
+    }
+
+    /**
+     * Decodes the flat {@code field, value, ...} list returned by {@code HGETALL} inside a script.
+     */
+    <T> T decode(String key, Class<T> clazz, List<?> reply) {
+        Map<byte[], byte[]> hash = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < reply.size(); i += 2) {
+            hash.put((byte[]) reply.get(i), (byte[]) reply.get(i + 1));
+        }
+        return decode(key, clazz, hash);
+    }
+
+    Document document(Map<String, String> fields) {
+        Document document = new Document();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            document.put(field.getKey(), field.getValue() == null ? null : mapper.fromJsonValue(field.getValue()));
+        }
+        return document;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
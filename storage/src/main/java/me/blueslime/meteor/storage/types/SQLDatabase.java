@@ -1,19 +1,31 @@
 package me.blueslime.meteor.storage.types;
 
 import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
 import me.blueslime.meteor.storage.interfaces.*;
+import me.blueslime.meteor.storage.mapper.payload.PayloadCodec;
 import me.blueslime.meteor.storage.references.ReferencedObject;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @SuppressWarnings("unused")
 public abstract class SQLDatabase extends StorageDatabase {
 
+    private static final int BULK_CHUNK_SIZE = 500;
+
     protected final Set<String> createdTables = ConcurrentHashMap.newKeySet();
+    private final Map<Class<?>, TypedTable> typedTables = new ConcurrentHashMap<>();
+    private final Map<Class<?>, JsonIndexes> jsonIndexes = new ConcurrentHashMap<>();
+    private final Map<Class<?>, TableStatements> statements = new ConcurrentHashMap<>();
 
     protected final ExecutorService dbExecutor;
     protected final String host, databaseName, user, password;
@@ -46,8 +58,64 @@ public abstract class SQLDatabase extends StorageDatabase {
         }
     }
 
+    @Override
+    public int getQueuedTasks() {
+        return queuedTasks(dbExecutor);
+    }
+
     protected abstract void ensureConnected();
 
+    /**
+     * SQL variant used to build every statement, implementations override it for their database.
+     */
+    protected SqlDialect dialect() {
+        return SqlDialect.MYSQL;
+    }
+
+    /**
+     * Statements of one storage operation, run on a single borrowed connection.
+     */
+    @FunctionalInterface
+    protected interface ConnectionWork<R> {
+        R execute(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Borrows one connection, runs every statement of an operation on it and returns it,
+     * so an operation never holds more than one connection of the pool.
+     */
+    protected <R> R withConnection(ConnectionWork<R> work) throws SQLException {
+        Connection connection = getConnection();
+        try {
+            return work.execute(connection);
+        } finally {
+            releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Runs the statements of an operation that writes, implementations with a dedicated writer override it.
+     * Reads and writes share {@link #withConnection(ConnectionWork)} by default.
+     */
+    protected <R> R withWriteConnection(ConnectionWork<R> work) throws SQLException {
+        return withConnection(work);
+    }
+
+    /**
+     * Returns a connection obtained with {@link #getConnection()}, closing a pooled connection hands it back to the pool.
+     * Implementations sharing a single connection override it to keep the connection open.
+     */
+    protected void releaseConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * Usage of the connection pool of the database, implementations without a pool report {@link PoolStatistics#EMPTY}.
+     */
+    public PoolStatistics getPoolStatistics() {
+        return PoolStatistics.EMPTY;
+    }
+
     @Override
     public CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj) {
         return CompletableFuture.runAsync(() -> saveOrUpdateSync(obj), dbExecutor);
@@ -57,83 +125,421 @@ public abstract class SQLDatabase extends StorageDatabase {
     public void saveOrUpdateSync(StorageObject obj) {
         ensureConnected();
 
-        String table = obj.getClass().getSimpleName();
+        Class<?> clazz = obj.getClass();
+        String table = clazz.getSimpleName();
         String safeTable = sanitizeIdentifier(table);
-        String id = extractIdentifier(obj);
-        if (id == null) id = obj.getClass().getSimpleName(); // Fallback ID
+        String id = mapper().extractIdentifier(obj);
+        String realId = id != null ? id : table; // Fallback ID
 
-        String jsonData = mapper().toJson(obj);
+        ChangeTracker.Changes changes = changes(obj);
+        if (changes != null && changes.isUnchanged()) return;
+
+        try {
+            withWriteConnection(connection -> {
+                ensureTable(connection, clazz, safeTable);
+
+                TypedTable typed = typedTables.get(clazz);
+                if (typed != null && changes != null && changes.isPartial()
+                        && typed.update(connection, mapper(), realId, changes.document(), changes.changed()) > 0) {
+                    saveExtraIdentifiers(connection, table, obj, realId);
+                    return null;
+                }
 
-        String sql = "INSERT INTO " + safeTable + " (`_id`, `json_data`) VALUES (?, ?) " +
-                     "ON DUPLICATE KEY UPDATE `json_data` = VALUES(`json_data`)";
+                try (PreparedStatement stmt = connection.prepareStatement(statements(clazz).upsert)) {
+                    bindRow(stmt, realId, obj);
+                    stmt.executeUpdate();
+                } catch (SQLException e) {
+                    if (!dialect().isMissingTable(e)) throw e;
+                    createdTables.remove(safeTable);
+                    ensureTable(connection, clazz, safeTable);
+                    try (PreparedStatement stmt = connection.prepareStatement(statements(clazz).upsert)) {
+                        bindRow(stmt, realId, obj);
+                        stmt.executeUpdate();
+                    }
+                }
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, id);
-            stmt.setString(2, jsonData);
-            stmt.executeUpdate();
+                saveExtraIdentifiers(connection, table, obj, realId);
+                return null;
+            });
+            saved(obj, changes);
         } catch (SQLException e) {
-            if (e.getErrorCode() == 1146 || "42S02".equals(e.getSQLState())) {
-                createMainTable(safeTable);
-                saveOrUpdateSync(obj);
-                return;
-            }
             logError("Error saving object to SQL Database in table " + safeTable, e);
         }
+    }
+
+    @Override
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        if (objects.isEmpty()) return;
+        ensureConnected();
+
+        Map<Class<?>, List<StorageObject>> byClass = new LinkedHashMap<>();
+        List<StorageObject> written = new ArrayList<>();
+        for (StorageObject obj : dirty(objects)) {
+            if (obj == null) continue;
+            byClass.computeIfAbsent(obj.getClass(), k -> new ArrayList<>()).add(obj);
+            written.add(obj);
+        }
+
+        try {
+            withWriteConnection(connection -> {
+                for (Map.Entry<Class<?>, List<StorageObject>> entry : byClass.entrySet()) {
+                    saveAll(connection, entry.getKey(), entry.getValue());
+                }
+                return null;
+            });
+        } catch (SQLException | RuntimeException e) {
+            throw writeFailure("Error saving objects batch to SQL Database", e);
+        }
+        // Only once the write is committed, a rolled back batch must stay dirty to be written again
+        tracked(written);
+    }
 
-        Set<String> extraIds = extractExtraIdentifier(obj);
+    @Override
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        return CompletableFuture.supplyAsync(() -> commitSync(unit), dbExecutor);
+    }
+
+    /**
+     * Applies the unit in a single transaction on one connection.
+     * Tables are created before the transaction starts, MySQL commits implicitly on DDL statements.
+     */
+    @Override
+    public boolean commitSync(UnitOfWork unit) {
+        if (unit.isEmpty()) return true;
+        ensureConnected();
+
+        try {
+            withWriteConnection(connection -> {
+                for (UnitOfWork.Operation operation : unit.getOperations()) {
+                    if (operation instanceof UnitOfWork.Save save) {
+                        Class<?> clazz = save.object().getClass();
+                        ensureTable(connection, clazz, sanitizeIdentifier(clazz.getSimpleName()));
+                        if (!mapper().extractExtraIdentifiers(save.object()).isEmpty()) {
+                            ensureNamingTable(connection, clazz.getSimpleName());
+                        }
+                    } else if (operation instanceof UnitOfWork.Delete delete) {
+                        ensureTable(connection, delete.type(), sanitizeIdentifier(delete.type().getSimpleName()));
+                    }
+                }
+
+                boolean autoCommit = connection.getAutoCommit();
+                if (autoCommit) connection.setAutoCommit(false);
+                try {
+                    for (UnitOfWork.Operation operation : unit.getOperations()) {
+                        apply(connection, operation);
+                    }
+                    if (autoCommit) connection.commit();
+                    return true;
+                } catch (SQLException | RuntimeException e) {
+                    if (autoCommit) connection.rollback();
+                    throw e;
+                } finally {
+                    if (autoCommit) connection.setAutoCommit(true);
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            logError("Failed to commit unit of " + unit.size() + " operations, it was rolled back", e);
+            return false;
+        }
+        committed(unit);
+        return true;
+    }
+
+    private void apply(Connection connection, UnitOfWork.Operation operation) throws SQLException {
+        if (operation instanceof UnitOfWork.Delete delete) {
+            try (PreparedStatement stmt = connection.prepareStatement(statements(delete.type()).deleteById)) {
+                stmt.setString(1, delete.identifier());
+                stmt.executeUpdate();
+            }
+            return;
+        }
+
+        StorageObject obj = ((UnitOfWork.Save) operation).object();
+        String table = obj.getClass().getSimpleName();
+        String id = mapper().extractIdentifier(obj);
+        if (id == null) id = table;
+
+        try (PreparedStatement stmt = connection.prepareStatement(statements(obj.getClass()).upsert)) {
+            bindRow(stmt, id, obj);
+            stmt.executeUpdate();
+        }
+
+        Set<String> extraIds = mapper().extractExtraIdentifiers(obj);
         if (!extraIds.isEmpty()) {
-            saveExtraIdentifiers(table, id, extraIds);
+            writeExtraIdentifiers(connection, table, Map.of(id, extraIds));
         }
     }
 
-    private void createMainTable(String tableName) {
-        String sql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
-                     "`_id` VARCHAR(255) NOT NULL PRIMARY KEY, " +
-                     "`json_data` LONGTEXT" +
-                     ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;";
-        try (Statement stmt = getConnection().createStatement()) {
+    private void saveAll(Connection connection, Class<?> clazz, List<StorageObject> objects) throws SQLException {
+        String table = clazz.getSimpleName();
+        String safeTable = sanitizeIdentifier(table);
+
+        ensureTable(connection, clazz, safeTable);
+
+        Map<String, Set<String>> extraIds = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(statements(clazz).upsert)) {
+            for (StorageObject obj : objects) {
+                String id = mapper().extractIdentifier(obj);
+                if (id == null) id = table;
+
+                bindRow(stmt, id, obj);
+                stmt.addBatch();
+
+                Set<String> extras = mapper().extractExtraIdentifiers(obj);
+                if (!extras.isEmpty()) extraIds.put(id, extras);
+            }
+            executeBatch(stmt);
+        }
+
+        if (!extraIds.isEmpty()) {
+            saveExtraIdentifiers(connection, table, extraIds);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAllAsync(Collection<? extends StorageObject> objects) {
+        return CompletableFuture.runAsync(() -> saveAllSync(objects), dbExecutor);
+    }
+
+    /**
+     * Runs a batch, inside a single transaction when the dialect commits every statement on its own.
+     */
+    private void executeBatch(PreparedStatement stmt) throws SQLException {
+        if (!dialect().transactionalBatches()) {
+            stmt.executeBatch();
+            return;
+        }
+        Connection connection = stmt.getConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) connection.setAutoCommit(false);
+        try {
+            stmt.executeBatch();
+            if (autoCommit) connection.commit();
+        } catch (SQLException e) {
+            if (autoCommit) connection.rollback();
+            throw e;
+        } finally {
+            if (autoCommit) connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Stores a class in typed columns derived from its stored properties, named after their storage keys,
+     * instead of a single JSON document, so its fields can be indexed and read without parsing.
+     * <p>
+     * Classes registered before {@link #connect()} have their table created and migrated on connect,
+     * classes registered later on first use. Existing JSON tables of the class are not converted.
+     *
+     * @param clazz class to store in typed columns
+     */
+    public void registerTypedTable(Class<? extends StorageObject> clazz) {
+        String table = sanitizeIdentifier(clazz.getSimpleName());
+        typedTables.put(clazz, TypedTable.of(mapper(), clazz, dialect(), table));
+        statements.remove(clazz);
+        createdTables.remove(table);
+    }
+
+    public boolean isTypedTable(Class<?> clazz) {
+        return typedTables.containsKey(clazz);
+    }
+
+    /**
+     * Creates and migrates the tables of every typed class, implementations call it once connected.
+     */
+    protected void migrateTypedTables() {
+        if (typedTables.isEmpty()) return;
+        try {
+            withWriteConnection(connection -> {
+                for (TypedTable typed : typedTables.values()) {
+                    createdTables.remove(typed.table);
+                    ensureTable(connection, typed.table, typed);
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            logError("Failed to migrate typed tables", e);
+        }
+    }
+
+    /**
+     * Creates the table of a class before it is read, on the connection used for writes.
+     */
+    private void prepareTable(Class<?> clazz, String safeTable) throws SQLException {
+        if (createdTables.contains(safeTable)) return;
+        withWriteConnection(connection -> {
+            ensureTable(connection, clazz, safeTable);
+            return null;
+        });
+    }
+
+    private void ensureTable(Connection connection, Class<?> clazz, String safeTable) {
+        if (createdTables.contains(safeTable)) return;
+        TypedTable typed = typedTables.get(clazz);
+        if (typed != null) {
+            ensureTable(connection, safeTable, typed);
+            return;
+        }
+        createMainTable(connection, safeTable);
+
+        JsonIndexes indexes = jsonIndexes(clazz);
+        if (indexes.isEmpty()) return;
+        try {
+            indexes.migrate(connection, safeTable);
+        } catch (SQLException e) {
+            logError("Failed to create indexes of table " + safeTable, e);
+        }
+    }
+
+    private void ensureTable(Connection connection, String safeTable, TypedTable typed) {
+        try {
+            typed.migrate(connection);
+            createdTables.add(safeTable);
+        } catch (SQLException e) {
+            logError("Failed to create or migrate typed table " + safeTable, e);
+            return;
+        }
+        try {
+            typed.createIndexes(connection);
+        } catch (SQLException e) {
+            logError("Failed to create indexes of typed table " + safeTable, e);
+        }
+    }
+
+    private JsonIndexes jsonIndexes(Class<?> clazz) {
+        return jsonIndexes.computeIfAbsent(clazz, k -> JsonIndexes.of(mapper(), k, dialect()));
+    }
+
+    private TableStatements statements(Class<?> clazz) {
+        return statements.computeIfAbsent(clazz, k -> new TableStatements(dialect(), sanitizeIdentifier(k.getSimpleName()), typedTables.get(k)));
+    }
+
+    private void bindRow(PreparedStatement stmt, String id, StorageObject obj) throws SQLException {
+        TypedTable typed = typedTables.get(obj.getClass());
+        if (typed != null) {
+            typed.bind(stmt, mapper(), id, obj);
+            return;
+        }
+        stmt.setString(1, id);
+        bindPayload(stmt, obj);
+    }
+
+    /**
+     * Decodes a row selected with {@link TableStatements#selectColumns} starting at the given column.
+     */
+    private <T> T readRow(ResultSet rs, int column, Class<T> clazz) throws SQLException {
+        TypedTable typed = typedTables.get(clazz);
+        if (typed != null) {
+            return tracked(mapper().fromDocument(clazz, typed.read(rs, column, mapper())));
+        }
+        return tracked(readPayload(rs, column, clazz));
+    }
+
+    private void createMainTable(Connection connection, String tableName) {
+        SqlDialect dialect = dialect();
+        String sql = dialect.createTable(tableName,
+                dialect.quote("_id") + " VARCHAR(255) NOT NULL PRIMARY KEY, " +
+                dialect.quote("json_data") + " " + dialect.documentType() + ", " +
+                dialect.quote("payload_data") + " " + dialect.binaryType());
+        try (Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
+            addPayloadColumn(stmt, tableName);
             createdTables.add(tableName);
         } catch (SQLException e) {
             logError("Failed to create main table " + tableName, e);
         }
     }
 
-    private void saveExtraIdentifiers(String rawTableName, String realId, Set<String> extraIds) {
-        String namingTable = sanitizeIdentifier(rawTableName + "_StringNaming");
+    /**
+     * Tables created before binary payloads existed only have the {@code json_data} column.
+     */
+    private void addPayloadColumn(Statement stmt, String tableName) throws SQLException {
+        if (TypedTable.columnNames(stmt.getConnection(), dialect().unquote(tableName)).contains("payload_data")) return;
+        stmt.execute("ALTER TABLE " + tableName + " ADD COLUMN " + dialect().quote("payload_data") + " " + dialect().binaryType());
+    }
 
-        if (!createdTables.contains(namingTable)) {
-            String createSql = "CREATE TABLE IF NOT EXISTS " + namingTable +
-                               "(`_id` VARCHAR(255) NOT NULL PRIMARY KEY," +
-                               " `referenced` VARCHAR(255) NOT NULL" +
-                               ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;";
-            try (Statement stmt = getConnection().createStatement()) {
-                stmt.execute(createSql);
-                createdTables.add(namingTable);
-            } catch (SQLException e) {
-                logError("Error creating naming table " + namingTable, e);
-                return;
-            }
+    /**
+     * Binds parameters 2 and 3 of the document upsert, text formats fill {@code json_data}
+     * and binary formats fill {@code payload_data}, the other column is cleared.
+     */
+    private void bindPayload(PreparedStatement stmt, StorageObject obj) throws SQLException {
+        PayloadCodec codec = mapper().getPayloadCodec(obj.getClass());
+        if (codec.isBinary()) {
+            stmt.setNull(2, Types.LONGVARCHAR);
+            stmt.setBytes(3, codec.encode(mapper(), obj));
+        } else {
+            String text = codec == PayloadCodec.JSON
+                    ? mapper().toJson(obj)
+                    : new String(codec.encode(mapper(), obj), StandardCharsets.UTF_8);
+            stmt.setString(2, text);
+            stmt.setNull(3, Types.LONGVARBINARY);
         }
+    }
 
-        String insertSql = "INSERT INTO " + namingTable +
-                           " (`_id`, `referenced`) VALUES (?, ?) " +
-                           "ON DUPLICATE KEY UPDATE `referenced` = ?";
+    /**
+     * Decodes a row selected as {@code json_data, payload_data} starting at the given column.
+     */
+    private <T> T readPayload(ResultSet rs, int column, Class<T> clazz) throws SQLException {
+        byte[] payload = rs.getBytes(column + 1);
+        if (payload != null) {
+            return mapper().fromPayload(payload, clazz);
+        }
+        String json = rs.getString(column);
+        return json != null ? mapper().fromJson(json, clazz) : null;
+    }
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(insertSql)) {
-            for (String extra : extraIds) {
-                String keyLower = extra.toLowerCase(Locale.ENGLISH);
-                stmt.setString(1, keyLower);
-                stmt.setString(2, realId);
-                stmt.setString(3, realId);
-                stmt.addBatch();
-            }
-            stmt.executeBatch();
+    private void saveExtraIdentifiers(Connection connection, String rawTableName, StorageObject obj, String realId) {
+        Set<String> extraIds = mapper().extractExtraIdentifiers(obj);
+        if (!extraIds.isEmpty()) {
+            saveExtraIdentifiers(connection, rawTableName, Map.of(realId, extraIds));
+        }
+    }
+
+    private void saveExtraIdentifiers(Connection connection, String rawTableName, Map<String, Set<String>> extraIdsByRealId) {
+        try {
+            ensureNamingTable(connection, rawTableName);
+        } catch (SQLException e) {
+            logError("Error creating naming table of " + rawTableName, e);
+            return;
+        }
+        try {
+            writeExtraIdentifiers(connection, rawTableName, extraIdsByRealId);
         } catch (SQLException e) {
             logError("Error saving extra identifiers for " + rawTableName, e);
         }
     }
 
+    private void ensureNamingTable(Connection connection, String rawTableName) throws SQLException {
+        String namingTable = sanitizeIdentifier(rawTableName + "_StringNaming");
+        if (createdTables.contains(namingTable)) return;
+
+        SqlDialect dialect = dialect();
+        String createSql = dialect.createTable(namingTable,
+                dialect.quote("_id") + " VARCHAR(255) NOT NULL PRIMARY KEY, " + dialect.quote("referenced") + " VARCHAR(255) NOT NULL");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createSql);
+            createdTables.add(namingTable);
+        }
+    }
+
+    private void writeExtraIdentifiers(Connection connection, String rawTableName, Map<String, Set<String>> extraIdsByRealId) throws SQLException {
+        SqlDialect dialect = dialect();
+        String namingTable = sanitizeIdentifier(rawTableName + "_StringNaming");
+        String insertSql = dialect.upsert(namingTable, List.of(dialect.quote("_id"), dialect.quote("referenced")), List.of("?", "?"));
+
+        try (PreparedStatement stmt = connection.prepareStatement(insertSql)) {
+            for (Map.Entry<String, Set<String>> entry : extraIdsByRealId.entrySet()) {
+                String realId = entry.getKey();
+                for (String extra : entry.getValue()) {
+                    String keyLower = extra.toLowerCase(Locale.ENGLISH);
+                    stmt.setString(1, keyLower);
+                    stmt.setString(2, realId);
+                    stmt.addBatch();
+                }
+            }
+            executeBatch(stmt);
+        }
+    }
+
     @Override
     public <T extends StorageObject> CompletableFuture<Optional<T>> loadByIdAsync(Class<T> clazz, String id) {
         return CompletableFuture.supplyAsync(() -> loadByIdSync(clazz, id), dbExecutor);
@@ -142,26 +548,67 @@ public abstract class SQLDatabase extends StorageDatabase {
     @Override
     public <T extends StorageObject> Optional<T> loadByIdSync(Class<T> clazz, String id) {
         ensureConnected();
-        String table = sanitizeIdentifier(clazz.getSimpleName());
-        String sql = "SELECT `json_data` FROM " + table + " WHERE `_id` = ?";
-
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, id);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String json = rs.getString("json_data");
-                    return Optional.ofNullable(mapper().fromJson(json, clazz));
+        TableStatements sql = statements(clazz);
+        String table = sql.table;
+
+        try {
+            prepareTable(clazz, table);
+            return withConnection(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql.selectById)) {
+                    stmt.setString(1, id);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return rs.next() ? Optional.ofNullable(readRow(rs, 1, clazz)) : Optional.<T>empty();
+                    }
                 }
-            }
+            });
         } catch (SQLException e) {
-            if (e.getErrorCode() == 1146 || "42S02".equals(e.getSQLState())) {
-                return Optional.empty();
+            if (!dialect().isMissingTable(e)) {
+                logError("Error loading object " + id + " from " + table, e);
             }
-            logError("Error loading object " + id + " from " + table, e);
         }
         return Optional.empty();
     }
 
+    @Override
+    public <T extends StorageObject> CompletableFuture<Map<String, T>> loadByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return CompletableFuture.supplyAsync(() -> loadByIdsSync(clazz, identifiers), dbExecutor);
+    }
+
+    @Override
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        Map<String, T> results = new HashMap<>();
+        if (identifiers.isEmpty()) return results;
+        ensureConnected();
+        TableStatements sql = statements(clazz);
+        String table = sql.table;
+
+        try {
+            prepareTable(clazz, table);
+            withConnection(connection -> {
+                for (List<String> chunk : chunks(identifiers)) {
+                    try (PreparedStatement stmt = connection.prepareStatement(sql.selectByIds(chunk.size()))) {
+                        bindIdentifiers(stmt, chunk);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                T obj = readRow(rs, 2, clazz);
+                                if (obj != null) results.put(rs.getString(1), obj);
+                            }
+                        }
+                    } catch (SQLException e) {
+                        if (dialect().isMissingTable(e)) throw e;
+                        logError("Error loading " + chunk.size() + " objects from " + table, e);
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            if (!dialect().isMissingTable(e)) {
+                logError("Error loading objects from " + table, e);
+            }
+        }
+        return results;
+    }
+
     @Override
     public <T extends StorageObject> CompletableFuture<Set<T>> loadAllAsync(Class<T> clazz) {
         return CompletableFuture.supplyAsync(() -> loadAllSync(clazz), dbExecutor);
@@ -169,27 +616,217 @@ public abstract class SQLDatabase extends StorageDatabase {
 
     @Override
     public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
+        try (Stream<T> stream = streamAll(clazz)) {
+            return stream.collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
         ensureConnected();
-        Set<T> results = new HashSet<>();
-        String table = sanitizeIdentifier(clazz.getSimpleName());
-        String sql = "SELECT `json_data` FROM " + table;
+        TableStatements statements = statements(clazz);
+        String table = statements.table;
+        String sql = statements.selectAll;
+
+        // The connection stays borrowed until the stream is closed
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            prepareTable(clazz, table);
+            connection = getConnection();
+            if (cursorRequiresTransaction()) {
+                connection.setAutoCommit(false);
+            }
+            stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            rs = stmt.executeQuery();
+        } catch (SQLException e) {
+            closeCursor(connection, stmt, rs);
+            if (!dialect().isMissingTable(e)) {
+                logError("Error streaming objects from " + table, e);
+            }
+            return Stream.empty();
+        }
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
+        final Connection cursorConnection = connection;
+        final PreparedStatement cursorStatement = stmt;
+        final ResultSet cursor = rs;
 
-            while (rs.next()) {
-                String json = rs.getString("json_data");
-                T obj = mapper().fromJson(json, clazz);
-                if (obj != null) {
-                    results.add(obj);
+        LazyIterator<T> iterator = new LazyIterator<>() {
+            @Override
+            protected T fetchNext() throws SQLException {
+                while (cursor.next()) {
+                    T obj = readRow(cursor, 1, clazz);
+                    if (obj != null) return obj;
                 }
+                return null;
             }
+        };
+        return lazyStream(iterator, () -> closeCursor(cursorConnection, cursorStatement, cursor));
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        return CompletableFuture.supplyAsync(() -> querySync(clazz, query), dbExecutor);
+    }
+
+    /**
+     * Conditions on columns are resolved by the database: every stored property of typed tables,
+     * and the {@link StorageIndexed} properties of JSON tables through their generated columns.
+     * Ordering and limit are only pushed down when every condition is, otherwise they are applied in memory.
+     * Classes stored with a binary payload format are filtered in memory.
+     */
+    @Override
+    public <T extends StorageObject> List<T> querySync(Class<T> clazz, StorageQuery query) {
+        ensureConnected();
+        TypedTable typed = typedTables.get(clazz);
+        if (typed == null && mapper().getPayloadCodec(clazz) != PayloadCodec.JSON) {
+            return super.querySync(clazz, query);
+        }
+
+        TableStatements statements = statements(clazz);
+        String table = statements.table;
+        Map<String, TypedTable.Column> columns = typed != null ? typed.queryColumns : jsonIndexes(clazz).queryColumns;
+
+        List<StorageQuery.Condition> pushed = new ArrayList<>();
+        StringJoiner where = new StringJoiner(" AND ");
+        boolean complete = true;
+        for (StorageQuery.Condition condition : query.getConditions()) {
+            TypedTable.Column column = columns.get(condition.key());
+            if (column == null || (condition.value() == null && condition.operator() != StorageQuery.Operator.EQUALS)) {
+                complete = false;
+                continue;
+            }
+            if (condition.value() == null) {
+                where.add(column.quoted + " IS NULL");
+                continue;
+            }
+            where.add(column.quoted + " " + operator(condition.operator()) + " ?");
+            pushed.add(condition);
+        }
+
+        StringBuilder sql = new StringBuilder(statements.selectAll);
+        if (where.length() > 0) {
+            sql.append(" WHERE ").append(where);
+        }
+
+        TypedTable.Column order = query.getOrderBy() != null ? columns.get(query.getOrderBy()) : null;
+        complete = complete && (query.getOrderBy() == null || order != null);
+        if (complete) {
+            if (order != null) {
+                sql.append(" ORDER BY ").append(order.quoted).append(" IS NULL, ")
+                   .append(order.quoted).append(query.isAscending() ? " ASC" : " DESC");
+            }
+            if (query.hasLimit()) {
+                sql.append(" LIMIT ").append(query.getLimit());
+            }
+        }
+
+        List<T> results = new ArrayList<>();
+        try {
+            prepareTable(clazz, table);
+            withConnection(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+                    int index = 1;
+                    for (StorageQuery.Condition condition : pushed) {
+                        Object value = condition.value();
+                        if (value instanceof Number) {
+                            stmt.setObject(index++, value);
+                        } else {
+                            columns.get(condition.key()).kind.bind(stmt, index++, value, mapper());
+                        }
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            T obj = readRow(rs, 1, clazz);
+                            if (obj != null) results.add(obj);
+                        }
+                    }
+                }
+                return null;
+            });
         } catch (SQLException e) {
-            if (e.getErrorCode() != 1146 && !"42S02".equals(e.getSQLState())) {
-                logError("Error loading all objects from " + table, e);
+            if (!dialect().isMissingTable(e)) {
+                logError("Error querying objects from " + table, e);
             }
+            return results;
         }
-        return results;
+        return complete ? results : query.apply(mapper(), results.stream());
+    }
+
+    private static String operator(StorageQuery.Operator operator) {
+        return switch (operator) {
+            case EQUALS -> "=";
+            case GREATER_THAN -> ">";
+            case GREATER_OR_EQUALS -> ">=";
+            case LESS_THAN -> "<";
+            case LESS_OR_EQUALS -> "<=";
+        };
+    }
+
+    /**
+     * Some drivers (PostgreSQL) only honour the fetch size inside a transaction,
+     * when this returns true streamed reads disable auto-commit on their connection.
+     */
+    protected boolean cursorRequiresTransaction() {
+        return false;
+    }
+
+    private void closeCursor(Connection connection, Statement stmt, ResultSet rs) {
+        try {
+            if (rs != null) rs.close();
+            if (stmt != null) stmt.close();
+            if (connection != null && cursorRequiresTransaction() && !connection.getAutoCommit()) {
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logError("Error closing SQL cursor", e);
+        } finally {
+            if (connection != null) {
+                try {
+                    releaseConnection(connection);
+                } catch (SQLException e) {
+                    logError("Error releasing SQL cursor connection", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByExtraIdentifierObjectAsync(Class<T> clazz, String extraId) {
+        return CompletableFuture.supplyAsync(() -> loadByExtraIdentifierObjectSync(clazz, extraId), dbExecutor);
+    }
+
+    /**
+     * Resolves the extra identifier inside the object query, with a sub-select on the naming table.
+     */
+    @Override
+    public <T extends StorageObject> Optional<T> loadByExtraIdentifierObjectSync(Class<T> clazz, String extraId) {
+        ensureConnected();
+        TableStatements statements = statements(clazz);
+        String naming = sanitizeIdentifier(clazz.getSimpleName() + "_StringNaming");
+        String id = dialect().quote("_id");
+        String sql = statements.selectAll + " WHERE " + id + " = (SELECT " + dialect().quote("referenced")
+                + " FROM " + naming + " WHERE " + id + " = ?)";
+
+        try {
+            prepareTable(clazz, statements.table);
+            return withConnection(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, extraId.toLowerCase(Locale.ENGLISH));
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return rs.next() ? Optional.ofNullable(readRow(rs, 1, clazz)) : Optional.<T>empty();
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            if (!dialect().isMissingTable(e)) {
+                logError("Error loading object of extra identifier " + extraId + " from " + statements.table, e);
+            }
+        }
+        return Optional.empty();
     }
 
     @Override
@@ -202,17 +839,21 @@ public abstract class SQLDatabase extends StorageDatabase {
         ensureConnected();
         String table = sanitizeIdentifier(clazz.getSimpleName() + "_StringNaming");
         String key = extraId.toLowerCase(Locale.ENGLISH);
-        String sql = "SELECT `referenced` FROM " + table + " WHERE `_id` = ?";
+        String sql = "SELECT " + dialect().quote("referenced") + " FROM " + table + " WHERE " + dialect().quote("_id") + " = ?";
 
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, key);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return Optional.of(new ReferencedObject(extraId, rs.getString("referenced")));
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setString(1, key);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return rs.next()
+                                ? Optional.of(new ReferencedObject(extraId, rs.getString("referenced")))
+                                : Optional.<ReferencedObject>empty();
+                    }
                 }
-            }
+            });
         } catch (SQLException e) {
-            if (e.getErrorCode() != 1146 && !"42S02".equals(e.getSQLState())) {
+            if (!dialect().isMissingTable(e)) {
                 logError("Error loading extra identifier " + extraId, e);
             }
         }
@@ -227,58 +868,129 @@ public abstract class SQLDatabase extends StorageDatabase {
     @Override
     public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String id) {
         ensureConnected();
-        String table = sanitizeIdentifier(clazz.getSimpleName());
-        String sql = "DELETE FROM " + table + " WHERE `_id` = ?";
-        try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-            stmt.setString(1, id);
-            stmt.executeUpdate();
+        deleted(clazz);
+        try {
+            withWriteConnection(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(statements(clazz).deleteById)) {
+                    stmt.setString(1, id);
+                    return stmt.executeUpdate();
+                }
+            });
         } catch (SQLException e) {
-            if (e.getErrorCode() != 1146 && !"42S02".equals(e.getSQLState())) {
+            if (!dialect().isMissingTable(e)) {
                 logError("Error deleting object " + id, e);
             }
         }
     }
 
-    private String extractIdentifier(StorageObject obj) {
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (var field : c.getDeclaredFields()) {
-                if (field.isAnnotationPresent(StorageIdentifier.class)) {
-                    field.setAccessible(true);
-                    try {
-                        Object val = field.get(obj);
-                        return val != null ? val.toString() : null;
-                    } catch (Exception e) {
-                        logError("Failed to extract identifier", e);
-                        return null;
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return CompletableFuture.runAsync(() -> deleteByIdsSync(clazz, identifiers), dbExecutor);
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        if (identifiers.isEmpty()) return;
+        ensureConnected();
+        deleted(clazz);
+        TableStatements sql = statements(clazz);
+        String table = sql.table;
+
+        try {
+            withWriteConnection(connection -> {
+                for (List<String> chunk : chunks(identifiers)) {
+                    try (PreparedStatement stmt = connection.prepareStatement(sql.deleteByIds(chunk.size()))) {
+                        bindIdentifiers(stmt, chunk);
+                        stmt.executeUpdate();
+                    } catch (SQLException e) {
+                        if (dialect().isMissingTable(e)) throw e;
+                        logError("Error deleting " + chunk.size() + " objects from " + table, e);
                     }
                 }
+                return null;
+            });
+        } catch (SQLException e) {
+            if (!dialect().isMissingTable(e)) {
+                logError("Error deleting objects from " + table, e);
             }
         }
-        return null;
     }
 
-    private Set<String> extractExtraIdentifier(StorageObject obj) {
-        Set<String> extras = new HashSet<>();
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (var field : c.getDeclaredFields()) {
-                if (field.isAnnotationPresent(StorageExtraIdentifier.class)) {
-                    field.setAccessible(true);
-                    try {
-                        Object val = field.get(obj);
-                        if (val != null) extras.add(val.toString());
-                    } catch (Exception e) {
-                        logError("Failed to extract extra identifier", e);
-                    }
-                }
-            }
+    private static List<List<String>> chunks(Collection<String> identifiers) {
+        List<String> all = new ArrayList<>(new LinkedHashSet<>(identifiers));
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < all.size(); i += BULK_CHUNK_SIZE) {
+            chunks.add(all.subList(i, Math.min(all.size(), i + BULK_CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    private void bindIdentifiers(PreparedStatement stmt, List<String> identifiers) throws SQLException {
+        if (dialect().arrayParameters()) {
+            stmt.setArray(1, stmt.getConnection().createArrayOf("varchar", identifiers.toArray()));
+            return;
+        }
+        for (int i = 0; i < identifiers.size(); i++) {
+            stmt.setString(i + 1, identifiers.get(i));
         }
-        return extras;
     }
 
-    private static String sanitizeIdentifier(String s) {
+    private String sanitizeIdentifier(String s) {
         if (s == null) throw new IllegalArgumentException("Identifier null");
-        String cleaned = s.replaceAll("[^A-Za-z0-9_]", "_");
-        return "`" + cleaned + "`";
+        return dialect().quote(s);
+    }
+
+    /**
+     * Statements of one class, built once in the dialect of the database.
+     * Identifier lists use {@code = ANY(?)} when the dialect binds arrays, so every list size shares one statement,
+     * otherwise the statement of every list size is kept.
+     */
+    private static final class TableStatements {
+        final SqlDialect dialect;
+        final String table;
+        final String selectColumns;
+        final String upsert;
+        final String selectById;
+        final String selectAll;
+        final String deleteById;
+
+        private final String id;
+        private final Map<Integer, String> selectByIds = new ConcurrentHashMap<>();
+        private final Map<Integer, String> deleteByIds = new ConcurrentHashMap<>();
+
+        TableStatements(SqlDialect dialect, String table, TypedTable typed) {
+            this.dialect = dialect;
+            this.table = table;
+            this.id = dialect.quote("_id");
+
+            if (typed != null) {
+                this.selectColumns = typed.selectColumns;
+                this.upsert = typed.upsertSql;
+            } else {
+                String json = dialect.quote("json_data");
+                String payload = dialect.quote("payload_data");
+                this.selectColumns = json + ", " + payload;
+                this.upsert = dialect.upsert(table, List.of(id, json, payload), List.of("?", dialect.documentParameter(), "?"));
+            }
+            this.selectAll = "SELECT " + selectColumns + " FROM " + table;
+            this.selectById = selectAll + " WHERE " + id + " = ?";
+            this.deleteById = "DELETE FROM " + table + " WHERE " + id + " = ?";
+        }
+
+        String selectByIds(int amount) {
+            return selectByIds.computeIfAbsent(dialect.arrayParameters() ? 0 : amount,
+                    k -> "SELECT " + id + ", " + selectColumns + " FROM " + table + " WHERE " + identifiers(k));
+        }
+
+        String deleteByIds(int amount) {
+            return deleteByIds.computeIfAbsent(dialect.arrayParameters() ? 0 : amount,
+                    k -> "DELETE FROM " + table + " WHERE " + identifiers(k));
+        }
+
+        private String identifiers(int amount) {
+            if (dialect.arrayParameters()) return id + " = ANY(?)";
+            return id + " IN (" + String.join(", ", Collections.nCopies(amount, "?")) + ")";
+        }
     }
 
     public abstract Connection getConnection() throws SQLException;
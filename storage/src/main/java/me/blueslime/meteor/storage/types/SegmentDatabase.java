@@ -0,0 +1,480 @@
+package me.blueslime.meteor.storage.types;
+
+import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+import me.blueslime.meteor.storage.references.ReferencedObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Local database storing every class in append-only segment files, a faster alternative to {@link YamlDatabase}.
+ * <p>
+ * Objects are kept as binary payloads in {@code <root>/<ClassName>/<segment>.seg} and located through an
+ * in-memory index rebuilt when the class is first used, so reads are a single positional read and writes a
+ * single append. Appends are flushed to the disk in batches every {@link SegmentDatabaseConfig#getSyncInterval()},
+ * and full segments are compacted in the background once enough of them is taken by stale records.
+ * <p>
+ * Existing YAML folders are imported with {@link #importYaml(File, Collection)}.
+ */
+@SuppressWarnings("unused")
+public class SegmentDatabase extends StorageDatabase {
+
+    private final Map<Class<?>, SegmentLog> logs = new ConcurrentHashMap<>();
+
+    private final File rootFolder;
+    private final SegmentDatabaseConfig config;
+    private final ExecutorService executor;
+    private ScheduledExecutorService maintenance;
+
+    /**
+     * @param rootFolder Root folder for storage
+     */
+    public SegmentDatabase(File rootFolder) {
+        this(rootFolder, SegmentDatabaseConfig.builder());
+    }
+
+    public SegmentDatabase(File rootFolder, SegmentDatabaseConfig config) {
+        this.rootFolder = rootFolder;
+        this.config = config;
+        this.executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Override
+    public synchronized void connect() {
+        if (!rootFolder.exists()) {
+            if (rootFolder.mkdirs()) {
+                getLogger().info("Created root storage folder: " + rootFolder.getName());
+            }
+        }
+        if (maintenance != null) return;
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SegmentDatabase-Maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Duration sync = config.getSyncInterval();
+        if (sync != null && !sync.isZero() && !sync.isNegative()) {
+            maintenance.scheduleWithFixedDelay(this::syncAll, sync.toMillis(), sync.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        Duration compaction = config.getCompactionInterval();
+        if (compaction != null && !compaction.isZero() && !compaction.isNegative()) {
+            maintenance.scheduleWithFixedDelay(this::compactAll, compaction.toMillis(), compaction.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void closeConnection() {
+        if (maintenance != null) {
+            maintenance.shutdown();
+            try {
+                if (!maintenance.awaitTermination(10, TimeUnit.SECONDS)) maintenance.shutdownNow();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            maintenance = null;
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Map.Entry<Class<?>, SegmentLog> entry : logs.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                logError("Failed to close segments of " + entry.getKey().getSimpleName(), e);
+            }
+        }
+        logs.clear();
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return queuedTasks(executor);
+    }
+
+    /**
+     * Flushes every write appended so far to the disk, without waiting for the next sync interval.
+     */
+    public void sync() {
+        syncAll();
+    }
+
+    /**
+     * Compacts the full segments of every class whose stale records exceed the configured threshold.
+     */
+    public void compact() {
+        compactAll();
+    }
+
+    private void syncAll() {
+        for (Map.Entry<Class<?>, SegmentLog> entry : logs.entrySet()) {
+            try {
+                entry.getValue().sync();
+            } catch (IOException e) {
+                logError("Failed to sync segments of " + entry.getKey().getSimpleName(), e);
+            }
+        }
+    }
+
+    private void compactAll() {
+        for (Map.Entry<Class<?>, SegmentLog> entry : logs.entrySet()) {
+            SegmentLog log = entry.getValue();
+            if (log.garbageRatio() < config.getCompactionThreshold()) continue;
+            try {
+                int removed = log.compact();
+                if (removed > 0) {
+                    getLogger().info("Compacted " + removed + " segments of " + entry.getKey().getSimpleName());
+                }
+            } catch (IOException e) {
+                logError("Failed to compact segments of " + entry.getKey().getSimpleName(), e);
+            }
+        }
+    }
+
+    protected void ensureConnected() {
+        if (!rootFolder.exists()) rootFolder.mkdirs();
+    }
+
+    private SegmentLog log(Class<?> clazz) {
+        SegmentLog log = logs.get(clazz);
+        if (log != null) return log;
+
+        ensureConnected();
+        return logs.computeIfAbsent(clazz, key -> {
+            try {
+                return SegmentLog.open(
+                    new File(rootFolder, key.getSimpleName()).toPath(),
+                    config.getMaxSegmentSize(),
+                    isSyncEveryWrite(),
+                    this::logError
+                );
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open segments of " + key.getSimpleName(), e);
+            }
+        });
+    }
+
+    private boolean isSyncEveryWrite() {
+        Duration sync = config.getSyncInterval();
+        return sync == null || sync.isZero() || sync.isNegative();
+    }
+
+    @Override
+    public CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj) {
+        return CompletableFuture.runAsync(() -> saveOrUpdateSync(obj), executor);
+    }
+
+    @Override
+    public void saveOrUpdateSync(StorageObject obj) {
+        if (obj == null) return;
+        try {
+            save(obj);
+        } catch (Exception e) {
+            logError("Failed to save " + obj.getClass().getSimpleName(), e);
+        }
+    }
+
+    private void save(StorageObject obj) throws Exception {
+        ChangeTracker.Changes changes = changes(obj);
+        if (changes != null && changes.isUnchanged()) return;
+
+        prepare(obj).apply();
+        saved(obj, changes);
+    }
+
+    /**
+     * Encodes an object into the record appended to the segments of its class.
+     */
+    private PendingRecord prepare(StorageObject obj) {
+        String id = mapper().extractIdentifier(obj);
+
+        if (id == null || id.isEmpty()) {
+            id = UUID.randomUUID().toString();
+            mapper().injectIdentifier(obj, id);
+        }
+
+        Set<String> extras = new HashSet<>();
+        for (String extra : mapper().extractExtraIdentifiers(obj)) {
+            if (extra != null) extras.add(extra.toLowerCase(Locale.ENGLISH));
+        }
+
+        return new PendingRecord(log(obj.getClass()), id, extras, mapper().toPayload(obj));
+    }
+
+    @Override
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        Exception failure = null;
+        int failed = 0;
+        for (StorageObject obj : objects) {
+            if (obj == null) continue;
+            try {
+                save(obj);
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+                failed++;
+            }
+        }
+        if (failure != null) {
+            throw writeFailure("Failed to save " + failed + " of " + objects.size() + " objects", failure);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAllAsync(Collection<? extends StorageObject> objects) {
+        return CompletableFuture.runAsync(() -> saveAllSync(objects), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        return CompletableFuture.supplyAsync(() -> commitSync(unit), executor);
+    }
+
+    /**
+     * Encodes every saved object before anything is appended, so a unit that can not be encoded writes nothing,
+     * then appends the unit and flushes it to the disk before returning.
+     */
+    @Override
+    public boolean commitSync(UnitOfWork unit) {
+        if (unit.isEmpty()) return true;
+
+        List<PendingRecord> records = new ArrayList<>(unit.size());
+        try {
+            for (UnitOfWork.Operation operation : unit.getOperations()) {
+                if (operation instanceof UnitOfWork.Save save) {
+                    records.add(prepare(save.object()));
+                } else if (operation instanceof UnitOfWork.Delete delete) {
+                    records.add(new PendingRecord(log(delete.type()), delete.identifier(), Set.of(), null));
+                }
+            }
+        } catch (Exception e) {
+            logError("Failed to encode unit of " + unit.size() + " operations, nothing was written", e);
+            return false;
+        }
+
+        try {
+            for (PendingRecord record : records) {
+                record.apply();
+            }
+            for (PendingRecord record : records) {
+                record.log().sync();
+            }
+            committed(unit);
+            return true;
+        } catch (Exception e) {
+            logError("Failed to append unit of " + unit.size() + " operations", e);
+            return false;
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<T>> loadByIdAsync(Class<T> clazz, String id) {
+        return CompletableFuture.supplyAsync(() -> loadByIdSync(clazz, id), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<T> loadByIdSync(Class<T> clazz, String id) {
+        try {
+            byte[] payload = log(clazz).get(id);
+            if (payload == null) return Optional.empty();
+            return Optional.ofNullable(tracked(mapper().fromPayload(payload, clazz)));
+        } catch (Exception e) {
+            logError("Failed to load " + clazz.getSimpleName() + " " + id, e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        Map<String, T> results = new HashMap<>();
+        for (String identifier : identifiers) {
+            loadByIdSync(clazz, identifier).ifPresent(obj -> results.put(identifier, obj));
+        }
+        return results;
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Map<String, T>> loadByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return CompletableFuture.supplyAsync(() -> loadByIdsSync(clazz, identifiers), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdAsync(Class<T> clazz, String id) {
+        return CompletableFuture.runAsync(() -> deleteByIdSync(clazz, id), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String id) {
+        deleted(clazz);
+        try {
+            log(clazz).delete(id);
+        } catch (Exception e) {
+            logError("Failed to delete " + clazz.getSimpleName() + " " + id, e);
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        for (String identifier : identifiers) {
+            deleteByIdSync(clazz, identifier);
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Void> deleteByIdsAsync(Class<T> clazz, Collection<String> identifiers) {
+        return CompletableFuture.runAsync(() -> deleteByIdsSync(clazz, identifiers), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Set<T>> loadAllAsync(Class<T> clazz) {
+        return CompletableFuture.supplyAsync(() -> loadAllSync(clazz), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
+        try (Stream<T> stream = streamAll(clazz)) {
+            return stream.collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    /**
+     * Walks a snapshot of the identifiers stored when the stream is created, objects deleted meanwhile are skipped.
+     */
+    @Override
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
+        SegmentLog log;
+        try {
+            log = log(clazz);
+        } catch (Exception e) {
+            logError("Failed to open segments of " + clazz.getSimpleName(), e);
+            return Stream.empty();
+        }
+
+        Iterator<String> ids = new ArrayList<>(log.identifiers()).iterator();
+        LazyIterator<T> iterator = new LazyIterator<>() {
+            @Override
+            protected T fetchNext() {
+                while (ids.hasNext()) {
+                    String id = ids.next();
+                    try {
+                        byte[] payload = log.get(id);
+                        if (payload == null) continue;
+                        T obj = tracked(mapper().fromPayload(payload, clazz));
+                        if (obj != null) return obj;
+                    } catch (Exception e) {
+                        logError("Skipping corrupt record " + id + " of " + clazz.getSimpleName(), e);
+                    }
+                }
+                return null;
+            }
+        };
+        return lazyStream(iterator, () -> {});
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        return CompletableFuture.supplyAsync(() -> querySync(clazz, query), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String ex) {
+        return CompletableFuture.supplyAsync(() -> loadByExtraIdentifierSync(clazz, ex), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<ReferencedObject> loadByExtraIdentifierSync(Class<T> clazz, String extraIdentifier) {
+        try {
+            String realId = log(clazz).resolveExtra(extraIdentifier.toLowerCase(Locale.ENGLISH));
+            return realId == null ? Optional.empty() : Optional.of(new ReferencedObject(extraIdentifier, realId));
+        } catch (Exception e) {
+            logError("Failed to resolve " + extraIdentifier + " of " + clazz.getSimpleName(), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Copies every stored object of the given classes from another database into this one.
+     * Objects that fail to save are logged once per class and not counted.
+     *
+     * @return amount of objects imported
+     */
+    public int importFrom(StorageDatabase source, Collection<Class<? extends StorageObject>> classes) {
+        int imported = 0;
+        for (Class<? extends StorageObject> clazz : classes) {
+            Exception failure = null;
+            int failed = 0;
+            try (Stream<? extends StorageObject> stream = source.streamAll(clazz)) {
+                Iterator<? extends StorageObject> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    StorageObject obj = iterator.next();
+                    if (obj == null) continue;
+                    try {
+                        save(obj);
+                        imported++;
+                    } catch (Exception e) {
+                        if (failure == null) {
+                            failure = e;
+                        } else {
+                            failure.addSuppressed(e);
+                        }
+                        failed++;
+                    }
+                }
+            }
+            if (failure != null) {
+                logError("Failed to import " + failed + " objects of " + clazz.getSimpleName(), failure);
+            }
+        }
+        syncAll();
+        return imported;
+    }
+
+    /**
+     * Imports the objects of the given classes from the folders of a {@link YamlDatabase}.
+     * The YAML files are only read, so the folder may be the root folder of this database.
+     *
+     * @return amount of objects imported
+     */
+    public int importYaml(File yamlRoot, Collection<Class<? extends StorageObject>> classes) {
+        YamlDatabase yaml = new YamlDatabase(yamlRoot);
+        try {
+            return importFrom(yaml, classes);
+        } finally {
+            yaml.closeConnection();
+        }
+    }
+
+    /**
+     * Record ready to be appended, a null payload deletes the identifier.
+     */
+    private record PendingRecord(SegmentLog log, String id, Set<String> extras, byte[] payload) {
+
+        void apply() throws IOException {
+            if (payload == null) {
+                log.delete(id);
+            } else {
+                log.put(id, extras, payload);
+            }
+        }
+    }
+}
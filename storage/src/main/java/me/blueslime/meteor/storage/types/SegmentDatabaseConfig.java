@@ -0,0 +1,68 @@
+package me.blueslime.meteor.storage.types;
+
+import java.time.Duration;
+
+public class SegmentDatabaseConfig {
+    private Duration syncInterval = Duration.ofMillis(200);
+    private long maxSegmentSize = 64L * 1024 * 1024;
+    private Duration compactionInterval = Duration.ofMinutes(5);
+    private double compactionThreshold = 0.5;
+
+    private SegmentDatabaseConfig() {
+
+    }
+
+    public static SegmentDatabaseConfig builder() {
+        return new SegmentDatabaseConfig();
+    }
+
+    public Duration getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * Interval between the fsync calls covering every write appended since the previous one.
+     * Writes are in the OS page cache as soon as they return, so a process crash loses nothing, a power loss
+     * at most one interval. A zero interval syncs every write before it returns.
+     */
+    public SegmentDatabaseConfig setSyncInterval(Duration syncInterval) {
+        this.syncInterval = syncInterval;
+        return this;
+    }
+
+    public long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    /**
+     * Size in bytes after which writes continue in a new segment file, only full segments are compacted.
+     */
+    public SegmentDatabaseConfig setMaxSegmentSize(long maxSegmentSize) {
+        this.maxSegmentSize = Math.max(1024, maxSegmentSize);
+        return this;
+    }
+
+    public Duration getCompactionInterval() {
+        return compactionInterval;
+    }
+
+    /**
+     * Interval between the checks deciding whether full segments are compacted, zero disables compaction.
+     */
+    public SegmentDatabaseConfig setCompactionInterval(Duration compactionInterval) {
+        this.compactionInterval = compactionInterval;
+        return this;
+    }
+
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * Fraction of the full segments taken by overwritten and deleted records that triggers a compaction.
+     */
+    public SegmentDatabaseConfig setCompactionThreshold(double compactionThreshold) {
+        this.compactionThreshold = Math.min(1.0, Math.max(0.0, compactionThreshold));
+        return this;
+    }
+}
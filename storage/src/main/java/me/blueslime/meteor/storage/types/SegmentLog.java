@@ -0,0 +1,433 @@
+package me.blueslime.meteor.storage.types;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the objects of one class, used by {@link SegmentDatabase}.
+ * <p>
+ * Records are appended to numbered segment files and located through an in-memory index from identifier
+ * to file offset, which is rebuilt by scanning the segments when the log is opened. Every record is
+ * {@code [length][crc32c][type][id][extra identifiers][payload]}: a record that is torn or fails its checksum
+ * ends the scan, and at the end of the newest segment it is truncated away.
+ * <p>
+ * Overwritten and deleted records stay in their segment until a compaction copies the live records of the
+ * full segments into the newest one and deletes them.
+ */
+final class SegmentLog implements Closeable {
+
+    private static final String EXTENSION = ".seg";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = Integer.MAX_VALUE - HEADER_SIZE;
+    private static final int READ_ATTEMPTS = 3;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final Map<String, String> extras = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> extrasById = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+
+    private final Path folder;
+    private final long maxSegmentSize;
+    private final boolean syncEveryWrite;
+    private final BiConsumer<String, Exception> errors;
+
+    private Segment active;
+
+    private SegmentLog(Path folder, long maxSegmentSize, boolean syncEveryWrite, BiConsumer<String, Exception> errors) {
+        this.folder = folder;
+        this.maxSegmentSize = maxSegmentSize;
+        this.syncEveryWrite = syncEveryWrite;
+        this.errors = errors;
+    }
+
+    /**
+     * Opens the log stored in a folder, recovering its index from the segment files.
+     *
+     * @param errors receives corrupted records found while recovering
+     */
+    static SegmentLog open(Path folder, long maxSegmentSize, boolean syncEveryWrite, BiConsumer<String, Exception> errors) throws IOException {
+        Files.createDirectories(folder);
+        SegmentLog log = new SegmentLog(folder, maxSegmentSize, syncEveryWrite, errors);
+
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    ids.add(Long.parseLong(name.substring(0, name.length() - EXTENSION.length())));
+                } catch (NumberFormatException ignored) {
+                    // Not a segment
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (int i = 0; i < ids.size(); i++) {
+            Segment segment = log.openSegment(ids.get(i));
+            log.recover(segment, i == ids.size() - 1);
+        }
+        log.active = log.segments.isEmpty() ? log.openSegment(1) : log.segments.lastEntry().getValue();
+        return log;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    Set<String> identifiers() {
+        return index.keySet();
+    }
+
+    String resolveExtra(String extraLower) {
+        return extras.get(extraLower);
+    }
+
+    /**
+     * Payload stored for an identifier, or null when it is not stored.
+     */
+    byte[] get(String id) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            Location location = index.get(id);
+            if (location == null) return null;
+            try {
+                Record record = read(location.segment(), location.offset());
+                if (record == null) throw new IOException("Corrupted record of " + id + " in " + location.segment().path);
+                return record.payload();
+            } catch (ClosedChannelException e) {
+                // The segment was compacted while reading, the index already points to the new location
+                if (attempt == READ_ATTEMPTS) throw e;
+            }
+        }
+    }
+
+    void put(String id, Set<String> extraLowers, byte[] payload) throws IOException {
+        Location location;
+        synchronized (writeLock) {
+            location = append(PUT, id, extraLowers, payload);
+            discard(index.put(id, location));
+            updateExtras(id, extraLowers);
+        }
+        if (syncEveryWrite) force(location.segment());
+    }
+
+    boolean delete(String id) throws IOException {
+        Location tombstone;
+        synchronized (writeLock) {
+            if (!index.containsKey(id)) return false;
+            tombstone = append(DELETE, id, Set.of(), new byte[0]);
+            discard(tombstone);
+            discard(index.remove(id));
+            updateExtras(id, Set.of());
+        }
+        if (syncEveryWrite) force(tombstone.segment());
+        return true;
+    }
+
+    /**
+     * Flushes every segment written since the previous call to the disk, segments closed by a compaction are skipped.
+     */
+    void sync() throws IOException {
+        for (Segment segment : segments.values()) {
+            if (segment.dirty && segment.channel.isOpen()) {
+                segment.dirty = false;
+                force(segment);
+            }
+        }
+    }
+
+    /**
+     * Flushes a segment to the disk. A segment is only closed by a compaction once it is full,
+     * and it was flushed when the log rolled to the next one, so a closed segment is already on the disk.
+     */
+    private static void force(Segment segment) throws IOException {
+        try {
+            segment.channel.force(false);
+        } catch (ClosedChannelException ignored) {
+            // Compacted after it was flushed
+        }
+    }
+
+    /**
+     * Fraction of the full segments taken by records that are no longer live.
+     */
+    double garbageRatio() {
+        long size = 0, dead = 0;
+        for (Segment segment : sealed()) {
+            size += segment.size.get();
+            dead += segment.dead.get();
+        }
+        return size == 0 ? 0.0 : (double) dead / size;
+    }
+
+    /**
+     * Copies the live records of every full segment into the newest segments and deletes the full ones.
+     * Segments are deleted oldest first, so a crash in the middle never uncovers a record older than a deletion.
+     *
+     * @return amount of segments deleted
+     */
+    int compact() throws IOException {
+        List<Segment> sealed = sealed();
+        if (sealed.isEmpty()) return 0;
+
+        for (Segment segment : sealed) {
+            long offset = 0;
+            long end = segment.size.get();
+            while (offset < end) {
+                Record record = read(segment, offset);
+                if (record == null) break;
+
+                if (record.type() == PUT) {
+                    synchronized (writeLock) {
+                        Location current = index.get(record.id());
+                        if (current != null && current.segment() == segment && current.offset() == offset) {
+                            index.put(record.id(), append(PUT, record.id(), record.extras(), record.payload()));
+                        }
+                    }
+                }
+                offset += record.size();
+            }
+        }
+        sync();
+
+        synchronized (writeLock) {
+            for (Segment segment : sealed) {
+                segments.remove(segment.id);
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            }
+        }
+        return sealed.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            sync();
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        }
+    }
+
+    private List<Segment> sealed() {
+        synchronized (writeLock) {
+            return new ArrayList<>(segments.headMap(active.id).values());
+        }
+    }
+
+    private void discard(Location location) {
+        if (location != null) location.segment().dead.addAndGet(location.size());
+    }
+
+    private void updateExtras(String id, Set<String> extraLowers) {
+        Set<String> previous = extraLowers.isEmpty() ? extrasById.remove(id) : extrasById.put(id, extraLowers);
+        if (previous != null) {
+            for (String extra : previous) {
+                if (!extraLowers.contains(extra)) extras.remove(extra, id);
+            }
+        }
+        for (String extra : extraLowers) {
+            extras.put(extra, id);
+        }
+    }
+
+    private Location append(byte type, String id, Set<String> extraLowers, byte[] payload) throws IOException {
+        ByteBuffer record = encode(type, id, extraLowers, payload);
+        if (active.size.get() > 0 && active.size.get() + record.remaining() > maxSegmentSize) {
+            roll();
+        }
+
+        Segment segment = active;
+        long offset = segment.size.get();
+        int size = record.remaining();
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += segment.channel.write(record, position);
+        }
+        segment.size.addAndGet(size);
+        segment.dirty = true;
+        return new Location(segment, offset, size);
+    }
+
+    private void roll() throws IOException {
+        Segment previous = active;
+        active = openSegment(previous.id + 1);
+        previous.dirty = false;
+        previous.channel.force(false);
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        Path path = folder.resolve(String.format("%08d%s", id, EXTENSION));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, channel.size());
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Rebuilds the index from the records of a segment, in the order they were written.
+     */
+    private void recover(Segment segment, boolean newest) throws IOException {
+        long offset = 0;
+        long end = segment.size.get();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path), 1 << 16))) {
+            while (offset < end) {
+                Record record = decode(in, end - offset);
+                if (record == null) break;
+
+                Location location = new Location(segment, offset, record.size());
+                if (record.type() == PUT) {
+                    discard(index.put(record.id(), location));
+                    updateExtras(record.id(), record.extras());
+                } else {
+                    discard(location);
+                    discard(index.remove(record.id()));
+                    updateExtras(record.id(), Set.of());
+                }
+                offset += record.size();
+            }
+        }
+        if (offset == end) return;
+
+        if (newest) {
+            errors.accept("Truncated " + (end - offset) + " bytes of an incomplete write at the end of " + segment.path, null);
+            segment.channel.truncate(offset);
+            segment.channel.force(false);
+            segment.size.set(offset);
+        } else {
+            errors.accept("Skipped " + (end - offset) + " corrupted bytes of " + segment.path, null);
+            segment.dead.addAndGet(end - offset);
+        }
+    }
+
+    private Record read(Segment segment, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(segment.channel, header, offset);
+        header.flip();
+        int length = header.getInt();
+        int crc = header.getInt();
+        if (length <= 0 || offset + HEADER_SIZE + length > segment.size.get()) return null;
+
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(segment.channel, body, offset + HEADER_SIZE);
+        return parse(body.array(), crc);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new EOFException();
+        }
+    }
+
+    /**
+     * Reads the next record of a stream, null when the remaining bytes do not hold a valid record.
+     */
+    private static Record decode(DataInputStream in, long remaining) throws IOException {
+        if (remaining < HEADER_SIZE) return null;
+        int length = in.readInt();
+        int crc = in.readInt();
+        if (length <= 0 || length > remaining - HEADER_SIZE || length > MAX_RECORD_SIZE) return null;
+
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return parse(body, crc);
+    }
+
+    private static Record parse(byte[] body, int crc) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(body);
+        if ((int) checksum.getValue() != crc) return null;
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            byte type = in.readByte();
+            if (type != PUT && type != DELETE) return null;
+            String id = readString(in);
+
+            int extrasCount = in.readUnsignedShort();
+            Set<String> extraLowers = extrasCount == 0 ? Set.of() : new HashSet<>(extrasCount);
+            for (int i = 0; i < extrasCount; i++) {
+                extraLowers.add(readString(in));
+            }
+
+            byte[] payload = in.readAllBytes();
+            return new Record(type, id, extraLowers, payload, HEADER_SIZE + body.length);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer encode(byte type, String id, Set<String> extraLowers, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + id.length() + 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        writeString(out, id);
+        out.writeShort(extraLowers.size());
+        for (String extra : extraLowers) {
+            writeString(out, extra);
+        }
+        out.write(payload);
+
+        byte[] body = bytes.toByteArray();
+        CRC32C checksum = new CRC32C();
+        checksum.update(body);
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        record.putInt(body.length);
+        record.putInt((int) checksum.getValue());
+        record.put(body);
+        return record.flip();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IOException("Identifier longer than 65535 bytes");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record Location(Segment segment, long offset, int size) {
+
+    }
+
+    private record Record(byte type, String id, Set<String> extras, byte[] payload, int size) {
+
+    }
+
+    private static final class Segment {
+        final long id;
+        final Path path;
+        final FileChannel channel;
+        final AtomicLong size;
+        final AtomicLong dead = new AtomicLong();
+        volatile boolean dirty = false;
+
+        Segment(long id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = new AtomicLong(size);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package me.blueslime.meteor.storage.types;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * SQL variants spoken by {@link SQLDatabase} implementations.
+ * <p>
+ * A dialect decides identifier quoting, column types, the native upsert statement and how a missing table
+ * is reported, so the statements of every class are built once with the syntax of its database.
+ */
+public enum SqlDialect {
+    /**
+     * MySQL and MariaDB: backtick quoting, {@code ON DUPLICATE KEY UPDATE}, documents in {@code LONGTEXT}.
+     */
+    MYSQL,
+    /**
+     * PostgreSQL: double quote quoting, {@code ON CONFLICT DO UPDATE}, documents in {@code JSONB}
+     * and identifier lists bound as a single array parameter.
+     */
+    POSTGRESQL,
+    /**
+     * SQLite: double quote quoting, {@code ON CONFLICT DO UPDATE}, batches written inside one transaction.
+     */
+    SQLITE;
+
+    private static final int MAX_IDENTIFIER_LENGTH = 63;
+
+    String quote(String name) {
+        String cleaned = name.replaceAll("[^A-Za-z0-9_]", "_");
+        return this == MYSQL ? "`" + cleaned + "`" : "\"" + cleaned + "\"";
+    }
+
+    /**
+     * Name of a quoted identifier as stored in the database metadata.
+     */
+    String unquote(String quoted) {
+        return quoted.substring(1, quoted.length() - 1);
+    }
+
+    String createTable(String table, String definitions) {
+        String sql = "CREATE TABLE IF NOT EXISTS " + table + " (" + definitions + ")";
+        return this == MYSQL ? sql + " ENGINE=InnoDB DEFAULT CHARSET=utf8mb4" : sql;
+    }
+
+    /**
+     * Column type of the JSON documents of {@link SQLDatabase}.
+     */
+    String documentType() {
+        return switch (this) {
+            case MYSQL -> "LONGTEXT";
+            case POSTGRESQL -> "JSONB";
+            case SQLITE -> "TEXT";
+        };
+    }
+
+    String binaryType() {
+        return switch (this) {
+            case MYSQL -> "LONGBLOB";
+            case POSTGRESQL -> "BYTEA";
+            case SQLITE -> "BLOB";
+        };
+    }
+
+    /**
+     * Placeholder of a JSON document parameter bound as text.
+     */
+    String documentParameter() {
+        return this == POSTGRESQL ? "CAST(? AS JSONB)" : "?";
+    }
+
+    String columnType(TypedTable.Kind kind) {
+        return switch (this) {
+            case MYSQL -> kind.definition;
+            case POSTGRESQL -> switch (kind) {
+                case STRING -> "TEXT";
+                case SHORT_STRING -> "VARCHAR(255)";
+                case INT -> "INTEGER";
+                case LONG -> "BIGINT";
+                case DOUBLE -> "DOUBLE PRECISION";
+                case FLOAT -> "REAL";
+                case BOOLEAN -> "BOOLEAN";
+                case DECIMAL -> "NUMERIC(65,30)";
+                case JSON -> "JSONB";
+            };
+            case SQLITE -> switch (kind) {
+                case STRING, SHORT_STRING, JSON -> "TEXT";
+                case INT, LONG, BOOLEAN -> "INTEGER";
+                case DOUBLE, FLOAT -> "REAL";
+                case DECIMAL -> "NUMERIC";
+            };
+        };
+    }
+
+    String parameter(TypedTable.Kind kind) {
+        return kind == TypedTable.Kind.JSON ? documentParameter() : "?";
+    }
+
+    /**
+     * Insert or update statement of a row keyed by its first column.
+     *
+     * @param table      quoted table name
+     * @param columns    quoted column names, the first one is the primary key
+     * @param parameters placeholder of every column
+     */
+    String upsert(String table, List<String> columns, List<String> parameters) {
+        String key = columns.get(0);
+        String insert = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" + String.join(", ", parameters) + ")";
+
+        StringJoiner updates = new StringJoiner(", ");
+        for (String column : columns.subList(1, columns.size())) {
+            updates.add(this == MYSQL
+                    ? column + " = VALUES(" + column + ")"
+                    : column + " = EXCLUDED." + column);
+        }
+
+        if (this == MYSQL) {
+            return insert + " ON DUPLICATE KEY UPDATE " + (updates.length() == 0 ? key + " = " + key : updates.toString());
+        }
+        return insert + " ON CONFLICT (" + key + ") " + (updates.length() == 0 ? "DO NOTHING" : "DO UPDATE SET " + updates);
+    }
+
+    boolean isMissingTable(SQLException e) {
+        return switch (this) {
+            case MYSQL -> e.getErrorCode() == 1146 || "42S02".equals(e.getSQLState());
+            case POSTGRESQL -> "42P01".equals(e.getSQLState());
+            case SQLITE -> e.getMessage() != null && e.getMessage().contains("no such table");
+        };
+    }
+
+    /**
+     * Expression reading a top-level property of a JSON document column as a value of the given kind.
+     * Longs written as {@code {"$numberLong": "..."}} by the extended JSON writer are unwrapped.
+     */
+    String jsonValue(String column, String key, TypedTable.Kind kind) {
+        String escaped = key.replace("'", "''");
+        return switch (this) {
+            case MYSQL -> {
+                String path = "'$.\"" + escaped.replace("\\", "\\\\").replace("\"", "\\\"");
+                String text = "JSON_UNQUOTE(JSON_EXTRACT(" + column + ", " + path + "\"'))";
+                yield switch (kind) {
+                    case LONG -> "CAST(COALESCE(JSON_UNQUOTE(JSON_EXTRACT(" + column + ", " + path + "\".\"$numberLong\"')), " + text + ") AS SIGNED)";
+                    case DECIMAL -> "CAST(" + text + " AS DECIMAL(65,30))";
+                    case BOOLEAN -> "(" + text + " = 'true')";
+                    default -> "LEFT(" + text + ", 255)";
+                };
+            }
+            case POSTGRESQL -> {
+                String text = "(" + column + " ->> '" + escaped + "')";
+                yield switch (kind) {
+                    case LONG -> "CAST(COALESCE(" + column + " -> '" + escaped + "' ->> '$numberLong', " + text + ") AS BIGINT)";
+                    case DECIMAL -> "CAST(" + text + " AS NUMERIC)";
+                    case BOOLEAN -> "CAST(" + text + " AS BOOLEAN)";
+                    default -> "LEFT(" + text + ", 255)";
+                };
+            }
+            case SQLITE -> {
+                String path = "'$.\"" + escaped.replace("\"", "\\\"");
+                String value = "json_extract(" + column + ", " + path + "\"')";
+                yield switch (kind) {
+                    case LONG -> "CAST(COALESCE(json_extract(" + column + ", " + path + "\".\"$numberLong\"'), " + value + ") AS INTEGER)";
+                    case DECIMAL -> "CAST(" + value + " AS REAL)";
+                    case BOOLEAN -> value;
+                    default -> "substr(" + value + ", 1, 255)";
+                };
+            }
+        };
+    }
+
+    /**
+     * Definition of a column computed from other columns of the row.
+     */
+    String generatedColumn(String type, String expression) {
+        return type + " GENERATED ALWAYS AS (" + expression + ") " + (this == POSTGRESQL ? "STORED" : "VIRTUAL");
+    }
+
+    /**
+     * Whether identifier lists are bound as a single array parameter, {@code = ANY(?)},
+     * so every list size shares one prepared statement.
+     */
+    boolean arrayParameters() {
+        return this == POSTGRESQL;
+    }
+
+    /**
+     * Whether batches must run inside an explicit transaction to avoid one commit per row.
+     */
+    boolean transactionalBatches() {
+        return this == SQLITE;
+    }
+
+    String indexName(String rawTable, String column) {
+        String name = "idx_" + rawTable + "_" + column;
+        return name.length() > MAX_IDENTIFIER_LENGTH ? name.substring(0, MAX_IDENTIFIER_LENGTH) : name;
+    }
+}
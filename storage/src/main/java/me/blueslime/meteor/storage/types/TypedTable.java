@@ -0,0 +1,295 @@
+package me.blueslime.meteor.storage.types;
+
+import me.blueslime.meteor.storage.mapper.ObjectMapper;
+import me.blueslime.meteor.storage.mapper.StorageProperty;
+import org.bson.Document;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Typed column layout used by {@link SQLDatabase} for classes registered with
+ * {@link SQLDatabase#registerTypedTable(Class)}.
+ * <p>
+ * Every stored property gets its own column named after its storage key: numbers, booleans and strings
+ * use native column types, nested objects, collections and maps are kept as JSON.
+ * The statements are built once per class in the {@link SqlDialect} of the database.
+ */
+final class TypedTable {
+
+    private static final String ID = "_id";
+
+    final SqlDialect dialect;
+    final String table;
+    final List<Column> columns;
+    final boolean storesIdentifier;
+
+    final String selectColumns;
+    final String upsertSql;
+    final Map<String, Column> queryColumns;
+
+    private TypedTable(SqlDialect dialect, String table, List<Column> columns, boolean storesIdentifier) {
+        this.dialect = dialect;
+        this.table = table;
+        this.columns = columns;
+        this.storesIdentifier = storesIdentifier;
+
+        Map<String, Column> queryable = new HashMap<>();
+        queryable.put(ID, new Column(dialect, ID, Kind.SHORT_STRING, false));
+        for (Column column : columns) {
+            if (column.kind != Kind.JSON) queryable.put(column.key, column);
+        }
+        this.queryColumns = Map.copyOf(queryable);
+
+        List<String> names = new ArrayList<>();
+        List<String> parameters = new ArrayList<>();
+        names.add(dialect.quote(ID));
+        parameters.add("?");
+        for (Column column : columns) {
+            names.add(column.quoted);
+            parameters.add(dialect.parameter(column.kind));
+        }
+        this.selectColumns = String.join(", ", names);
+        this.upsertSql = dialect.upsert(table, names, parameters);
+    }
+
+    static TypedTable of(ObjectMapper mapper, Class<?> clazz, SqlDialect dialect, String table) {
+        List<Column> columns = new ArrayList<>();
+        boolean storesIdentifier = false;
+        for (StorageProperty property : mapper.describe(clazz)) {
+            if (ID.equals(property.key())) {
+                storesIdentifier = true;
+                continue;
+            }
+            Kind kind = Kind.of(property.type());
+            if (property.indexed() && kind == Kind.STRING) {
+                kind = Kind.SHORT_STRING;
+            }
+            columns.add(new Column(dialect, property.key(), kind, property.indexed()));
+        }
+        return new TypedTable(dialect, table, List.copyOf(columns), storesIdentifier);
+    }
+
+    String createSql() {
+        StringJoiner definitions = new StringJoiner(", ");
+        definitions.add(dialect.quote(ID) + " VARCHAR(255) NOT NULL PRIMARY KEY");
+        for (Column column : columns) {
+            definitions.add(column.quoted + " " + dialect.columnType(column.kind));
+        }
+        return dialect.createTable(table, definitions.toString());
+    }
+
+    /**
+     * Creates the table, or adds the columns of properties added to the class since it was created.
+     * Columns of removed properties are kept.
+     */
+    void migrate(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createSql());
+
+            Set<String> existing = columnNames(connection, dialect.unquote(table));
+            for (Column column : columns) {
+                if (!existing.contains(column.name.toLowerCase(Locale.ROOT))) {
+                    stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column.quoted + " " + dialect.columnType(column.kind));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the missing indexes of the columns of {@link me.blueslime.meteor.storage.interfaces.StorageIndexed} properties.
+     */
+    void createIndexes(Connection connection) throws SQLException {
+        createIndexes(connection, dialect, table, columns);
+    }
+
+    static void createIndexes(Connection connection, SqlDialect dialect, String table, List<Column> columns) throws SQLException {
+        String rawTable = dialect.unquote(table);
+        Set<String> existing = new HashSet<>();
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(null, null, rawTable, false, false)) {
+            while (rs.next()) {
+                String name = rs.getString("INDEX_NAME");
+                if (name != null) existing.add(name.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            for (Column column : columns) {
+                if (!column.indexed) continue;
+                String name = dialect.indexName(rawTable, column.name);
+                if (existing.contains(name.toLowerCase(Locale.ROOT))) continue;
+                stmt.execute("CREATE INDEX " + dialect.quote(name) + " ON " + table + " (" + column.quoted + ")");
+            }
+        }
+    }
+
+    /**
+     * Lower case names of the columns of a table, empty when the table does not exist.
+     */
+    static Set<String> columnNames(Connection connection, String rawTable) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        try (ResultSet rs = connection.getMetaData().getColumns(null, null, rawTable, null)) {
+            while (rs.next()) {
+                existing.add(rs.getString("COLUMN_NAME").toLowerCase(Locale.ROOT));
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Binds every parameter of {@link #upsertSql}.
+     */
+    void bind(PreparedStatement stmt, ObjectMapper mapper, String id, Object obj) throws SQLException {
+        Document doc = mapper.toDocument(obj);
+        stmt.setString(1, id);
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            column.kind.bind(stmt, i + 2, doc.get(column.key), mapper);
+        }
+    }
+
+    /**
+     * Updates only the columns of the given storage keys of an existing row.
+     *
+     * @return updated rows, -1 when one of the keys has no column and the whole row has to be written
+     */
+    int update(Connection connection, ObjectMapper mapper, String id, Document doc, Set<String> keys) throws SQLException {
+        List<Column> changed = new ArrayList<>(keys.size());
+        StringJoiner assignments = new StringJoiner(", ");
+        for (Column column : columns) {
+            if (!keys.contains(column.key)) continue;
+            changed.add(column);
+            assignments.add(column.quoted + " = " + dialect.parameter(column.kind));
+        }
+        if (changed.size() != keys.size()) return -1;
+
+        String sql = "UPDATE " + table + " SET " + assignments + " WHERE " + dialect.quote(ID) + " = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < changed.size(); i++) {
+                Column column = changed.get(i);
+                column.kind.bind(stmt, i + 1, doc.get(column.key), mapper);
+            }
+            stmt.setString(changed.size() + 1, id);
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Reads a row selected with {@link #selectColumns} starting at the given column into a document
+     * that {@link ObjectMapper#fromDocument(Class, Document)} can decode.
+     */
+    Document read(ResultSet rs, int column, ObjectMapper mapper) throws SQLException {
+        Document doc = new Document();
+        if (storesIdentifier) {
+            doc.put(ID, rs.getString(column));
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            Column col = columns.get(i);
+            doc.put(col.key, col.kind.read(rs, column + i + 1, mapper));
+        }
+        return doc;
+    }
+
+    static final class Column {
+        final String key;
+        final String name;
+        final String quoted;
+        final Kind kind;
+        final boolean indexed;
+
+        Column(SqlDialect dialect, String key, Kind kind, boolean indexed) {
+            this(dialect, key, key, kind, indexed);
+        }
+
+        Column(SqlDialect dialect, String key, String name, Kind kind, boolean indexed) {
+            this.key = key;
+            this.name = name;
+            this.quoted = dialect.quote(name);
+            this.kind = kind;
+            this.indexed = indexed;
+        }
+    }
+
+    enum Kind {
+        STRING("TEXT", Types.VARCHAR),
+        SHORT_STRING("VARCHAR(255)", Types.VARCHAR),
+        INT("INT", Types.INTEGER),
+        LONG("BIGINT", Types.BIGINT),
+        DOUBLE("DOUBLE", Types.DOUBLE),
+        FLOAT("FLOAT", Types.FLOAT),
+        BOOLEAN("BOOLEAN", Types.BOOLEAN),
+        DECIMAL("DECIMAL(65,30)", Types.DECIMAL),
+        JSON("LONGTEXT", Types.LONGVARCHAR);
+
+        final String definition;
+        final int sqlType;
+
+        Kind(String definition, int sqlType) {
+            this.definition = definition;
+            this.sqlType = sqlType;
+        }
+
+        static Kind of(Class<?> type) {
+            if (type == String.class) return STRING;
+            if (type.isEnum() || type == char.class || type == Character.class || type == java.math.BigInteger.class) return SHORT_STRING;
+            if (type == int.class || type == Integer.class || type == short.class || type == Short.class
+                    || type == byte.class || type == Byte.class) return INT;
+            if (type == long.class || type == Long.class) return LONG;
+            if (type == double.class || type == Double.class) return DOUBLE;
+            if (type == float.class || type == Float.class) return FLOAT;
+            if (type == boolean.class || type == Boolean.class) return BOOLEAN;
+            if (type == BigDecimal.class) return DECIMAL;
+            return JSON;
+        }
+
+        void bind(PreparedStatement stmt, int index, Object value, ObjectMapper mapper) throws SQLException {
+            if (value == null) {
+                stmt.setNull(index, sqlType);
+                return;
+            }
+            switch (this) {
+                case STRING, SHORT_STRING -> stmt.setString(index, value.toString());
+                case INT -> {
+                    if (value instanceof Number number) stmt.setInt(index, number.intValue());
+                    else stmt.setObject(index, value);
+                }
+                case LONG -> {
+                    if (value instanceof Number number) stmt.setLong(index, number.longValue());
+                    else stmt.setObject(index, value);
+                }
+                case DOUBLE -> {
+                    if (value instanceof Number number) stmt.setDouble(index, number.doubleValue());
+                    else stmt.setObject(index, value);
+                }
+                case FLOAT -> {
+                    if (value instanceof Number number) stmt.setFloat(index, number.floatValue());
+                    else stmt.setObject(index, value);
+                }
+                case BOOLEAN -> {
+                    if (value instanceof Boolean bool) stmt.setBoolean(index, bool);
+                    else stmt.setObject(index, value);
+                }
+                case DECIMAL -> {
+                    if (value instanceof BigDecimal decimal) stmt.setBigDecimal(index, decimal);
+                    else stmt.setObject(index, value);
+                }
+                case JSON -> stmt.setString(index, mapper.toJsonValue(value));
+            }
+        }
+
+        Object read(ResultSet rs, int index, ObjectMapper mapper) throws SQLException {
+            Object value = switch (this) {
+                case STRING, SHORT_STRING -> rs.getString(index);
+                case INT -> rs.getInt(index);
+                case LONG -> rs.getLong(index);
+                case DOUBLE -> rs.getDouble(index);
+                case FLOAT -> rs.getFloat(index);
+                case BOOLEAN -> rs.getBoolean(index);
+                case DECIMAL -> rs.getBigDecimal(index);
+                case JSON -> mapper.fromJsonValue(rs.getString(index));
+            };
+            return rs.wasNull() ? null : value;
+        }
+    }
+}
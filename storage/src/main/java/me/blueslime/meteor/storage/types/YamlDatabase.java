@@ -2,15 +2,20 @@ package me.blueslime.meteor.storage.types;
 
 import me.blueslime.meteor.platforms.api.configuration.handle.ConfigurationHandle;
 import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.database.query.StorageQuery;
+import me.blueslime.meteor.storage.database.tracking.ChangeTracker;
+import me.blueslime.meteor.storage.database.transaction.UnitOfWork;
 import me.blueslime.meteor.storage.interfaces.*;
+import me.blueslime.meteor.storage.mapper.StorageProperty;
 import me.blueslime.meteor.storage.references.ReferencedObject;
 import org.bson.Document;
 
 import java.io.*;
-import java.lang.reflect.Field;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Stream;
 
 /**
  * YamlDatabase supported
@@ -18,6 +23,16 @@ import java.util.concurrent.*;
 @SuppressWarnings({"unused", "ResultOfMethodCallIgnored"})
 public class YamlDatabase extends StorageDatabase {
 
+    /**
+     * Files read or written at the same time by the bulk operations, so large folders stay under the open files limit.
+     */
+    private static final int MAX_PARALLEL_FILES = 64;
+
+    private final Semaphore fileSlots = new Semaphore(MAX_PARALLEL_FILES);
+
+    private final Map<Class<?>, MemoryIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<String, ExtraIndex> extraIndexes = new ConcurrentHashMap<>();
+
     private final File rootFolder;
     private final ExecutorService executor;
 
@@ -36,6 +51,32 @@ public class YamlDatabase extends StorageDatabase {
                 getLogger().info("Created root storage folder: " + rootFolder.getName());
             }
         }
+        deleteTemporaryFiles();
+
+        File[] folders = rootFolder.listFiles(File::isDirectory);
+        if (folders == null) return;
+        for (File folder : folders) {
+            try {
+                extraIndex(folder.getName());
+            } catch (UncheckedIOException e) {
+                logError("Failed to load extra identifiers of " + folder.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Removes the temporary files left by saves interrupted before their rename.
+     */
+    private void deleteTemporaryFiles() {
+        File[] folders = rootFolder.listFiles(File::isDirectory);
+        if (folders == null) return;
+        for (File folder : folders) {
+            File[] temporary = folder.listFiles((dir, name) -> name.startsWith(".") && name.endsWith(".tmp"));
+            if (temporary == null) continue;
+            for (File file : temporary) {
+                file.delete();
+            }
+        }
     }
 
     @Override
@@ -46,6 +87,20 @@ public class YamlDatabase extends StorageDatabase {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+
+        for (Map.Entry<String, ExtraIndex> entry : extraIndexes.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                logError("Failed to close extra identifiers of " + entry.getKey(), e);
+            }
+        }
+        extraIndexes.clear();
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return queuedTasks(executor);
     }
 
 
@@ -53,6 +108,27 @@ public class YamlDatabase extends StorageDatabase {
         if (!rootFolder.exists()) rootFolder.mkdirs();
     }
 
+    private static File file(File folder, String id) {
+        return new File(folder, id + (id.endsWith(".yml") ? "" : ".yml"));
+    }
+
+    /**
+     * Extra identifier index of a class folder, loaded on first use.
+     */
+    private ExtraIndex extraIndex(String folderName) {
+        ExtraIndex index = extraIndexes.get(folderName);
+        if (index != null) return index;
+
+        return extraIndexes.computeIfAbsent(folderName, name -> {
+            File folder = new File(rootFolder, name);
+            try {
+                return ExtraIndex.open(folder.toPath(), id -> file(folder, id).exists(), this::logError);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load extra identifiers of " + name, e);
+            }
+        });
+    }
+
     @Override
     public CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj) {
         return CompletableFuture.runAsync(() -> saveOrUpdateSync(obj), executor);
@@ -60,39 +136,212 @@ public class YamlDatabase extends StorageDatabase {
 
     @Override
     public void saveOrUpdateSync(StorageObject obj) {
+        if (obj == null) return;
+        try {
+            save(obj);
+        } catch (IOException e) {
+            logError("Failed to save " + obj.getClass().getSimpleName(), e);
+        }
+    }
+
+    private void save(StorageObject obj) throws IOException {
         if (obj == null) return;
         ensureConnected();
 
-        Class<?> clazz = obj.getClass();
-        String id = extractIdentifier(obj);
+        ChangeTracker.Changes changes = changes(obj);
+        if (changes != null && changes.isUnchanged()) return;
+
+        write(prepare(obj));
+        saved(obj, changes);
+    }
+
+    /**
+     * Encodes an object into the document written to its file.
+     */
+    private PreparedDocument prepare(StorageObject obj) {
+        String id = mapper().extractIdentifier(obj);
 
         if (id == null || id.isEmpty()) {
             id = UUID.randomUUID().toString();
-            injectIdentifier(obj, id);
+            mapper().injectIdentifier(obj, id);
         }
 
         Document doc = mapper().toDocument(obj);
 
         doc.put("_id", id);
-        Set<String> extraIds = extractExtraIdentifier(obj);
+        Set<String> extraIds = mapper().extractExtraIdentifiers(obj);
         doc.put("_extras", extraIds);
+        return new PreparedDocument(obj.getClass(), id, doc, extraIds);
+    }
+
+    /**
+     * Dumps the document into a fresh temporary file and renames it over the object's file,
+     * so a crash in the middle of a save leaves either the previous file or the new one, never a truncated one.
+     */
+    private void write(PreparedDocument prepared) throws IOException {
+        Class<?> clazz = prepared.clazz();
+        String id = prepared.id();
+        Document doc = prepared.document();
+        Set<String> extraIds = prepared.extraIds();
 
         File folder = new File(rootFolder, clazz.getSimpleName());
         if (!folder.exists()) folder.mkdirs();
 
-        File file = new File(folder, id + (id.endsWith(".yml") ? "" : ".yml"));
-
-        ConfigurationHandle handle = getConfigurationProvider().load(file);
+        File file = file(folder, id);
+        File temporary = new File(folder, "." + file.getName() + "." + Thread.currentThread().threadId() + ".tmp");
+        Files.deleteIfExists(temporary.toPath());
 
-        for (String key : handle.getKeys(false)) {
-            handle.set(key, null);
-        }
+        ConfigurationHandle handle = getConfigurationProvider().load(temporary);
 
         writeDocumentToHandle(handle, "", doc);
 
         handle.save();
 
-        saveExtraIndices(folder, id, extraIds);
+        try {
+            replace(temporary.toPath(), file.toPath());
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary.toPath());
+            throw e;
+        }
+
+        Set<String> extraLowers = new HashSet<>();
+        for (String extra : extraIds) {
+            extraLowers.add(extra.toLowerCase(Locale.ENGLISH));
+        }
+        extraIndex(folder.getName()).set(id, extraLowers);
+
+        MemoryIndex index = indexes.get(clazz);
+        if (index != null) index.put(id, doc);
+    }
+
+    private static void replace(Path temporary, Path target) throws IOException {
+        if (!Files.exists(temporary)) throw new IOException("Configuration provider did not write " + temporary.getFileName());
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commitAsync(UnitOfWork unit) {
+        return CompletableFuture.supplyAsync(() -> commitSync(unit), executor);
+    }
+
+    /**
+     * Encodes every saved object before any file is touched, so a unit that can not be encoded writes nothing,
+     * then flushes the unit as one group where only the last operation on every object is applied.
+     * Files are replaced one by one, an I/O failure in the middle of the flush keeps the files already written.
+     */
+    @Override
+    public boolean commitSync(UnitOfWork unit) {
+        if (unit.isEmpty()) return true;
+        ensureConnected();
+
+        Map<String, Object> latest = new LinkedHashMap<>();
+        try {
+            for (UnitOfWork.Operation operation : unit.getOperations()) {
+                if (operation instanceof UnitOfWork.Save save) {
+                    PreparedDocument prepared = prepare(save.object());
+                    latest.remove(prepared.clazz().getName() + ":" + prepared.id());
+                    latest.put(prepared.clazz().getName() + ":" + prepared.id(), prepared);
+                } else if (operation instanceof UnitOfWork.Delete delete) {
+                    latest.remove(delete.type().getName() + ":" + delete.identifier());
+                    latest.put(delete.type().getName() + ":" + delete.identifier(), delete);
+                }
+            }
+        } catch (Exception e) {
+            logError("Failed to encode unit of " + unit.size() + " operations, nothing was written", e);
+            return false;
+        }
+
+        try {
+            for (Object operation : latest.values()) {
+                if (operation instanceof PreparedDocument prepared) {
+                    write(prepared);
+                } else if (operation instanceof UnitOfWork.Delete delete) {
+                    deleteByIdSync(delete.type(), delete.identifier());
+                }
+            }
+            committed(unit);
+            return true;
+        } catch (Exception e) {
+            logError("Failed to flush unit of " + unit.size() + " operations", e);
+            return false;
+        }
+    }
+
+    /**
+     * Every object is written on its own virtual thread, so files are saved in parallel.
+     */
+    @Override
+    public void saveAllSync(Collection<? extends StorageObject> objects) {
+        List<Exception> failures = inParallel(objects, this::save);
+        if (failures.isEmpty()) return;
+
+        IllegalStateException failure = writeFailure("Failed to save " + failures.size() + " of " + objects.size() + " objects", failures.get(0));
+        for (int i = 1; i < failures.size(); i++) {
+            failure.addSuppressed(failures.get(i));
+        }
+        throw failure;
+    }
+
+    /**
+     * Runs the task for every element on its own virtual thread and waits for all of them,
+     * at most {@link #MAX_PARALLEL_FILES} run at the same time across the bulk calls of this database.
+     * The shared executor is never used, so bulk calls made from one of its tasks cannot wait on the tasks queued behind it.
+     *
+     * @return failures of the task, not logged
+     */
+    private <E> List<Exception> inParallel(Collection<? extends E> elements, ElementTask<E> task) {
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (E element : elements) {
+                try {
+                    submitLimited(workers, () -> {
+                        try {
+                            task.run(element);
+                        } catch (Exception e) {
+                            failures.add(e);
+                        }
+                        return null;
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failures.add(e);
+                    break;
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Submits a task once a file slot is free, the slot is released when the task ends.
+     */
+    private <R> Future<R> submitLimited(ExecutorService workers, Callable<R> task) throws InterruptedException {
+        fileSlots.acquire();
+        try {
+            return workers.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    fileSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            fileSlots.release();
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ElementTask<E> {
+        void run(E element) throws Exception;
     }
 
     /**
@@ -112,17 +361,6 @@ public class YamlDatabase extends StorageDatabase {
         }
     }
 
-    private void saveExtraIndices(File folder, String realId, Set<String> extraIds) {
-        File indexFolder = new File(folder, ".index");
-        if (!indexFolder.exists()) indexFolder.mkdirs();
-        for (String extra : extraIds) {
-            File indexFile = new File(indexFolder, extra.toLowerCase(Locale.ENGLISH) + ".idx");
-            try (FileWriter w = new FileWriter(indexFile)) {
-                w.write(realId);
-            } catch (IOException ignored) {}
-        }
-    }
-
 
     @Override
     public <T extends StorageObject> CompletableFuture<Optional<T>> loadByIdAsync(Class<T> clazz, String id) {
@@ -133,15 +371,43 @@ public class YamlDatabase extends StorageDatabase {
     public <T extends StorageObject> Optional<T> loadByIdSync(Class<T> clazz, String id) {
         ensureConnected();
         File folder = new File(rootFolder, clazz.getSimpleName());
-        File file = new File(folder, id + (id.endsWith(".yml") ? "" : ".yml"));
+        File file = file(folder, id);
 
         if (!file.exists()) return Optional.empty();
 
+        return Optional.ofNullable(read(clazz, file));
+    }
+
+    private <T extends StorageObject> T read(Class<T> clazz, File file) {
         ConfigurationHandle handle = getConfigurationProvider().load(file);
 
         Document doc = readDocumentFromHandle(handle);
 
-        return Optional.ofNullable(mapper().fromDocument(clazz, doc));
+        return tracked(mapper().fromDocument(clazz, doc));
+    }
+
+    /**
+     * Every file is read on its own virtual thread, so files are loaded in parallel.
+     */
+    @Override
+    public <T extends StorageObject> Map<String, T> loadByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        ensureConnected();
+        return readAll(clazz, identifiers);
+    }
+
+    private <T extends StorageObject> Map<String, T> readAll(Class<T> clazz, Collection<String> identifiers) {
+        File folder = new File(rootFolder, clazz.getSimpleName());
+        Map<String, T> results = new ConcurrentHashMap<>();
+        List<Exception> failures = inParallel(identifiers, id -> {
+            File file = file(folder, id);
+            if (!file.exists()) return;
+            T obj = read(clazz, file);
+            if (obj != null) results.put(id, obj);
+        });
+        for (Exception e : failures) {
+            logError("Failed to read " + clazz.getSimpleName(), e);
+        }
+        return new HashMap<>(results);
     }
 
     /**
@@ -199,19 +465,27 @@ public class YamlDatabase extends StorageDatabase {
 
     @Override
     public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String id) {
+        deleted(clazz);
         File folder = new File(rootFolder, clazz.getSimpleName());
-        File file = new File(folder, id + (id.endsWith(".yml") ? "" : ".yml"));
+        File file = file(folder, id);
 
         if (file.exists()) {
-            ConfigurationHandle handle = getConfigurationProvider().load(file);
-            List<?> extras = handle.getList("_extras");
-            if (extras != null) {
-                File indexFolder = new File(folder, ".index");
-                for (Object extra : extras) {
-                    new File(indexFolder, extra.toString().toLowerCase(Locale.ENGLISH) + ".idx").delete();
-                }
-            }
             file.delete();
+            try {
+                extraIndex(folder.getName()).remove(id);
+            } catch (IOException | UncheckedIOException e) {
+                logError("Failed to remove extra identifiers of " + clazz.getSimpleName() + " " + id, e);
+            }
+        }
+
+        MemoryIndex index = indexes.get(clazz);
+        if (index != null) index.remove(id);
+    }
+
+    @Override
+    public <T extends StorageObject> void deleteByIdsSync(Class<T> clazz, Collection<String> identifiers) {
+        for (Exception e : inParallel(identifiers, id -> deleteByIdSync(clazz, id))) {
+            logError("Failed to delete " + clazz.getSimpleName(), e);
         }
     }
 
@@ -220,6 +494,9 @@ public class YamlDatabase extends StorageDatabase {
         return CompletableFuture.supplyAsync(() -> loadAllSync(clazz), executor);
     }
 
+    /**
+     * Parses every file of the class on its own virtual thread, {@link #MAX_PARALLEL_FILES} at a time.
+     */
     @Override
     public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
         ensureConnected();
@@ -227,78 +504,194 @@ public class YamlDatabase extends StorageDatabase {
         File folder = new File(rootFolder, clazz.getSimpleName());
         if (!folder.exists()) return results;
 
-        File[] files = folder.listFiles((dir, name) -> name.endsWith(".yml"));
-        if (files == null) return results;
+        List<File> files = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(folder.toPath(), "*.yml")) {
+            for (Path path : paths) {
+                files.add(path.toFile());
+            }
+        } catch (IOException e) {
+            logError("Failed to list " + folder.getName(), e);
+            return results;
+        }
 
-        for (File f : files) {
-            try {
-                ConfigurationHandle handle = getConfigurationProvider().load(f);
-                Document doc = readDocumentFromHandle(handle);
-                T obj = mapper().fromDocument(clazz, doc);
-                if (obj != null) results.add(obj);
-            } catch (Exception e) {
-                logError("Skipping corrupt file " + f.getName(), e);
+        List<Future<T>> futures = new ArrayList<>(files.size());
+        try (ExecutorService parsers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (File file : files) {
+                try {
+                    futures.add(submitLimited(parsers, () -> read(clazz, file)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    T obj = futures.get(i).get();
+                    if (obj != null) results.add(obj);
+                } catch (ExecutionException e) {
+                    logError("Skipping corrupt file " + files.get(i).getName(), e.getCause() instanceof Exception cause ? cause : e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
         }
         return results;
     }
 
+    /**
+     * Lists the class folder lazily, every file is parsed only when the stream reaches it.
+     */
     @Override
-    public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String ex) {
-        return CompletableFuture.supplyAsync(() -> loadByExtraIdentifierSync(clazz, ex), executor);
+    public <T extends StorageObject> Stream<T> streamAll(Class<T> clazz, int fetchSize) {
+        ensureConnected();
+        File folder = new File(rootFolder, clazz.getSimpleName());
+        if (!folder.exists()) return Stream.empty();
+
+        DirectoryStream<Path> files;
+        try {
+            files = Files.newDirectoryStream(folder.toPath(), "*.yml");
+        } catch (IOException e) {
+            logError("Failed to list " + folder.getName(), e);
+            return Stream.empty();
+        }
+
+        Iterator<Path> paths = files.iterator();
+        LazyIterator<T> iterator = new LazyIterator<>() {
+            @Override
+            protected T fetchNext() {
+                while (paths.hasNext()) {
+                    File f = paths.next().toFile();
+                    try {
+                        T obj = read(clazz, f);
+                        if (obj != null) return obj;
+                    } catch (Exception e) {
+                        logError("Skipping corrupt file " + f.getName(), e);
+                    }
+                }
+                return null;
+            }
+        };
+        return lazyStream(iterator, () -> {
+            try {
+                files.close();
+            } catch (IOException ignored) {}
+        });
     }
 
     @Override
-    public <T extends StorageObject> Optional<ReferencedObject> loadByExtraIdentifierSync(Class<T> clazz, String extraIdentifier) {
-        ensureConnected();
-        File indexFolder = new File(new File(rootFolder, clazz.getSimpleName()), ".index");
-        File indexFile = new File(indexFolder, extraIdentifier.toLowerCase(Locale.ENGLISH) + ".idx");
+    public <T extends StorageObject> CompletableFuture<List<T>> queryAsync(Class<T> clazz, StorageQuery query) {
+        return CompletableFuture.supplyAsync(() -> querySync(clazz, query), executor);
+    }
 
-        if (indexFile.exists()) {
-            try {
-                String realId = Files.readString(indexFile.toPath()).trim();
-                return Optional.of(new ReferencedObject(extraIdentifier, realId));
-            } catch (IOException e) {
-                return Optional.empty();
+    /**
+     * Conditions on {@link StorageIndexed} properties are resolved with an in-memory index, built from every file
+     * of the class on its first query and kept up to date by this database's writes. Only the matching files are read,
+     * on virtual threads, so queries running on the executor never wait on its queue.
+     */
+    @Override
+    public <T extends StorageObject> List<T> querySync(Class<T> clazz, StorageQuery query) {
+        MemoryIndex index = index(clazz);
+        if (index == null) return super.querySync(clazz, query);
+
+        boolean complete = true;
+        String driving = null;
+        for (StorageQuery.Condition condition : query.getConditions()) {
+            if (!index.keys().contains(condition.key()) || condition.value() == null) {
+                complete = false;
+            } else if (driving == null) {
+                driving = condition.key();
+            } else if (!driving.equals(condition.key())) {
+                complete = false;
             }
         }
-        return Optional.empty();
-    }
-
-    private String extractIdentifier(StorageObject obj) {
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (Field f : c.getDeclaredFields()) {
-                if (f.isAnnotationPresent(StorageIdentifier.class)) {
-                    f.setAccessible(true);
-                    try { Object v = f.get(obj); return v != null ? v.toString() : null; } catch (Exception ignored) {}
+        if (driving == null) return super.querySync(clazz, query);
+
+        // Conditions on a single property ordered by it are read in index order, only up to the limit
+        if (complete && (query.getOrderBy() == null || query.getOrderBy().equals(driving))) {
+            List<String> ids = index.findOrdered(driving, query.getConditions(), query.isAscending());
+            List<T> results = new ArrayList<>();
+            for (int from = 0; from < ids.size(); from += 64) {
+                List<String> page = ids.subList(from, Math.min(ids.size(), from + 64));
+                Map<String, T> loaded = readAll(clazz, page);
+                for (String id : page) {
+                    T obj = loaded.get(id);
+                    if (obj == null) continue;
+                    results.add(obj);
+                    if (query.hasLimit() && results.size() >= query.getLimit()) return results;
                 }
             }
+            return results;
         }
-        return null;
+
+        Set<String> ids = index.find(query.getConditions());
+        return query.apply(mapper(), readAll(clazz, ids).values().stream());
     }
 
-    private void injectIdentifier(StorageObject obj, String id) {
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (Field f : c.getDeclaredFields()) {
-                if (f.isAnnotationPresent(StorageIdentifier.class)) {
-                    f.setAccessible(true);
-                    try { f.set(obj, id); } catch (Exception ignored) {}
-                    return;
-                }
-            }
+    private MemoryIndex index(Class<?> clazz) {
+        MemoryIndex index = indexes.get(clazz);
+        if (index != null) {
+            index.awaitBuilt();
+            return index;
         }
+
+        List<String> keys = new ArrayList<>();
+        for (StorageProperty property : mapper().describe(clazz)) {
+            if (property.indexed()) keys.add(property.key());
+        }
+        if (keys.isEmpty()) return null;
+
+        MemoryIndex created = new MemoryIndex(keys);
+        index = indexes.putIfAbsent(clazz, created);
+        if (index != null) {
+            index.awaitBuilt();
+            return index;
+        }
+
+        buildIndex(clazz, created);
+        return created;
     }
 
-    private Set<String> extractExtraIdentifier(StorageObject obj) {
-        Set<String> extras = new HashSet<>();
-        for (Class<?> c = obj.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
-            for (Field f : c.getDeclaredFields()) {
-                if (f.isAnnotationPresent(StorageExtraIdentifier.class)) {
-                    f.setAccessible(true);
-                    try { Object v = f.get(obj); if (v != null) extras.add(v.toString()); } catch (Exception ignored) {}
-                }
+    @SuppressWarnings("unchecked")
+    private <T extends StorageObject> void buildIndex(Class<?> clazz, MemoryIndex index) {
+        try (Stream<T> stream = streamAll((Class<T>) clazz)) {
+            stream.forEach(obj -> {
+                String id = mapper().extractIdentifier(obj);
+                if (id != null) index.load(id, mapper().toDocument(obj));
+            });
+        } finally {
+            index.finishBuilding();
+        }
+    }
+
+    @Override
+    public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String ex) {
+        return CompletableFuture.supplyAsync(() -> loadByExtraIdentifierSync(clazz, ex), executor);
+    }
+
+    @Override
+    public <T extends StorageObject> Optional<ReferencedObject> loadByExtraIdentifierSync(Class<T> clazz, String extraIdentifier) {
+        ensureConnected();
+        File folder = new File(rootFolder, clazz.getSimpleName());
+        try {
+            ExtraIndex index = extraIndex(folder.getName());
+            String realId = index.get(extraIdentifier.toLowerCase(Locale.ENGLISH));
+            if (realId == null) return Optional.empty();
+
+            // The file was removed outside this database, drop its stale entries
+            if (!file(folder, realId).exists()) {
+                index.remove(realId);
+                return Optional.empty();
             }
+            return Optional.of(new ReferencedObject(extraIdentifier, realId));
+        } catch (IOException | UncheckedIOException e) {
+            logError("Failed to resolve " + extraIdentifier + " of " + clazz.getSimpleName(), e);
+            return Optional.empty();
         }
-        return extras;
+    }
+
+    private record PreparedDocument(Class<?> clazz, String id, Document document, Set<String> extraIds) {
+
     }
 }
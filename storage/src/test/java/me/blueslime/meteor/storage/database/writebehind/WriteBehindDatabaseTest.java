@@ -0,0 +1,283 @@
+package me.blueslime.meteor.storage.database.writebehind;
+
+import me.blueslime.meteor.implementation.Implements;
+import me.blueslime.meteor.platforms.api.logger.PlatformLogger;
+import me.blueslime.meteor.storage.database.StorageDatabase;
+import me.blueslime.meteor.storage.interfaces.StorageIdentifier;
+import me.blueslime.meteor.storage.interfaces.StorageObject;
+import me.blueslime.meteor.storage.references.ReferencedObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindDatabaseTest {
+
+    private final MemoryDatabase memory = new MemoryDatabase();
+    private WriteBehindDatabase database;
+
+    @BeforeAll
+    static void install() {
+        Implements.setEntry(PlatformLogger.class, new PlatformLogger("Tests", message -> {}));
+    }
+
+    @AfterEach
+    void close() {
+        if (database != null) database.closeConnection();
+    }
+
+    @Test
+    void coalescesWritesOfTheSameObject() throws Exception {
+        open(config());
+
+        CompletableFuture<Void> first = database.saveOrUpdateAsync(new Profile("a", "one"));
+        CompletableFuture<Void> second = database.saveOrUpdateAsync(new Profile("a", "two"));
+        CompletableFuture<Void> third = database.saveOrUpdateAsync(new Profile("a", "three"));
+        assertEquals(1, database.getPendingWrites());
+        assertFalse(first.isDone());
+
+        database.flush();
+
+        assertEquals(1, memory.batches.size());
+        assertEquals(1, memory.batches.get(0).size());
+        assertEquals("three", memory.name("a"));
+        for (CompletableFuture<Void> future : List.of(first, second, third)) {
+            assertNull(future.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void flushesOnceTheBatchIsFull() throws Exception {
+        open(config().setBatchSize(3));
+
+        CompletableFuture<Void> a = database.saveOrUpdateAsync(new Profile("a", "one"));
+        CompletableFuture<Void> b = database.saveOrUpdateAsync(new Profile("b", "one"));
+        CompletableFuture<Void> c = database.saveOrUpdateAsync(new Profile("c", "one"));
+
+        CompletableFuture.allOf(a, b, c).get(5, TimeUnit.SECONDS);
+        assertEquals(1, memory.batches.size());
+        assertEquals(3, memory.batches.get(0).size());
+        assertEquals(0, database.getPendingWrites());
+    }
+
+    @Test
+    void keepsFutureOfFailedFlushUntilItIsWritten() throws Exception {
+        open(config());
+        memory.failures.set(1);
+
+        CompletableFuture<Void> future = database.saveOrUpdateAsync(new Profile("a", "one"));
+        database.flush();
+        assertFalse(future.isDone(), "A failed write must be retried before its future completes");
+        assertEquals(1, database.getPendingWrites());
+
+        database.flush();
+        assertNull(future.get(1, TimeUnit.SECONDS));
+        assertEquals("one", memory.name("a"));
+        assertEquals(0, database.getPendingWrites());
+    }
+
+    @Test
+    void chainsFailedWriteToNewerPendingState() throws Exception {
+        open(config());
+        memory.failures.set(1);
+
+        AtomicReference<CompletableFuture<Void>> newer = new AtomicReference<>();
+        memory.duringWrite = () -> {
+            if (newer.get() == null) newer.set(database.saveOrUpdateAsync(new Profile("a", "two")));
+        };
+        CompletableFuture<Void> older = database.saveOrUpdateAsync(new Profile("a", "one"));
+
+        database.flush();
+        assertEquals(1, database.getPendingWrites());
+        assertFalse(older.isDone());
+        assertFalse(newer.get().isDone());
+
+        database.flush();
+        assertNull(older.get(1, TimeUnit.SECONDS));
+        assertNull(newer.get().get(1, TimeUnit.SECONDS));
+        assertEquals("two", memory.name("a"));
+        assertEquals(2, memory.batches.size());
+    }
+
+    @Test
+    void failsFutureOnceAttemptsAreExhausted() {
+        List<String> errors = new CopyOnWriteArrayList<>();
+        open(config().setMaxAttempts(2));
+        database.addErrorListener((message, e) -> errors.add(message));
+        memory.failures.set(Integer.MAX_VALUE);
+
+        CompletableFuture<Void> future = database.saveOrUpdateAsync(new Profile("a", "one"));
+        database.flush();
+        assertFalse(future.isDone());
+
+        database.flush();
+        assertTrue(future.isCompletedExceptionally());
+        assertThrows(ExecutionException.class, future::get);
+        assertEquals(0, database.getPendingWrites());
+        assertTrue(errors.stream().anyMatch(message -> message.startsWith("Dropped")), errors.toString());
+    }
+
+    @Test
+    void closeWaitsForTheBackoffUntilEverythingIsWritten() throws Exception {
+        open(config().setRetryBackoff(Duration.ofMillis(100)).setMaxAttempts(5));
+        memory.failures.set(2);
+
+        CompletableFuture<Void> future = database.saveOrUpdateAsync(new Profile("a", "one"));
+        long start = System.nanoTime();
+        database.closeConnection();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        database = null;
+
+        assertNull(future.get(1, TimeUnit.SECONDS));
+        assertEquals("one", memory.name("a"));
+        assertEquals(3, memory.batches.size());
+        assertTrue(elapsed >= 300, "Retried after " + elapsed + "ms, expected the doubled backoff of 100ms and 200ms");
+        assertTrue(memory.closed);
+    }
+
+    @Test
+    void readsByIdentifierSeePendingWrites() {
+        open(config());
+        memory.objects.put("b", new Profile("b", "stored"));
+
+        database.saveOrUpdateAsync(new Profile("a", "pending"));
+
+        assertEquals("pending", database.loadByIdSync(Profile.class, "a").map(profile -> profile.name).orElse(null));
+        Map<String, Profile> found = database.loadByIdsSync(Profile.class, List.of("a", "b"));
+        assertEquals("pending", found.get("a").name);
+        assertEquals("stored", found.get("b").name);
+        assertNull(memory.objects.get("a"));
+    }
+
+    private void open(WriteBehindConfig config) {
+        database = new WriteBehindDatabase(memory, config);
+        database.connect();
+    }
+
+    private static WriteBehindConfig config() {
+        return WriteBehindConfig.builder()
+                .setFlushInterval(Duration.ofMinutes(1))
+                .setRetryBackoff(Duration.ZERO);
+    }
+
+    public static class Profile implements StorageObject {
+
+        @StorageIdentifier
+        public String id;
+        public String name;
+
+        public Profile() {
+        }
+
+        Profile(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Stores objects in a map, records every batch and fails the next {@link #failures} batches.
+     */
+    private static class MemoryDatabase extends StorageDatabase {
+
+        final Map<String, StorageObject> objects = new ConcurrentHashMap<>();
+        final List<List<StorageObject>> batches = new CopyOnWriteArrayList<>();
+        final AtomicInteger failures = new AtomicInteger();
+        volatile Runnable duringWrite = () -> {};
+        volatile boolean closed = false;
+
+        String name(String id) {
+            Profile profile = (Profile) objects.get(id);
+            return profile != null ? profile.name : null;
+        }
+
+        @Override
+        public void saveAllSync(Collection<? extends StorageObject> values) {
+            batches.add(List.copyOf(values));
+            duringWrite.run();
+            if (failures.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                throw new IllegalStateException("Write failed");
+            }
+            for (StorageObject value : values) {
+                objects.put(mapper().extractIdentifier(value), value);
+            }
+        }
+
+        @Override
+        public void saveOrUpdateSync(StorageObject obj) {
+            saveAllSync(List.of(obj));
+        }
+
+        @Override
+        public CompletableFuture<Void> saveOrUpdateAsync(StorageObject obj) {
+            return CompletableFuture.runAsync(() -> saveOrUpdateSync(obj), asyncExecutor());
+        }
+
+        @Override
+        public <T extends StorageObject> Optional<T> loadByIdSync(Class<T> clazz, String identifier) {
+            StorageObject value = objects.get(identifier);
+            return clazz.isInstance(value) ? Optional.of(clazz.cast(value)) : Optional.empty();
+        }
+
+        @Override
+        public <T extends StorageObject> CompletableFuture<Optional<T>> loadByIdAsync(Class<T> clazz, String identifier) {
+            return CompletableFuture.completedFuture(loadByIdSync(clazz, identifier));
+        }
+
+        @Override
+        public <T extends StorageObject> Optional<ReferencedObject> loadByExtraIdentifierSync(Class<T> clazz, String extraIdentifier) {
+            return Optional.empty();
+        }
+
+        @Override
+        public <T extends StorageObject> CompletableFuture<Optional<ReferencedObject>> loadByExtraIdentifierAsync(Class<T> clazz, String extraIdentifier) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        @Override
+        public <T extends StorageObject> void deleteByIdSync(Class<T> clazz, String identifier) {
+            objects.remove(identifier);
+        }
+
+        @Override
+        public <T extends StorageObject> CompletableFuture<Void> deleteByIdAsync(Class<T> clazz, String identifier) {
+            deleteByIdSync(clazz, identifier);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public <T extends StorageObject> Set<T> loadAllSync(Class<T> clazz) {
+            Set<T> values = new HashSet<>();
+            for (StorageObject value : objects.values()) {
+                if (clazz.isInstance(value)) values.add(clazz.cast(value));
+            }
+            return values;
+        }
+
+        @Override
+        public <T extends StorageObject> CompletableFuture<Set<T>> loadAllAsync(Class<T> clazz) {
+            return CompletableFuture.completedFuture(loadAllSync(clazz));
+        }
+
+        @Override
+        public void connect() {
+            closed = false;
+        }
+
+        @Override
+        public void closeConnection() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package me.blueslime.meteor.storage.types;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExtraIndexTest {
+
+    @TempDir
+    Path folder;
+
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    @Test
+    void replaysChangesOnOpen() throws IOException {
+        try (ExtraIndex index = open()) {
+            index.set("a", Set.of("x", "y"));
+            assertEquals("a", index.get("x"));
+
+            index.set("a", Set.of("y", "z"));
+            assertNull(index.get("x"), "Extras an object no longer has must be released");
+            assertEquals("a", index.get("z"));
+
+            index.set("b", Set.of("q"));
+            index.remove("b");
+            assertNull(index.get("q"));
+        }
+
+        try (ExtraIndex index = open()) {
+            assertNull(index.get("x"));
+            assertEquals("a", index.get("y"));
+            assertEquals("a", index.get("z"));
+            assertNull(index.get("q"));
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    @Test
+    void dropsTornEntryAtTheEndOfTheJournal() throws IOException {
+        Path journal = folder.resolve(".extras.journal");
+        long first;
+        try (ExtraIndex index = open()) {
+            index.set("a", Set.of("x"));
+            first = Files.size(journal);
+            index.set("b", Set.of("y"));
+        }
+        byte[] content = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(content, content.length - 2));
+
+        try (ExtraIndex index = open()) {
+            assertEquals("a", index.get("x"));
+            assertNull(index.get("y"));
+            assertEquals(first, Files.size(journal), "The journal must be rewritten without the torn entry");
+            index.set("b", Set.of("y"));
+        }
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith("Dropped"), errors.get(0));
+
+        try (ExtraIndex index = open()) {
+            assertEquals("b", index.get("y"));
+        }
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    void dropsEntryFailingItsChecksum() throws IOException {
+        Path journal = folder.resolve(".extras.journal");
+        try (ExtraIndex index = open()) {
+            index.set("a", Set.of("x"));
+            index.set("b", Set.of("y"));
+        }
+        byte[] content = Files.readAllBytes(journal);
+        content[content.length - 1] ^= 0x7F;
+        Files.write(journal, content);
+
+        try (ExtraIndex index = open()) {
+            assertEquals("a", index.get("x"));
+            assertNull(index.get("y"));
+        }
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    void dropsEntriesOfMissingObjects() throws IOException {
+        try (ExtraIndex index = open()) {
+            index.set("a", Set.of("x"));
+            index.set("b", Set.of("y"));
+        }
+
+        try (ExtraIndex index = open(id -> !id.equals("b"))) {
+            assertEquals("a", index.get("x"));
+            assertNull(index.get("y"));
+        }
+
+        try (ExtraIndex index = open()) {
+            assertNull(index.get("y"), "Dropped entries must not be replayed again");
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    @Test
+    void rewritesJournalOnceItOutgrowsTheEntries() throws IOException {
+        Path journal = folder.resolve(".extras.journal");
+        int updates = 5000;
+        long record;
+        long largest = 0;
+        try (ExtraIndex index = open()) {
+            index.set("a", Set.of(extra(0)));
+            record = Files.size(journal);
+            for (int i = 1; i < updates; i++) {
+                index.set("a", Set.of(extra(i)));
+                largest = Math.max(largest, Files.size(journal));
+            }
+        }
+        assertTrue(largest <= record * 1100, "Journal grew to " + largest + " bytes");
+
+        try (ExtraIndex index = open()) {
+            assertEquals("a", index.get(extra(updates - 1)));
+            assertNull(index.get(extra(updates - 2)));
+            assertNull(index.get(extra(0)));
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    @Test
+    void importsLegacyIndexFiles() throws IOException {
+        Path legacy = Files.createDirectories(folder.resolve(".index"));
+        Files.writeString(legacy.resolve("x.idx"), "a\n");
+        Files.writeString(legacy.resolve("y.idx"), "a");
+        Files.writeString(legacy.resolve("z.idx"), "b");
+
+        try (ExtraIndex index = open()) {
+            assertEquals("a", index.get("x"));
+            assertEquals("a", index.get("y"));
+            assertEquals("b", index.get("z"));
+        }
+        assertFalse(Files.exists(legacy));
+
+        try (ExtraIndex index = open()) {
+            assertEquals("a", index.get("x"));
+            assertEquals("b", index.get("z"));
+        }
+    }
+
+    @Test
+    void movesExtraToItsNewOwner() throws IOException {
+        try (ExtraIndex index = open()) {
+            index.set("a", Set.of("x", "y"));
+            index.set("b", Set.of("x"));
+            assertEquals("b", index.get("x"));
+            assertEquals("a", index.get("y"));
+
+            index.remove("a");
+            assertEquals("b", index.get("x"), "Removing the old owner must keep the moved extra");
+            assertNull(index.get("y"));
+        }
+
+        try (ExtraIndex index = open()) {
+            assertEquals("b", index.get("x"));
+            assertNull(index.get("y"));
+        }
+    }
+
+    private ExtraIndex open() throws IOException {
+        return open(id -> true);
+    }
+
+    private ExtraIndex open(Predicate<String> exists) throws IOException {
+        return ExtraIndex.open(folder, exists, (message, e) -> errors.add(message));
+    }
+
+    private static String extra(int value) {
+        return String.format("v%05d", value);
+    }
+}
@@ -0,0 +1,225 @@
+package me.blueslime.meteor.storage.types;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentLogTest {
+
+    private static final long LARGE_SEGMENTS = 1 << 20;
+    /**
+     * Fits a single record with a {@link #PAYLOAD_SIZE} payload, so every such record gets its own segment.
+     */
+    private static final long SMALL_SEGMENTS = 64;
+    private static final int PAYLOAD_SIZE = 40;
+
+    @TempDir
+    Path folder;
+
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    @Test
+    void recoversRecordsAndExtrasOnOpen() throws IOException {
+        try (SegmentLog log = open(LARGE_SEGMENTS)) {
+            log.put("a", Set.of("alpha"), bytes("one"));
+            log.put("b", Set.of(), bytes("two"));
+            log.put("a", Set.of("beta"), bytes("three"));
+            assertTrue(log.delete("b"));
+            assertFalse(log.delete("missing"));
+        }
+
+        try (SegmentLog log = open(LARGE_SEGMENTS)) {
+            assertEquals("three", text(log.get("a")));
+            assertNull(log.get("b"));
+            assertEquals(1, log.size());
+            assertEquals("a", log.resolveExtra("beta"));
+            assertNull(log.resolveExtra("alpha"));
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    @Test
+    void truncatesTornRecordAtTheEndOfTheNewestSegment() throws IOException {
+        Path segment = folder.resolve("00000001.seg");
+        try (SegmentLog log = open(LARGE_SEGMENTS)) {
+            log.put("a", Set.of(), bytes("one"));
+            log.put("b", Set.of(), bytes("two"));
+        }
+        long complete = Files.size(segment);
+
+        try (SegmentLog log = open(LARGE_SEGMENTS)) {
+            log.put("c", Set.of(), bytes("three"));
+        }
+        truncate(segment, Files.size(segment) - 3);
+
+        try (SegmentLog log = open(LARGE_SEGMENTS)) {
+            assertEquals("one", text(log.get("a")));
+            assertEquals("two", text(log.get("b")));
+            assertNull(log.get("c"));
+            assertEquals(complete, Files.size(segment));
+            assertEquals(1, errors.size());
+            assertTrue(errors.get(0).startsWith("Truncated"), errors.get(0));
+
+            log.put("c", Set.of(), bytes("again"));
+        }
+
+        try (SegmentLog log = open(LARGE_SEGMENTS)) {
+            assertEquals("again", text(log.get("c")));
+        }
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    void rejectsRecordFailingItsChecksum() throws IOException {
+        Path segment = folder.resolve("00000001.seg");
+        long first;
+        try (SegmentLog log = open(LARGE_SEGMENTS)) {
+            log.put("a", Set.of(), bytes("one"));
+            first = Files.size(segment);
+            log.put("b", Set.of(), bytes("two"));
+        }
+        flipLastByte(segment);
+
+        try (SegmentLog log = open(LARGE_SEGMENTS)) {
+            assertEquals("one", text(log.get("a")));
+            assertNull(log.get("b"));
+            assertEquals(first, Files.size(segment));
+        }
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    void skipsCorruptedRecordsOfOlderSegments() throws IOException {
+        try (SegmentLog log = open(SMALL_SEGMENTS)) {
+            log.put("a", Set.of(), payload('a'));
+            log.put("b", Set.of(), payload('b'));
+            log.put("c", Set.of(), payload('c'));
+        }
+        Path oldest = folder.resolve("00000001.seg");
+        long size = Files.size(oldest);
+        flipLastByte(oldest);
+
+        try (SegmentLog log = open(SMALL_SEGMENTS)) {
+            assertNull(log.get("a"));
+            assertArrayEquals(payload('b'), log.get("b"));
+            assertArrayEquals(payload('c'), log.get("c"));
+            assertEquals(size, Files.size(oldest), "Only the newest segment is truncated");
+        }
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith("Skipped"), errors.get(0));
+    }
+
+    @Test
+    void compactionKeepsLatestValuesAndDeletions() throws IOException {
+        try (SegmentLog log = open(SMALL_SEGMENTS)) {
+            log.put("a", Set.of("alpha"), payload('1'));
+            log.put("b", Set.of(), payload('1'));
+            log.put("a", Set.of("alpha"), payload('2'));
+            log.delete("b");
+            log.put("c", Set.of(), payload('1'));
+
+            double garbage = log.garbageRatio();
+            assertTrue(garbage > 0);
+            assertEquals(4, log.compact());
+            assertTrue(log.garbageRatio() < garbage);
+
+            assertArrayEquals(payload('2'), log.get("a"));
+            assertNull(log.get("b"));
+            assertArrayEquals(payload('1'), log.get("c"));
+        }
+
+        for (int id = 1; id <= 4; id++) {
+            assertFalse(Files.exists(folder.resolve(String.format("%08d.seg", id))));
+        }
+        try (SegmentLog log = open(SMALL_SEGMENTS)) {
+            assertArrayEquals(payload('2'), log.get("a"));
+            assertNull(log.get("b"), "A deleted object must not come back after compaction");
+            assertArrayEquals(payload('1'), log.get("c"));
+            assertEquals("a", log.resolveExtra("alpha"));
+            assertEquals(2, log.size());
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    @Test
+    void writesSucceedWhileCompacting() throws Exception {
+        int writers = 4;
+        int objects = 25;
+        int rounds = 40;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        try (SegmentLog log = open(256)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                String prefix = "writer-" + writer + "-";
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int round = 0; round < rounds; round++) {
+                            for (int i = 0; i < objects; i++) {
+                                log.put(prefix + i, Set.of(), payload((char) ('A' + round)));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            while (threads.stream().anyMatch(Thread::isAlive)) {
+                log.compact();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull(failure.get(), "Write failed while compacting");
+        }
+
+        try (SegmentLog log = open(256)) {
+            assertEquals(writers * objects, log.size());
+            for (String id : log.identifiers()) {
+                assertArrayEquals(payload((char) ('A' + rounds - 1)), log.get(id));
+            }
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    private SegmentLog open(long segmentSize) throws IOException {
+        return SegmentLog.open(folder, segmentSize, true, (message, e) -> errors.add(message));
+    }
+
+    private static byte[] payload(char fill) {
+        return String.valueOf(fill).repeat(PAYLOAD_SIZE).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, (int) size));
+    }
+
+    private static void flipLastByte(Path file) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        content[content.length - 1] ^= 0x7F;
+        Files.write(file, content);
+    }
+}